@@ -15,6 +15,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -23,7 +24,7 @@ import java.util.stream.Collectors;
 public class GemAdminCommand implements CommandExecutor, TabCompleter {
 
     private final GemExtensionPlugin plugin;
-    private final List<String> subCommands = Arrays.asList("give", "take", "set", "reload");
+    private final List<String> subCommands = Arrays.asList("give", "grant", "take", "set", "reward", "restock", "sweep", "restore", "verify", "export", "simulate", "freeze", "unfreeze", "reload");
 
     /**
      * Constructor
@@ -58,6 +59,10 @@ public class GemAdminCommand implements CommandExecutor, TabCompleter {
                 handleGiveCommand(sender, args, prefix);
                 break;
 
+            case "grant":
+                handleGrantCommand(sender, args, prefix);
+                break;
+
             case "take":
                 handleTakeCommand(sender, args, prefix);
                 break;
@@ -66,6 +71,39 @@ public class GemAdminCommand implements CommandExecutor, TabCompleter {
                 handleSetCommand(sender, args, prefix);
                 break;
 
+            case "reward":
+                handleRewardCommand(sender, args, prefix);
+                break;
+
+            case "restock":
+                handleRestockCommand(sender, args, prefix);
+                break;
+
+            case "sweep":
+                handleSweepCommand(sender, args, prefix);
+                break;
+
+            case "restore":
+                handleRestoreCommand(sender, args, prefix);
+                break;
+
+            case "verify":
+                handleVerifyCommand(sender, args, prefix);
+                break;
+
+            case "export":
+                handleExportCommand(sender, args, prefix);
+                break;
+
+            case "simulate":
+                handleSimulateCommand(sender, args, prefix);
+                break;
+
+            case "freeze":
+            case "unfreeze":
+                handleFreezeCommand(sender, args, prefix, subCommand.equals("freeze"));
+                break;
+
             case "reload":
                 handleReloadCommand(sender, prefix);
                 break;
@@ -83,7 +121,66 @@ public class GemAdminCommand implements CommandExecutor, TabCompleter {
      */
     private void handleGiveCommand(CommandSender sender, String[] args, String prefix) {
         if (args.length < 3) {
-            sender.sendMessage(prefix + ChatColor.RED + "Usage: /gemadmin give <player> <amount>");
+            sender.sendMessage(prefix + ChatColor.RED + "Usage: /gemadmin give <player> <amount> [currency]");
+            return;
+        }
+
+        // Parse amount
+        long amount;
+        try {
+            amount = Long.parseLong(args[2]);
+        } catch (NumberFormatException e) {
+            sender.sendMessage(prefix + ChatColor.RED + "Invalid amount.");
+            return;
+        }
+
+        if (amount <= 0) {
+            sender.sendMessage(prefix + ChatColor.RED + "Amount must be greater than 0.");
+            return;
+        }
+
+        String currency = args.length > 3 ? args[3] : "gems";
+        Player onlineTarget = Bukkit.getPlayer(args[1]);
+
+        plugin.getCommandPipeline().submit(sender, () -> {
+            // Get target player, who may be offline
+            OfflinePlayer target = onlineTarget != null ? onlineTarget : plugin.findPlayer(args[1]);
+            if (target == null) {
+                return reply(sender, prefix + ChatColor.RED + "Player not found.");
+            }
+
+            if (!currency.equalsIgnoreCase("gems")) {
+                return changeCurrency(sender, target, "give", amount, currency, prefix);
+            }
+
+            // Add gems to player
+            UUID uuid = target.getUniqueId();
+            plugin.addGems(uuid, amount);
+            plugin.getAnomalyManager().recordGrant(uuid, amount);
+
+            String name = target.getName();
+            return () -> {
+                // Notify
+                sender.sendMessage(prefix + ChatColor.GREEN + "Gave " + ChatColor.GOLD +
+                        formatNumber(amount) + ChatColor.GREEN + " gems to " + name + ".");
+
+                Player online = Bukkit.getPlayer(uuid);
+                if (online != null) {
+                    online.sendMessage(prefix + ChatColor.GREEN + "You received " + ChatColor.GOLD +
+                            formatNumber(amount) + ChatColor.GREEN + " gems from an admin.");
+                } else {
+                    plugin.getMailManager().deliver(uuid, "an admin", "gems", amount);
+                }
+            };
+        });
+    }
+
+    /**
+     * Handle the grant command
+     */
+    private void handleGrantCommand(CommandSender sender, String[] args, String prefix) {
+        if (args.length < 4) {
+            sender.sendMessage(prefix + ChatColor.RED + "Usage: /gemadmin grant <player> <amount> <days>");
             return;
         }
 
@@ -94,29 +191,41 @@ public class GemAdminCommand implements CommandExecutor, TabCompleter {
             return;
         }
 
-        // Parse amount
+        // Parse amount and duration
         long amount;
+        int days;
         try {
             amount = Long.parseLong(args[2]);
+            days = Integer.parseInt(args[3]);
         } catch (NumberFormatException e) {
-            sender.sendMessage(prefix + ChatColor.RED + "Invalid amount.");
+            sender.sendMessage(prefix + ChatColor.RED + "Invalid amount or days.");
             return;
         }
 
-        if (amount <= 0) {
-            sender.sendMessage(prefix + ChatColor.RED + "Amount must be greater than 0.");
+        if (amount <= 0 || days <= 0) {
+            sender.sendMessage(prefix + ChatColor.RED + "Amount and days must be greater than 0.");
             return;
         }
 
-        // Add gems to player
-        plugin.addGems(target, amount);
-
-        // Notify
-        sender.sendMessage(prefix + ChatColor.GREEN + "Gave " + ChatColor.GOLD +
-                formatNumber(amount) + ChatColor.GREEN + " gems to " + target.getName() + ".");
-
-        target.sendMessage(prefix + ChatColor.GREEN + "You received " + ChatColor.GOLD +
-                formatNumber(amount) + ChatColor.GREEN + " gems from an admin.");
+        UUID uuid = target.getUniqueId();
+        String name = target.getName();
+        plugin.getCommandPipeline().submit(sender, () -> {
+            // Grant expiring gems
+            plugin.getGrantManager().grant(uuid, amount, TimeUnit.DAYS.toMillis(days));
+            plugin.getAnomalyManager().recordGrant(uuid, amount);
+
+            return () -> {
+                // Notify
+                sender.sendMessage(prefix + ChatColor.GREEN + "Granted " + ChatColor.GOLD + formatNumber(amount) +
+                        ChatColor.GREEN + " gems to " + name + " for " + days + " days.");
+
+                Player online = Bukkit.getPlayer(uuid);
+                if (online != null) {
+                    online.sendMessage(prefix + ChatColor.GREEN + "You received " + ChatColor.GOLD + formatNumber(amount) +
+                            ChatColor.GREEN + " bonus gems that expire in " + days + " days. They are spent first.");
+                }
+            };
+        });
     }
 
     /**
@@ -124,7 +233,7 @@ public class GemAdminCommand implements CommandExecutor, TabCompleter {
      */
     private void handleTakeCommand(CommandSender sender, String[] args, String prefix) {
         if (args.length < 3) {
-            sender.sendMessage(prefix + ChatColor.RED + "Usage: /gemadmin take <player> <amount>");
+            sender.sendMessage(prefix + ChatColor.RED + "Usage: /gemadmin take <player> <amount> [currency]");
             return;
         }
 
@@ -149,22 +258,33 @@ public class GemAdminCommand implements CommandExecutor, TabCompleter {
             return;
         }
 
-        long playerGems = plugin.getGems(target);
-        if (playerGems < amount) {
-            sender.sendMessage(prefix + ChatColor.RED + "Player only has " +
-                    formatNumber(playerGems) + " gems. Cannot take " + formatNumber(amount) + ".");
-            return;
-        }
+        String currency = args.length > 3 ? args[3] : "gems";
+        plugin.getCommandPipeline().submit(sender, () -> {
+            if (!currency.equalsIgnoreCase("gems")) {
+                return changeCurrency(sender, target, "take", amount, currency, prefix);
+            }
 
-        // Remove gems from player
-        plugin.removeGems(target, amount);
+            // Remove gems from player, checked and debited in one step
+            UUID uuid = target.getUniqueId();
+            long playerGems = plugin.getGems(uuid);
+            if (playerGems < amount || !plugin.removeGems(uuid, amount)) {
+                return reply(sender, prefix + ChatColor.RED + "Player only has " +
+                        formatNumber(playerGems) + " gems. Cannot take " + formatNumber(amount) + ".");
+            }
 
-        // Notify
-        sender.sendMessage(prefix + ChatColor.GREEN + "Took " + ChatColor.GOLD +
-                formatNumber(amount) + ChatColor.GREEN + " gems from " + target.getName() + ".");
+            String name = target.getName();
+            return () -> {
+                // Notify
+                sender.sendMessage(prefix + ChatColor.GREEN + "Took " + ChatColor.GOLD +
+                        formatNumber(amount) + ChatColor.GREEN + " gems from " + name + ".");
 
-        target.sendMessage(prefix + ChatColor.RED + "An admin has removed " + ChatColor.GOLD +
-                formatNumber(amount) + ChatColor.RED + " gems from your account.");
+                Player online = Bukkit.getPlayer(uuid);
+                if (online != null) {
+                    online.sendMessage(prefix + ChatColor.RED + "An admin has removed " + ChatColor.GOLD +
+                            formatNumber(amount) + ChatColor.RED + " gems from your account.");
+                }
+            };
+        });
     }
 
     /**
@@ -172,7 +292,7 @@ public class GemAdminCommand implements CommandExecutor, TabCompleter {
      */
     private void handleSetCommand(CommandSender sender, String[] args, String prefix) {
         if (args.length < 3) {
-            sender.sendMessage(prefix + ChatColor.RED + "Usage: /gemadmin set <player> <amount>");
+            sender.sendMessage(prefix + ChatColor.RED + "Usage: /gemadmin set <player> <amount> [currency]");
             return;
         }
 
@@ -197,15 +317,353 @@ public class GemAdminCommand implements CommandExecutor, TabCompleter {
             return;
         }
 
-        // Set player's gem balance
-        plugin.setGems(target, amount);
+        String currency = args.length > 3 ? args[3] : "gems";
+        plugin.getCommandPipeline().submit(sender, () -> {
+            if (!currency.equalsIgnoreCase("gems")) {
+                return changeCurrency(sender, target, "set", amount, currency, prefix);
+            }
+
+            // Set player's gem balance
+            UUID uuid = target.getUniqueId();
+            plugin.setGems(uuid, amount);
+
+            String name = target.getName();
+            return () -> {
+                // Notify
+                sender.sendMessage(prefix + ChatColor.GREEN + "Set " + name +
+                        "'s gem balance to " + ChatColor.GOLD + formatNumber(amount) + ChatColor.GREEN + ".");
+
+                Player online = Bukkit.getPlayer(uuid);
+                if (online != null) {
+                    online.sendMessage(prefix + ChatColor.YELLOW + "Your gem balance has been set to " +
+                            ChatColor.GOLD + formatNumber(amount) + ChatColor.YELLOW + " by an admin.");
+                }
+            };
+        });
+    }
+
+    /**
+     * Give, take or set a balance in one of the extra currencies, on the pipeline worker
+     * @return Reply to run on the main thread
+     */
+    private Runnable changeCurrency(CommandSender sender, OfflinePlayer target, String action, long amount,
+                                    String currencyName, String prefix) {
+        GemLedger ledger = plugin.getLedger();
+        int currency = ledger.getCurrency(currencyName);
+        if (currency < 0) {
+            return reply(sender, prefix + ChatColor.RED + "Unknown currency. Currencies: " +
+                    String.join(", ", ledger.getCurrencyNames()));
+        }
+
+        String name = ledger.getCurrencyNames().get(currency);
+        UUID uuid = target.getUniqueId();
+        String message;
+
+        switch (action) {
+            case "give":
+                ledger.update(uuid, currency, current -> current + amount);
+                message = prefix + ChatColor.GREEN + "Gave " + ChatColor.GOLD + formatNumber(amount) +
+                        ChatColor.GREEN + " " + name + " to " + target.getName() + ".";
+                break;
+
+            case "take":
+                long before = ledger.update(uuid, currency, current -> current < amount ? current : current - amount);
+                if (before < amount) {
+                    return reply(sender, prefix + ChatColor.RED + "Player only has " + formatNumber(before) + " " +
+                            name + ". Cannot take " + formatNumber(amount) + ".");
+                }
+                message = prefix + ChatColor.GREEN + "Took " + ChatColor.GOLD + formatNumber(amount) +
+                        ChatColor.GREEN + " " + name + " from " + target.getName() + ".";
+                break;
+
+            default:
+                ledger.set(uuid, currency, amount);
+                message = prefix + ChatColor.GREEN + "Set " + target.getName() + "'s " + name +
+                        " balance to " + ChatColor.GOLD + formatNumber(amount) + ChatColor.GREEN + ".";
+                break;
+        }
+
+        long balance = ledger.get(uuid, currency);
+        return () -> {
+            sender.sendMessage(message);
+
+            Player online = Bukkit.getPlayer(uuid);
+            if (online != null) {
+                online.sendMessage(prefix + ChatColor.YELLOW + "Your " + name + " balance is now " + ChatColor.GOLD +
+                        formatNumber(balance) + ChatColor.YELLOW + ".");
+            } else if (action.equals("give")) {
+                plugin.getMailManager().deliver(uuid, "an admin", name, amount);
+            }
+        };
+    }
+
+    /**
+     * Handle the reward command
+     */
+    private void handleRewardCommand(CommandSender sender, String[] args, String prefix) {
+        if (args.length < 4) {
+            sender.sendMessage(prefix + ChatColor.RED + "Usage: /gemadmin reward <player> <capture|defeat> <species>");
+            return;
+        }
+
+        // Get target player
+        Player target = Bukkit.getPlayer(args[1]);
+        if (target == null) {
+            sender.sendMessage(prefix + ChatColor.RED + "Player not found.");
+            return;
+        }
+
+        // Parse reward type
+        GemRewardManager.RewardType type;
+        try {
+            type = GemRewardManager.RewardType.valueOf(args[2].toUpperCase());
+        } catch (IllegalArgumentException e) {
+            sender.sendMessage(prefix + ChatColor.RED + "Reward type must be capture or defeat.");
+            return;
+        }
+
+        // Pay the reward
+        long amount = plugin.getRewardManager().reward(target, args[3], type);
+
+        sender.sendMessage(prefix + ChatColor.GREEN + "Rewarded " + target.getName() + " " + ChatColor.GOLD +
+                formatNumber(amount) + ChatColor.GREEN + " gems for " + args[3] + ".");
+    }
+
+    /**
+     * Handle the restock command
+     */
+    private void handleRestockCommand(CommandSender sender, String[] args, String prefix) {
+        if (args.length < 3) {
+            sender.sendMessage(prefix + ChatColor.RED + "Usage: /gemadmin restock <item> <amount|unlimited>");
+            return;
+        }
+
+        GemShopItem item = plugin.getShopManager().getItem(args[1]);
+        if (item == null) {
+            sender.sendMessage(prefix + ChatColor.RED + "Shop item not found.");
+            return;
+        }
+
+        // Parse amount
+        long amount;
+        if (args[2].equalsIgnoreCase("unlimited")) {
+            amount = GemShopItem.UNLIMITED;
+        } else {
+            try {
+                amount = Long.parseLong(args[2]);
+            } catch (NumberFormatException e) {
+                sender.sendMessage(prefix + ChatColor.RED + "Invalid amount.");
+                return;
+            }
+
+            if (amount < 0) {
+                sender.sendMessage(prefix + ChatColor.RED + "Amount cannot be negative.");
+                return;
+            }
+        }
+
+        plugin.getShopManager().setStock(item, amount);
+
+        sender.sendMessage(prefix + ChatColor.GREEN + "Set stock of " + item.getId() + " to " + ChatColor.GOLD +
+                (amount == GemShopItem.UNLIMITED ? "unlimited" : formatNumber(amount)) + ChatColor.GREEN + ".");
+    }
+
+    /**
+     * Handle the sweep command
+     */
+    private void handleSweepCommand(CommandSender sender, String[] args, String prefix) {
+        GemSweepManager sweepManager = plugin.getSweepManager();
+
+        if (args.length > 1 && args[1].equalsIgnoreCase("start")) {
+            if (!sweepManager.start()) {
+                sender.sendMessage(prefix + ChatColor.RED + "A sweep is already running.");
+                return;
+            }
+
+            sender.sendMessage(prefix + ChatColor.GREEN + "Ledger sweep started.");
+            return;
+        }
+
+        sender.sendMessage(prefix + ChatColor.GREEN + sweepManager.getStatus());
+    }
+
+    /**
+     * Handle the restore command
+     */
+    private void handleRestoreCommand(CommandSender sender, String[] args, String prefix) {
+        GemBackupManager backupManager = plugin.getBackupManager();
+
+        // Without a time, list what can be restored
+        if (args.length < 2) {
+            sender.sendMessage(prefix + ChatColor.RED + "Usage: /gemadmin restore <yyyyMMdd-HHmm[ss]> [confirm]");
+            List<String> points = backupManager.getRecentPoints(10);
+            if (points.isEmpty()) {
+                sender.sendMessage(prefix + ChatColor.YELLOW + "No backups have been written yet.");
+            } else {
+                sender.sendMessage(prefix + ChatColor.YELLOW + "Recent backups: " + String.join(", ", points));
+            }
+            return;
+        }
+
+        long time = GemBackupManager.parseTime(args[1]);
+        if (time < 0) {
+            sender.sendMessage(prefix + ChatColor.RED + "Invalid time, use yyyyMMdd-HHmm or yyyyMMdd-HHmmss.");
+            return;
+        }
 
-        // Notify
-        sender.sendMessage(prefix + ChatColor.GREEN + "Set " + target.getName() +
-                "'s gem balance to " + ChatColor.GOLD + formatNumber(amount) + ChatColor.GREEN + ".");
+        long point = backupManager.findRestorePoint(time);
+        if (point < 0) {
+            sender.sendMessage(prefix + ChatColor.RED + "There is no full backup at or before that time.");
+            return;
+        }
+
+        if (args.length < 3 || !args[2].equalsIgnoreCase("confirm")) {
+            sender.sendMessage(prefix + ChatColor.YELLOW + "This will replace every balance with the backup from " +
+                    ChatColor.GOLD + GemBackupManager.format(point) + ChatColor.YELLOW + ". Use " + ChatColor.GOLD +
+                    "/gemadmin restore " + args[1] + " confirm" + ChatColor.YELLOW + " to continue.");
+            return;
+        }
+
+        sender.sendMessage(prefix + ChatColor.YELLOW + "Restoring backup from " + GemBackupManager.format(point) + "...");
+        backupManager.restore(time, restored -> {
+            if (restored < 0) {
+                sender.sendMessage(prefix + ChatColor.RED + "Restore failed, see the console for details.");
+                return;
+            }
 
-        target.sendMessage(prefix + ChatColor.YELLOW + "Your gem balance has been set to " +
-                ChatColor.GOLD + formatNumber(amount) + ChatColor.YELLOW + " by an admin.");
+            sender.sendMessage(prefix + ChatColor.GREEN + "Restored " + ChatColor.GOLD + formatNumber(restored) +
+                    ChatColor.GREEN + " balances. The previous ledger was backed up first.");
+        });
+    }
+
+    /**
+     * Handle the verify command
+     */
+    private void handleVerifyCommand(CommandSender sender, String[] args, String prefix) {
+        // Compares memory with the last save unless told otherwise
+        String first = args.length >= 3 ? args[1] : "memory";
+        String second = args.length >= 3 ? args[2] : args.length == 2 ? args[1] : "disk";
+
+        sender.sendMessage(prefix + ChatColor.YELLOW + "Verifying " + first + " against " + second + "...");
+        plugin.getIntegrityManager().verify(first, second, report -> {
+            for (String line : report) {
+                sender.sendMessage(prefix + ChatColor.YELLOW + line);
+            }
+        });
+    }
+
+    /**
+     * Handle the export command
+     */
+    private void handleExportCommand(CommandSender sender, String[] args, String prefix) {
+        if (args.length < 2) {
+            sender.sendMessage(prefix + ChatColor.RED + "Usage: /gemadmin export <csv|jsonl> [currency]");
+            return;
+        }
+
+        GemExportManager.Format format = GemExportManager.parseFormat(args[1]);
+        if (format == null) {
+            sender.sendMessage(prefix + ChatColor.RED + "Format must be csv or jsonl.");
+            return;
+        }
+
+        GemLedger ledger = plugin.getLedger();
+        int currency = args.length > 2 ? ledger.getCurrency(args[2]) : GemLedger.GEMS;
+        if (currency < 0) {
+            sender.sendMessage(prefix + ChatColor.RED + "Unknown currency. Currencies: " +
+                    String.join(", ", ledger.getCurrencyNames()));
+            return;
+        }
+
+        boolean started = plugin.getExportManager().export(format, currency, file -> {
+            if (file == null) {
+                sender.sendMessage(prefix + ChatColor.RED + "Export failed, see the console for details.");
+                return;
+            }
+
+            sender.sendMessage(prefix + ChatColor.GREEN + "Exported to " + ChatColor.GOLD + "exports/" + file.getName() +
+                    ChatColor.GREEN + ".");
+        });
+
+        if (!started) {
+            sender.sendMessage(prefix + ChatColor.RED + "An export is already running.");
+            return;
+        }
+        sender.sendMessage(prefix + ChatColor.YELLOW + "Exporting " + ledger.getCurrencyNames().get(currency) + "...");
+    }
+
+    /**
+     * Handle the simulate command
+     */
+    private void handleSimulateCommand(CommandSender sender, String[] args, String prefix) {
+        int players = 0;
+        int days = 0;
+        try {
+            if (args.length > 1) {
+                players = Integer.parseInt(args[1]);
+            }
+            if (args.length > 2) {
+                days = Integer.parseInt(args[2]);
+            }
+        } catch (NumberFormatException e) {
+            sender.sendMessage(prefix + ChatColor.RED + "Usage: /gemadmin simulate [players] [days]");
+            return;
+        }
+
+        if (players < 0 || players > 1000000 || days < 0 || days > 3650) {
+            sender.sendMessage(prefix + ChatColor.RED + "Simulate up to 1,000,000 players over up to 3,650 days.");
+            return;
+        }
+
+        boolean started;
+        try {
+            started = plugin.getSimulationManager().simulate(players, days, report -> {
+                for (String line : report) {
+                    sender.sendMessage(prefix + line);
+                }
+            });
+        } catch (IllegalStateException e) {
+            sender.sendMessage(prefix + ChatColor.RED + "Cannot simulate: " + e.getMessage() + ".");
+            return;
+        }
+
+        if (!started) {
+            sender.sendMessage(prefix + ChatColor.RED + "A simulation is already running.");
+            return;
+        }
+        sender.sendMessage(prefix + ChatColor.YELLOW + "Simulating the gem economy...");
+    }
+
+    /**
+     * Handle the freeze and unfreeze commands
+     */
+    private void handleFreezeCommand(CommandSender sender, String[] args, String prefix, boolean freeze) {
+        if (args.length < 2) {
+            sender.sendMessage(prefix + ChatColor.RED + "Usage: /gemadmin " + (freeze ? "freeze" : "unfreeze") + " <player>");
+            return;
+        }
+
+        // Frozen players are often offline, so look them up by name
+        OfflinePlayer target = plugin.findPlayer(args[1]);
+        if (target == null) {
+            sender.sendMessage(prefix + ChatColor.RED + "Player not found.");
+            return;
+        }
+
+        GemAnomalyManager anomalyManager = plugin.getAnomalyManager();
+        if (freeze) {
+            if (!anomalyManager.freeze(target.getUniqueId())) {
+                sender.sendMessage(prefix + ChatColor.RED + target.getName() + "'s gems are already frozen.");
+                return;
+            }
+            sender.sendMessage(prefix + ChatColor.GREEN + "Froze " + target.getName() + "'s gems.");
+        } else {
+            if (!anomalyManager.unfreeze(target.getUniqueId())) {
+                sender.sendMessage(prefix + ChatColor.RED + target.getName() + "'s gems are not frozen.");
+                return;
+            }
+            sender.sendMessage(prefix + ChatColor.GREEN + "Unfroze " + target.getName() + "'s gems.");
+        }
     }
 
     /**
@@ -216,7 +674,10 @@ public class GemAdminCommand implements CommandExecutor, TabCompleter {
         plugin.saveAllData();
 
         // Reload config
-        plugin.reloadGemConfig();
+        if (!plugin.reloadGemConfig()) {
+            sender.sendMessage(prefix + ChatColor.RED + "config.yml has errors, see the console. The current settings were kept.");
+            return;
+        }
 
         sender.sendMessage(prefix + ChatColor.GREEN + "Configuration reloaded!");
     }
@@ -226,12 +687,29 @@ public class GemAdminCommand implements CommandExecutor, TabCompleter {
      */
     private void showHelp(CommandSender sender, String prefix) {
         sender.sendMessage(ChatColor.GREEN + "--------- " + prefix + "Admin Commands ---------");
-        sender.sendMessage(ChatColor.GOLD + "/gemadmin give <player> <amount> " + ChatColor.YELLOW + "- Give gems to a player");
-        sender.sendMessage(ChatColor.GOLD + "/gemadmin take <player> <amount> " + ChatColor.YELLOW + "- Take gems from a player");
-        sender.sendMessage(ChatColor.GOLD + "/gemadmin set <player> <amount> " + ChatColor.YELLOW + "- Set player's gem balance");
+        sender.sendMessage(ChatColor.GOLD + "/gemadmin give <player> <amount> [currency] " + ChatColor.YELLOW + "- Give gems to a player");
+        sender.sendMessage(ChatColor.GOLD + "/gemadmin grant <player> <amount> <days> " + ChatColor.YELLOW + "- Give gems that expire");
+        sender.sendMessage(ChatColor.GOLD + "/gemadmin take <player> <amount> [currency] " + ChatColor.YELLOW + "- Take gems from a player");
+        sender.sendMessage(ChatColor.GOLD + "/gemadmin set <player> <amount> [currency] " + ChatColor.YELLOW + "- Set player's gem balance");
+        sender.sendMessage(ChatColor.GOLD + "/gemadmin reward <player> <capture|defeat> <species> " + ChatColor.YELLOW + "- Pay a Pixelmon reward");
+        sender.sendMessage(ChatColor.GOLD + "/gemadmin restock <item> <amount|unlimited> " + ChatColor.YELLOW + "- Set a shop item's stock");
+        sender.sendMessage(ChatColor.GOLD + "/gemadmin sweep [start] " + ChatColor.YELLOW + "- Show or start the tax, interest and decay sweep");
+        sender.sendMessage(ChatColor.GOLD + "/gemadmin restore <time> [confirm] " + ChatColor.YELLOW + "- Restore balances from a backup");
+        sender.sendMessage(ChatColor.GOLD + "/gemadmin verify [source] [source] " + ChatColor.YELLOW + "- Compare memory, disk and backups");
+        sender.sendMessage(ChatColor.GOLD + "/gemadmin export <csv|jsonl> [currency] " + ChatColor.YELLOW + "- Export balances for analytics");
+        sender.sendMessage(ChatColor.GOLD + "/gemadmin simulate [players] [days] " + ChatColor.YELLOW + "- Project balances under the current rules");
+        sender.sendMessage(ChatColor.GOLD + "/gemadmin freeze <player> " + ChatColor.YELLOW + "- Stop a player sending or receiving gems");
+        sender.sendMessage(ChatColor.GOLD + "/gemadmin unfreeze <player> " + ChatColor.YELLOW + "- Let a frozen player trade gems again");
         sender.sendMessage(ChatColor.GOLD + "/gemadmin reload " + ChatColor.YELLOW + "- Reload configuration");
     }
 
+    /**
+     * Build a reply that sends a message to a sender
+     */
+    private static Runnable reply(CommandSender sender, String message) {
+        return () -> sender.sendMessage(message);
+    }
+
     /**
      * Format a number with commas
      */
@@ -258,18 +736,42 @@ public class GemAdminCommand implements CommandExecutor, TabCompleter {
         } else if (args.length == 2) {
             // Second argument - provide player names for relevant commands
             if (args[0].equalsIgnoreCase("give") ||
+                    args[0].equalsIgnoreCase("grant") ||
                     args[0].equalsIgnoreCase("take") ||
-                    args[0].equalsIgnoreCase("set")) {
+                    args[0].equalsIgnoreCase("set") ||
+                    args[0].equalsIgnoreCase("reward") ||
+                    args[0].equalsIgnoreCase("freeze") ||
+                    args[0].equalsIgnoreCase("unfreeze")) {
 
                 String arg = args[1].toLowerCase();
                 completions = Bukkit.getOnlinePlayers().stream()
                         .map(Player::getName)
                         .filter(name -> name.toLowerCase().startsWith(arg))
                         .collect(Collectors.toList());
+            } else if (args[0].equalsIgnoreCase("verify")) {
+                completions = verifySources(args[1]);
+            } else if (args[0].equalsIgnoreCase("export")) {
+                String arg = args[1].toLowerCase();
+                for (String format : Arrays.asList("csv", "jsonl")) {
+                    if (format.startsWith(arg)) {
+                        completions.add(format);
+                    }
+                }
+            } else if (args[0].equalsIgnoreCase("sweep")) {
+                if ("start".startsWith(args[1].toLowerCase())) {
+                    completions.add("start");
+                }
+            } else if (args[0].equalsIgnoreCase("restock")) {
+                String arg = args[1].toLowerCase();
+                completions = plugin.getShopManager().getItems().stream()
+                        .map(GemShopItem::getId)
+                        .filter(id -> id.toLowerCase().startsWith(arg))
+                        .collect(Collectors.toList());
             }
         } else if (args.length == 3) {
             // Third argument - provide suggested amounts
             if (args[0].equalsIgnoreCase("give") ||
+                    args[0].equalsIgnoreCase("grant") ||
                     args[0].equalsIgnoreCase("take") ||
                     args[0].equalsIgnoreCase("set")) {
 
@@ -279,9 +781,50 @@ public class GemAdminCommand implements CommandExecutor, TabCompleter {
                     completions.add("1000");
                     completions.add("10000");
                 }
+            } else if (args[0].equalsIgnoreCase("restock")) {
+                String arg = args[2].toLowerCase();
+                if ("unlimited".startsWith(arg)) {
+                    completions.add("unlimited");
+                }
+            } else if (args[0].equalsIgnoreCase("verify")) {
+                completions = verifySources(args[2]);
+            } else if (args[0].equalsIgnoreCase("export")) {
+                String arg = args[2].toLowerCase();
+                completions = plugin.getLedger().getCurrencyNames().stream()
+                        .filter(name -> name.startsWith(arg))
+                        .collect(Collectors.toList());
+            } else if (args[0].equalsIgnoreCase("reward")) {
+                String arg = args[2].toLowerCase();
+                for (String type : Arrays.asList("capture", "defeat")) {
+                    if (type.startsWith(arg)) {
+                        completions.add(type);
+                    }
+                }
+            }
+        } else if (args.length == 4) {
+            // Fourth argument - provide currencies
+            if (args[0].equalsIgnoreCase("give") ||
+                    args[0].equalsIgnoreCase("take") ||
+                    args[0].equalsIgnoreCase("set")) {
+
+                String arg = args[3].toLowerCase();
+                completions = plugin.getLedger().getCurrencyNames().stream()
+                        .filter(name -> name.startsWith(arg))
+                        .collect(Collectors.toList());
             }
         }
 
         return completions;
     }
+
+    /**
+     * Suggest sources for the verify command
+     */
+    private List<String> verifySources(String arg) {
+        List<String> sources = new ArrayList<>(Arrays.asList("memory", "disk"));
+        sources.addAll(plugin.getBackupManager().getRecentPoints(10));
+        return sources.stream()
+                .filter(source -> source.startsWith(arg.toLowerCase()))
+                .collect(Collectors.toList());
+    }
 }
\ No newline at end of file
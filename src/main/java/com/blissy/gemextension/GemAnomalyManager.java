@@ -0,0 +1,419 @@
+package com.blissy.gemextension;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Watches gem transfer flow for dupes and account sharing as it happens
+ *
+ * Every player and every sender-receiver pair keeps sliding-window counters made
+ * of a small ring of time buckets with running totals, so recording a transfer and
+ * reading a window are both constant time. Fan-out and fan-in count counterparties
+ * that were new within the window, detected by the pair window being empty. When a
+ * limit is crossed admins are alerted and, if configured, the account is frozen.
+ * Transfers are recorded from worker threads, so names are looked up and alerts
+ * sent on the main thread.
+ */
+public class GemAnomalyManager {
+
+    private static final int BUCKETS = 12;
+
+    /**
+     * What to do when a limit is crossed
+     */
+    public enum Action {
+        ALERT,
+        FREEZE
+    }
+
+    private final GemExtensionPlugin plugin;
+    private final Map<UUID, PlayerFlow> players = new HashMap<>();
+    private final Map<Pair, Window> pairs = new HashMap<>();
+    private final Map<UUID, Long> lastAlerts = new HashMap<>();
+    private final Set<UUID> frozen = Collections.synchronizedSet(new HashSet<>());
+    private final BukkitTask pruneTask;
+
+    private volatile boolean enabled;
+    private long bucketMillis;
+    private Action action;
+    private long alertCooldownMillis;
+    private long maxSends;
+    private long maxSentVolume;
+    private long maxReceivedVolume;
+    private long maxPairVolume;
+    private long maxFanOut;
+    private long maxFanIn;
+
+    /**
+     * Constructor
+     * @param plugin GemExtensionPlugin instance
+     * @param dataConfig Loaded gemdata.yml holding frozen accounts
+     */
+    public GemAnomalyManager(GemExtensionPlugin plugin, FileConfiguration dataConfig) {
+        this.plugin = plugin;
+        loadConfig();
+
+        for (String uuidStr : dataConfig.getStringList("frozen")) {
+            try {
+                frozen.add(UUID.fromString(uuidStr));
+            } catch (IllegalArgumentException e) {
+                plugin.getLogger().warning("Invalid UUID in gemdata.yml frozen: " + uuidStr);
+            }
+        }
+
+        // Drop windows that have gone quiet so idle players hold no memory
+        pruneTask = Bukkit.getScheduler().runTaskTimer(plugin, this::prune, 1200L, 1200L);
+    }
+
+    /**
+     * Load detection settings from config.yml
+     */
+    public synchronized void loadConfig() {
+        FileConfiguration config = plugin.getConfig();
+
+        enabled = config.getBoolean("anomaly.enabled", true);
+        long windowMillis = Math.max(BUCKETS, config.getLong("anomaly.window-seconds", 60) * 1000L);
+        long previousBucketMillis = bucketMillis;
+        bucketMillis = windowMillis / BUCKETS;
+        alertCooldownMillis = config.getLong("anomaly.alert-cooldown-seconds", 60) * 1000L;
+        maxSends = config.getLong("anomaly.max-sends", 20);
+        maxSentVolume = config.getLong("anomaly.max-sent-volume", 100000);
+        maxReceivedVolume = config.getLong("anomaly.max-received-volume", 200000);
+        maxPairVolume = config.getLong("anomaly.max-pair-volume", 50000);
+        maxFanOut = config.getLong("anomaly.max-fan-out", 10);
+        maxFanIn = config.getLong("anomaly.max-fan-in", 10);
+
+        try {
+            action = Action.valueOf(config.getString("anomaly.action", "alert").toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            plugin.getLogger().warning("Unknown anomaly action " + config.getString("anomaly.action") + ", using alert.");
+            action = Action.ALERT;
+        }
+
+        // Windows only start over when their bucket size changes, new limits apply to them as they are
+        if (bucketMillis != previousBucketMillis) {
+            players.clear();
+            pairs.clear();
+        }
+    }
+
+    /**
+     * Write frozen accounts into gemdata.yml
+     * @param dataConfig gemdata.yml being saved
+     */
+    public void writeFrozen(FileConfiguration dataConfig) {
+        List<String> saved = new ArrayList<>();
+        synchronized (frozen) {
+            for (UUID uuid : frozen) {
+                saved.add(uuid.toString());
+            }
+        }
+        dataConfig.set("frozen", saved.isEmpty() ? null : saved);
+    }
+
+    /**
+     * Record a completed transfer between two players
+     * @param sender Player who sent the gems
+     * @param receiver Player who received them
+     * @param amount Gems transferred
+     */
+    public void recordTransfer(UUID sender, UUID receiver, long amount) {
+        if (!enabled) {
+            return;
+        }
+
+        List<String> senderAlerts = new ArrayList<>(0);
+        List<String> receiverAlerts = new ArrayList<>(0);
+
+        synchronized (this) {
+            long bucket = System.currentTimeMillis() / bucketMillis;
+            PlayerFlow from = players.computeIfAbsent(sender, key -> new PlayerFlow());
+            PlayerFlow to = players.computeIfAbsent(receiver, key -> new PlayerFlow());
+            Window pair = pairs.computeIfAbsent(new Pair(sender, receiver), key -> new Window());
+
+            // An empty pair window means this counterparty is new within the window
+            if (pair.count(bucket) == 0) {
+                from.fanOut.add(bucket, 0);
+                to.fanIn.add(bucket, 0);
+            }
+            pair.add(bucket, amount);
+            from.sent.add(bucket, amount);
+            to.received.add(bucket, amount);
+
+            if (from.sent.count(bucket) > maxSends) {
+                senderAlerts.add("sent " + from.sent.count(bucket) + " transfers");
+            }
+            if (from.sent.volume(bucket) > maxSentVolume) {
+                senderAlerts.add("sent " + formatNumber(from.sent.volume(bucket)) + " gems");
+            }
+            if (from.fanOut.count(bucket) > maxFanOut) {
+                senderAlerts.add("sent to " + from.fanOut.count(bucket) + " different players");
+            }
+            if (pair.volume(bucket) > maxPairVolume) {
+                senderAlerts.add("sent " + formatNumber(pair.volume(bucket)) + " gems to %counterparty%");
+            }
+            checkReceiver(to, bucket, receiverAlerts);
+
+            filterAlerts(sender, senderAlerts);
+            filterAlerts(receiver, receiverAlerts);
+        }
+
+        raise(sender, senderAlerts, receiver);
+        raise(receiver, receiverAlerts, sender);
+    }
+
+    /**
+     * Record gems granted to a player from outside the transfer flow
+     * @param receiver Player who received the gems
+     * @param amount Gems granted
+     */
+    public void recordGrant(UUID receiver, long amount) {
+        if (!enabled) {
+            return;
+        }
+
+        List<String> alerts = new ArrayList<>(0);
+
+        synchronized (this) {
+            long bucket = System.currentTimeMillis() / bucketMillis;
+            PlayerFlow to = players.computeIfAbsent(receiver, key -> new PlayerFlow());
+            to.received.add(bucket, amount);
+
+            checkReceiver(to, bucket, alerts);
+            filterAlerts(receiver, alerts);
+        }
+
+        raise(receiver, alerts, null);
+    }
+
+    /**
+     * Check the inbound limits of a player
+     */
+    private void checkReceiver(PlayerFlow to, long bucket, List<String> alerts) {
+        if (to.received.volume(bucket) > maxReceivedVolume) {
+            alerts.add("received " + formatNumber(to.received.volume(bucket)) + " gems");
+        }
+        if (to.fanIn.count(bucket) > maxFanIn) {
+            alerts.add("received from " + to.fanIn.count(bucket) + " different players");
+        }
+    }
+
+    /**
+     * Drop a player's alerts if they were alerted on recently
+     */
+    private void filterAlerts(UUID uuid, List<String> alerts) {
+        if (alerts.isEmpty()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        Long last = lastAlerts.get(uuid);
+        if (last != null && now - last < alertCooldownMillis) {
+            alerts.clear();
+            return;
+        }
+        lastAlerts.put(uuid, now);
+    }
+
+    /**
+     * Alert admins about a player and apply the configured action
+     *
+     * The freeze applies at once, the alerts follow on the main thread.
+     */
+    private void raise(UUID uuid, List<String> alerts, UUID counterparty) {
+        if (alerts.isEmpty()) {
+            return;
+        }
+
+        boolean froze = action == Action.FREEZE && freeze(uuid);
+        long window = bucketMillis * BUCKETS / 1000;
+
+        Bukkit.getScheduler().runTask(plugin, () -> {
+            String name = name(uuid);
+            for (String alert : alerts) {
+                String message = "Unusual gem flow: " + name + " " +
+                        (counterparty != null ? alert.replace("%counterparty%", name(counterparty)) : alert) +
+                        " in the last " + window + "s.";
+                plugin.getLogger().warning(message);
+                Bukkit.broadcast(plugin.getPrefix() + " " + ChatColor.RED + message, "gemextension.admin.alerts");
+            }
+
+            if (froze) {
+                Bukkit.broadcast(plugin.getPrefix() + " " + ChatColor.RED + "Froze the gems of " + name +
+                        ". Use /gemadmin unfreeze " + name + " after review.", "gemextension.admin.alerts");
+            }
+        });
+    }
+
+    /**
+     * Freeze an account so it can neither send nor receive gems
+     * @param uuid Player to freeze
+     * @return True if the account was not frozen already
+     */
+    public boolean freeze(UUID uuid) {
+        return frozen.add(uuid);
+    }
+
+    /**
+     * Unfreeze an account
+     * @param uuid Player to unfreeze
+     * @return True if the account was frozen
+     */
+    public boolean unfreeze(UUID uuid) {
+        return frozen.remove(uuid);
+    }
+
+    /**
+     * Check whether an account is frozen
+     * @param uuid Player to check
+     * @return True if frozen
+     */
+    public boolean isFrozen(UUID uuid) {
+        return frozen.contains(uuid);
+    }
+
+    /**
+     * Forget windows with nothing in them
+     */
+    private synchronized void prune() {
+        long bucket = System.currentTimeMillis() / bucketMillis;
+        players.values().removeIf(flow -> flow.isIdle(bucket));
+        pairs.values().removeIf(pair -> pair.count(bucket) == 0);
+
+        long now = System.currentTimeMillis();
+        lastAlerts.values().removeIf(last -> now - last >= alertCooldownMillis);
+    }
+
+    /**
+     * Stop the prune task
+     */
+    public void shutdown() {
+        pruneTask.cancel();
+    }
+
+    /**
+     * Get a player's name for alerts, on the main thread
+     */
+    private String name(UUID uuid) {
+        OfflinePlayer player = Bukkit.getOfflinePlayer(uuid);
+        return player.getName() != null ? player.getName() : uuid.toString();
+    }
+
+    /**
+     * Format a number with commas
+     */
+    private String formatNumber(long number) {
+        return NumberFormat.getNumberInstance(Locale.US).format(number);
+    }
+
+    /**
+     * Windows kept for one player
+     */
+    private static final class PlayerFlow {
+        private final Window sent = new Window();
+        private final Window received = new Window();
+        private final Window fanOut = new Window();
+        private final Window fanIn = new Window();
+
+        private boolean isIdle(long bucket) {
+            return sent.count(bucket) == 0 && received.count(bucket) == 0;
+        }
+    }
+
+    /**
+     * Count and volume over the last {@link #BUCKETS} buckets
+     *
+     * Each slot remembers which bucket it holds. Moving to a new bucket clears at
+     * most every slot once, and running totals make reads free.
+     */
+    private static final class Window {
+        private final long[] buckets = new long[BUCKETS];
+        private final long[] counts = new long[BUCKETS];
+        private final long[] volumes = new long[BUCKETS];
+        private long head = Long.MIN_VALUE;
+        private long count;
+        private long volume;
+
+        private void add(long bucket, long amount) {
+            advance(bucket);
+            int slot = (int) Math.floorMod(bucket, (long) BUCKETS);
+            counts[slot]++;
+            volumes[slot] += amount;
+            count++;
+            volume += amount;
+        }
+
+        private long count(long bucket) {
+            advance(bucket);
+            return count;
+        }
+
+        private long volume(long bucket) {
+            advance(bucket);
+            return volume;
+        }
+
+        /**
+         * Expire slots that fell out of the window
+         */
+        private void advance(long bucket) {
+            if (bucket <= head) {
+                return;
+            }
+
+            long from = head == Long.MIN_VALUE ? bucket : Math.max(head + 1, bucket - BUCKETS + 1);
+            for (long b = from; b <= bucket; b++) {
+                int slot = (int) Math.floorMod(b, (long) BUCKETS);
+                if (buckets[slot] != b) {
+                    count -= counts[slot];
+                    volume -= volumes[slot];
+                    counts[slot] = 0;
+                    volumes[slot] = 0;
+                    buckets[slot] = b;
+                }
+            }
+            head = bucket;
+        }
+    }
+
+    /**
+     * Sender and receiver of a transfer
+     */
+    private static final class Pair {
+        private final UUID sender;
+        private final UUID receiver;
+
+        private Pair(UUID sender, UUID receiver) {
+            this.sender = sender;
+            this.receiver = receiver;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Pair)) {
+                return false;
+            }
+            Pair other = (Pair) o;
+            return sender.equals(other.sender) && receiver.equals(other.receiver);
+        }
+
+        @Override
+        public int hashCode() {
+            return sender.hashCode() * 31 + receiver.hashCode();
+        }
+    }
+}
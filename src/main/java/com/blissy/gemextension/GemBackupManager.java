@@ -0,0 +1,430 @@
+package com.blissy.gemextension;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Scheduled ledger backups with point-in-time restore
+ *
+ * Every few backups a full snapshot of the ledger is written, and the backups in
+ * between only hold the balances that changed since the previous one. Files are
+ * gzipped binary records streamed straight from the live ledger on a background
+ * thread. Restoring reads the latest full snapshot at or before the requested time
+ * and replays the deltas after it, one record at a time. Only gem balances are
+ * backed up. Extra currencies, grants and market orders are left as they are by a
+ * restore and are only kept in gemdata.yml.
+ */
+public class GemBackupManager {
+
+    private static final int MAGIC = 0x47454D42;
+    private static final int VERSION = 1;
+    private static final String FULL_PREFIX = "full-";
+    private static final String DELTA_PREFIX = "delta-";
+    private static final String SUFFIX = ".gz";
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final DateTimeFormatter SHORT_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmm");
+
+    private final GemExtensionPlugin plugin;
+    private final File folder;
+    private final Set<UUID> changed = ConcurrentHashMap.newKeySet();
+    private final Object fileLock = new Object();
+    private BukkitTask backupTask;
+    private int deltasSinceFull;
+    private volatile boolean fullPending = true;
+
+    private boolean enabled;
+    private int intervalMinutes;
+    private int fullEvery;
+    private int keepFull;
+
+    /**
+     * Constructor
+     * @param plugin GemExtensionPlugin instance
+     */
+    public GemBackupManager(GemExtensionPlugin plugin) {
+        this.plugin = plugin;
+        this.folder = new File(plugin.getDataFolder(), "backups");
+        loadConfig();
+    }
+
+    /**
+     * Load backup settings from config.yml and reschedule backups
+     */
+    public void loadConfig() {
+        FileConfiguration config = plugin.getConfig();
+
+        enabled = config.getBoolean("backups.enabled", true);
+        intervalMinutes = Math.max(1, config.getInt("backups.interval-minutes", 15));
+        fullEvery = Math.max(1, config.getInt("backups.full-every", 24));
+        keepFull = Math.max(1, config.getInt("backups.keep-full", 7));
+
+        if (backupTask != null) {
+            backupTask.cancel();
+            backupTask = null;
+        }
+        if (enabled) {
+            long period = intervalMinutes * 1200L;
+            backupTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::backup, period, period);
+        }
+    }
+
+    /**
+     * Remember that a balance changed since the last backup
+     * @param uuid Player whose balance changed
+     */
+    void markChanged(UUID uuid) {
+        changed.add(uuid);
+    }
+
+    /**
+     * Write the next backup, a full snapshot or a delta, off the main thread
+     */
+    public void backup() {
+        synchronized (fileLock) {
+            boolean full = fullPending || deltasSinceFull >= fullEvery - 1;
+
+            try {
+                if (full) {
+                    writeFull();
+                    deltasSinceFull = 0;
+                    fullPending = false;
+                    pruneOldBackups();
+                } else if (!changed.isEmpty()) {
+                    writeDelta();
+                    deltasSinceFull++;
+                }
+            } catch (IOException e) {
+                plugin.getLogger().severe("Failed to write gem backup: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Stream every balance into a new full snapshot
+     */
+    private void writeFull() throws IOException {
+        // Anything changed after this point is picked up by the next delta
+        changed.clear();
+
+        Set<UUID> holders = plugin.getGemHolders();
+        writeBackup(FULL_PREFIX, holders.iterator());
+    }
+
+    /**
+     * Stream the balances changed since the last backup into a new delta
+     */
+    private void writeDelta() throws IOException {
+        List<UUID> drained = new ArrayList<>(changed.size());
+        Iterator<UUID> iterator = changed.iterator();
+        while (iterator.hasNext()) {
+            drained.add(iterator.next());
+            iterator.remove();
+        }
+
+        writeBackup(DELTA_PREFIX, drained.iterator());
+    }
+
+    /**
+     * Write records for the given players to a temporary file, then move it into place
+     */
+    private void writeBackup(String prefix, Iterator<UUID> players) throws IOException {
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Could not create " + folder.getPath());
+        }
+
+        long time = System.currentTimeMillis();
+        File target = new File(folder, prefix + format(time) + SUFFIX);
+        File temp = new File(folder, target.getName() + ".tmp");
+
+        int written = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(temp.toPath()), 65536)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(time);
+
+            // Records end with a marker, so the count does not have to be known up front
+            while (players.hasNext()) {
+                UUID uuid = players.next();
+                out.writeBoolean(true);
+                out.writeLong(uuid.getMostSignificantBits());
+                out.writeLong(uuid.getLeastSignificantBits());
+                out.writeLong(plugin.getGems(uuid));
+                written++;
+            }
+            out.writeBoolean(false);
+        }
+
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        plugin.getLogger().fine("Wrote " + target.getName() + " with " + written + " balances.");
+    }
+
+    /**
+     * Delete full snapshots beyond the retention limit, along with their deltas
+     */
+    private void pruneOldBackups() {
+        List<BackupFile> files = listBackups();
+        List<BackupFile> fulls = new ArrayList<>();
+        for (BackupFile file : files) {
+            if (file.full) {
+                fulls.add(file);
+            }
+        }
+        if (fulls.size() <= keepFull) {
+            return;
+        }
+
+        long oldestKept = fulls.get(fulls.size() - keepFull).time;
+        for (BackupFile file : files) {
+            if (file.time < oldestKept && !file.file.delete()) {
+                plugin.getLogger().warning("Could not delete old backup " + file.file.getName());
+            }
+        }
+    }
+
+    /**
+     * Find the latest point that can be restored at or before a time
+     * @param time Requested time in milliseconds
+     * @return Backup time in milliseconds, or -1 if no full snapshot is that old
+     */
+    public long findRestorePoint(long time) {
+        List<BackupFile> chain = getChain(time);
+        return chain.isEmpty() ? -1 : chain.get(chain.size() - 1).time;
+    }
+
+    /**
+     * Rebuild the ledger as it was at a backup, off the main thread
+     *
+     * A full snapshot of the current ledger is written first, so a restore can
+     * itself be undone. Balances are applied on the main thread.
+     * @param time Requested time in milliseconds
+     * @param done Called on the main thread with the number of balances restored, or -1 on failure
+     */
+    public void restore(long time, Consumer<Integer> done) {
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            Map<UUID, Long> balances;
+
+            synchronized (fileLock) {
+                try {
+                    if (getChain(time).isEmpty()) {
+                        Bukkit.getScheduler().runTask(plugin, () -> done.accept(-1));
+                        return;
+                    }
+
+                    writeFull();
+                    deltasSinceFull = 0;
+                    balances = readPoint(time);
+                } catch (IOException e) {
+                    plugin.getLogger().severe("Failed to restore gem backup: " + e.getMessage());
+                    Bukkit.getScheduler().runTask(plugin, () -> done.accept(-1));
+                    return;
+                }
+            }
+
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                plugin.replaceLedger(balances);
+
+                // Deltas cannot record removed players, so the next backup starts a new chain
+                fullPending = true;
+                done.accept(balances.size());
+            });
+        });
+    }
+
+    /**
+     * Read the balances at a restore point
+     * @param time Requested time in milliseconds
+     * @return Balances at the latest point at or before the time, or null if there is none
+     * @throws IOException If a backup file cannot be read
+     */
+    public Map<UUID, Long> readPoint(long time) throws IOException {
+        synchronized (fileLock) {
+            List<BackupFile> chain = getChain(time);
+            if (chain.isEmpty()) {
+                return null;
+            }
+
+            // Later files overwrite earlier records, so only the ledger itself is held
+            Map<UUID, Long> balances = new HashMap<>();
+            for (BackupFile file : chain) {
+                readBackup(file.file, balances);
+            }
+            return balances;
+        }
+    }
+
+    /**
+     * Stream the records of one backup file into a map
+     */
+    private void readBackup(File file, Map<UUID, Long> balances) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file.toPath()), 65536)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file.getName() + " is not a gem backup");
+            }
+            in.readLong();
+
+            while (in.readBoolean()) {
+                UUID uuid = new UUID(in.readLong(), in.readLong());
+                balances.put(uuid, in.readLong());
+            }
+        }
+    }
+
+    /**
+     * Get the latest full snapshot at or before a time and the deltas after it
+     */
+    private List<BackupFile> getChain(long time) {
+        List<BackupFile> files = listBackups();
+
+        int start = -1;
+        for (int i = 0; i < files.size(); i++) {
+            if (files.get(i).time > time) {
+                break;
+            }
+            if (files.get(i).full) {
+                start = i;
+            }
+        }
+        if (start < 0) {
+            return Collections.emptyList();
+        }
+
+        List<BackupFile> chain = new ArrayList<>();
+        chain.add(files.get(start));
+        for (int i = start + 1; i < files.size() && files.get(i).time <= time && !files.get(i).full; i++) {
+            chain.add(files.get(i));
+        }
+        return chain;
+    }
+
+    /**
+     * Get every backup file, oldest first
+     * @return Backup files
+     */
+    private List<BackupFile> listBackups() {
+        List<BackupFile> backups = new ArrayList<>();
+        File[] files = folder.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return backups;
+        }
+
+        for (File file : files) {
+            String name = file.getName();
+            boolean full = name.startsWith(FULL_PREFIX);
+            if (!full && !name.startsWith(DELTA_PREFIX)) {
+                continue;
+            }
+
+            String stamp = name.substring((full ? FULL_PREFIX : DELTA_PREFIX).length(), name.length() - SUFFIX.length());
+            try {
+                backups.add(new BackupFile(file, full, parse(stamp, FILE_TIME)));
+            } catch (DateTimeParseException e) {
+                plugin.getLogger().warning("Ignoring backup with unreadable name: " + name);
+            }
+        }
+
+        // Fulls sort before deltas written in the same second
+        backups.sort((a, b) -> a.time != b.time ? Long.compare(a.time, b.time) : Boolean.compare(b.full, a.full));
+        return backups;
+    }
+
+    /**
+     * Get the times of the most recent restore points
+     * @param limit Maximum number of points
+     * @return Formatted times, newest first
+     */
+    public List<String> getRecentPoints(int limit) {
+        List<BackupFile> files = listBackups();
+        List<String> points = new ArrayList<>();
+        for (int i = files.size() - 1; i >= 0 && points.size() < limit; i--) {
+            points.add(format(files.get(i).time) + (files.get(i).full ? " (full)" : ""));
+        }
+        return points;
+    }
+
+    /**
+     * Parse a restore time given as yyyyMMdd-HHmmss or yyyyMMdd-HHmm
+     * @param text Time entered by an admin
+     * @return Time in milliseconds, or -1 if it could not be parsed
+     */
+    public static long parseTime(String text) {
+        try {
+            return parse(text, FILE_TIME);
+        } catch (DateTimeParseException e) {
+            try {
+                // Without seconds, cover the whole minute
+                return parse(text, SHORT_TIME) + 59999;
+            } catch (DateTimeParseException e2) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Format a time the way backup files are named
+     * @param time Time in milliseconds
+     * @return Formatted time
+     */
+    public static String format(long time) {
+        return FILE_TIME.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault()));
+    }
+
+    /**
+     * Parse a local time with the given pattern
+     */
+    private static long parse(String text, DateTimeFormatter formatter) {
+        return LocalDateTime.parse(text, formatter).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Stop scheduled backups
+     */
+    public void shutdown() {
+        if (backupTask != null) {
+            backupTask.cancel();
+        }
+    }
+
+    /**
+     * A backup file found on disk
+     */
+    private static final class BackupFile {
+        private final File file;
+        private final boolean full;
+        private final long time;
+
+        private BackupFile(File file, boolean full, long time) {
+            this.file = file;
+            this.full = full;
+            this.time = time;
+        }
+    }
+}
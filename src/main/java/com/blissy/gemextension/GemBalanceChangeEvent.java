@@ -0,0 +1,97 @@
+package com.blissy.gemextension;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+
+import java.util.UUID;
+
+/**
+ * Called on the main thread after a player's gem balance changed
+ *
+ * Changes to the same player are coalesced per tick, so one event can stand for
+ * several ledger updates. The old balance is the one before the first of them and
+ * the new balance the one after the last. Ticks where the balance ends up where
+ * it started fire no event.
+ */
+public class GemBalanceChangeEvent extends Event {
+
+    private static final HandlerList HANDLERS = new HandlerList();
+
+    private final UUID playerId;
+    private final long oldBalance;
+    private final long newBalance;
+    private final int changes;
+
+    /**
+     * Constructor
+     * @param playerId UUID of the player whose balance changed
+     * @param oldBalance Balance before the changes
+     * @param newBalance Balance after the changes
+     * @param changes Number of ledger updates coalesced into this event
+     */
+    public GemBalanceChangeEvent(UUID playerId, long oldBalance, long newBalance, int changes) {
+        this.playerId = playerId;
+        this.oldBalance = oldBalance;
+        this.newBalance = newBalance;
+        this.changes = changes;
+    }
+
+    /**
+     * Get the UUID of the player whose balance changed
+     * @return Player UUID
+     */
+    public UUID getPlayerId() {
+        return playerId;
+    }
+
+    /**
+     * Get the player whose balance changed
+     * @return Player, or null if they are offline
+     */
+    public Player getPlayer() {
+        return Bukkit.getPlayer(playerId);
+    }
+
+    /**
+     * Get the balance before the changes
+     * @return Old balance
+     */
+    public long getOldBalance() {
+        return oldBalance;
+    }
+
+    /**
+     * Get the balance after the changes
+     * @return New balance
+     */
+    public long getNewBalance() {
+        return newBalance;
+    }
+
+    /**
+     * Get the net change in balance
+     * @return New balance minus old balance
+     */
+    public long getDifference() {
+        return newBalance - oldBalance;
+    }
+
+    /**
+     * Get how many ledger updates this event stands for
+     * @return Coalesced update count
+     */
+    public int getChanges() {
+        return changes;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+}
@@ -0,0 +1,135 @@
+package com.blissy.gemextension;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coalesces ledger updates into {@link GemBalanceChangeEvent}s
+ *
+ * Every balance update is folded into a pending change for its player from any
+ * thread. Once a tick the pending changes are drained on the main thread and fired
+ * as one event per player, so a burst of rewards or a bulk admin operation costs
+ * listeners at most one call per player per tick. A cap on events per tick spreads
+ * very large bursts over the following ticks, where they keep coalescing.
+ */
+public class GemBalanceEventManager {
+
+    private final GemExtensionPlugin plugin;
+    private final Map<UUID, PendingChange> pending = new ConcurrentHashMap<>();
+    private BukkitTask dispatchTask;
+
+    private volatile boolean enabled;
+    private int maxEventsPerTick;
+
+    /**
+     * Constructor
+     * @param plugin GemExtensionPlugin instance
+     */
+    public GemBalanceEventManager(GemExtensionPlugin plugin) {
+        this.plugin = plugin;
+        loadConfig();
+
+        dispatchTask = Bukkit.getScheduler().runTaskTimer(plugin, this::dispatch, 1L, 1L);
+    }
+
+    /**
+     * Load event settings from config.yml
+     */
+    public void loadConfig() {
+        FileConfiguration config = plugin.getConfig();
+
+        enabled = config.getBoolean("events.balance-change.enabled", true);
+        maxEventsPerTick = Math.max(1, config.getInt("events.balance-change.max-per-tick", 500));
+
+        if (!enabled) {
+            pending.clear();
+        }
+    }
+
+    /**
+     * Record a balance update
+     *
+     * Called by the ledger while it holds the player's entry, so updates to one
+     * player are recorded in the order they were applied.
+     * @param uuid UUID of the player whose balance changed
+     * @param oldBalance Balance before the update
+     * @param newBalance Balance after the update
+     */
+    void record(UUID uuid, long oldBalance, long newBalance) {
+        if (!enabled || oldBalance == newBalance) {
+            return;
+        }
+
+        pending.compute(uuid, (key, change) -> {
+            if (change == null) {
+                return new PendingChange(oldBalance, newBalance);
+            }
+
+            change.newBalance = newBalance;
+            change.changes++;
+            return change;
+        });
+    }
+
+    /**
+     * Fire events for pending changes, up to the per-tick cap
+     */
+    private void dispatch() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        // Nobody is listening, so there is nothing to coalesce for
+        if (GemBalanceChangeEvent.getHandlerList().getRegisteredListeners().length == 0) {
+            pending.clear();
+            return;
+        }
+
+        int fired = 0;
+        Iterator<UUID> iterator = pending.keySet().iterator();
+        while (iterator.hasNext() && fired < maxEventsPerTick) {
+            UUID uuid = iterator.next();
+            PendingChange change = pending.remove(uuid);
+            if (change == null || change.oldBalance == change.newBalance) {
+                continue;
+            }
+
+            Bukkit.getPluginManager().callEvent(
+                    new GemBalanceChangeEvent(uuid, change.oldBalance, change.newBalance, change.changes));
+            fired++;
+        }
+    }
+
+    /**
+     * Fire everything still pending and stop dispatching
+     */
+    public void shutdown() {
+        if (dispatchTask != null) {
+            dispatchTask.cancel();
+            dispatchTask = null;
+        }
+
+        maxEventsPerTick = Integer.MAX_VALUE;
+        dispatch();
+    }
+
+    /**
+     * Changes to one player's balance since the last dispatch
+     */
+    private static final class PendingChange {
+        private final long oldBalance;
+        private long newBalance;
+        private int changes = 1;
+
+        private PendingChange(long oldBalance, long newBalance) {
+            this.oldBalance = oldBalance;
+            this.newBalance = newBalance;
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package com.blissy.gemextension;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rotating per-player bounties on species that can spawn where the player is
+ */
+public class GemBountyManager implements Listener {
+
+    private final GemExtensionPlugin plugin;
+    private final Map<UUID, Bounty[]> boards = new ConcurrentHashMap<>();
+    private volatile SpawnConditionIndex conditionIndex = SpawnConditionIndex.empty();
+    private BukkitTask rotationTask;
+    private long nextRotation;
+
+    private boolean enabled;
+    private int rotationMinutes;
+    private int bountiesPerBoard;
+    private long baseReward;
+    private List<String> locationTypes;
+    private List<String> undergroundLocationTypes;
+    private List<String> waterLocationTypes;
+    private Map<String, List<String>> biomeCategories;
+
+    /**
+     * Constructor
+     * @param plugin GemExtensionPlugin instance
+     */
+    public GemBountyManager(GemExtensionPlugin plugin) {
+        this.plugin = plugin;
+        loadConfig();
+        rebuildIndex();
+
+        // Register events
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+    }
+
+    /**
+     * Load bounty settings from config.yml and restart the rotation
+     */
+    public void loadConfig() {
+        FileConfiguration config = plugin.getConfig();
+
+        enabled = config.getBoolean("bounties.enabled", true);
+        rotationMinutes = Math.max(1, config.getInt("bounties.rotation-minutes", 60));
+        bountiesPerBoard = Math.max(1, config.getInt("bounties.per-player", 3));
+        baseReward = config.getLong("bounties.base-reward", 25);
+        locationTypes = config.getStringList("bounties.location-types.surface");
+        undergroundLocationTypes = config.getStringList("bounties.location-types.underground");
+        waterLocationTypes = config.getStringList("bounties.location-types.water");
+
+        // Invert category -> biomes into biome -> categories
+        biomeCategories = new HashMap<>();
+        ConfigurationSection categories = config.getConfigurationSection("bounties.biome-categories");
+        if (categories != null) {
+            for (String category : categories.getKeys(false)) {
+                for (String biome : categories.getStringList(category)) {
+                    biomeCategories.computeIfAbsent(biome.toLowerCase(Locale.ROOT), key -> new ArrayList<>())
+                            .add(category);
+                }
+            }
+        }
+
+        if (rotationTask != null) {
+            rotationTask.cancel();
+        }
+
+        // A reload keeps the posted boards until the rotation already due, unless that is now further off
+        long now = System.currentTimeMillis();
+        long periodMillis = TimeUnit.MINUTES.toMillis(rotationMinutes);
+        if (nextRotation <= now || nextRotation > now + periodMillis) {
+            nextRotation = now + periodMillis;
+        }
+        long period = rotationMinutes * 1200L;
+        long delay = Math.max(1L, TimeUnit.MILLISECONDS.toSeconds(nextRotation - now) * 20L);
+        rotationTask = Bukkit.getScheduler().runTaskTimer(plugin, this::rotate, delay, period);
+    }
+
+    /**
+     * Rebuild the spawn condition index from the spawn sets on a background thread
+     */
+    public void rebuildIndex() {
+        File folder = new File(plugin.getDataFolder(),
+                plugin.getConfig().getString("rewards.spawn-data-folder", "spawns"));
+
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            long start = System.currentTimeMillis();
+            SpawnConditionIndex index = SpawnConditionIndex.load(folder, plugin.getLogger());
+            conditionIndex = index;
+
+            plugin.getLogger().info("Indexed " + index.size() + " spawn entries for bounties in " +
+                    (System.currentTimeMillis() - start) + "ms.");
+
+            // Fill boards for players who joined while the index was loading, keeping posted ones
+            Bukkit.getScheduler().runTask(plugin, this::fillBoards);
+        });
+    }
+
+    /**
+     * Get the current spawn condition index
+     * @return Spawn condition index
+     */
+    public SpawnConditionIndex getConditionIndex() {
+        return conditionIndex;
+    }
+
+    /**
+     * Check whether bounties are enabled
+     * @return True if bounties are posted
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get the time between board rotations
+     * @return Minutes between rotations
+     */
+    public int getRotationMinutes() {
+        return rotationMinutes;
+    }
+
+    /**
+     * Get the number of bounties posted on each board
+     * @return Bounties per board
+     */
+    public int getBountiesPerBoard() {
+        return bountiesPerBoard;
+    }
+
+    /**
+     * Get the reward for a bounty on a species
+     * @param species Species name
+     * @return Gems paid, at least 1
+     */
+    public long getReward(String species) {
+        return Math.max(1, Math.round(baseReward * plugin.getRewardManager().getMultiplier(species)));
+    }
+
+    /**
+     * Get the Pixelmon biome categories a biome belongs to
+     * @param biome Biome id, such as minecraft:snowy_taiga
+     * @return Categories from bounties.biome-categories, empty if none
+     */
+    public List<String> getBiomeCategories(String biome) {
+        return biomeCategories.getOrDefault(biome.toLowerCase(Locale.ROOT), Collections.emptyList());
+    }
+
+    /**
+     * Post new bounties for every online player
+     */
+    private void rotate() {
+        nextRotation = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(rotationMinutes);
+        boards.clear();
+
+        if (!enabled) {
+            return;
+        }
+
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            boards.put(player.getUniqueId(), createBoard(player));
+        }
+    }
+
+    /**
+     * Post bounties for online players with no board or an empty one
+     */
+    private void fillBoards() {
+        if (!enabled) {
+            return;
+        }
+
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            Bounty[] board = boards.get(player.getUniqueId());
+            if (board == null || board.length == 0) {
+                boards.put(player.getUniqueId(), createBoard(player));
+            }
+        }
+    }
+
+    /**
+     * Pick bounties from what can spawn around a player right now
+     * @param player Player to create the board for
+     * @return New bounties, possibly fewer than configured if little can spawn
+     */
+    private Bounty[] createBoard(Player player) {
+        SpawnConditionIndex index = conditionIndex;
+        Block block = player.getLocation().getBlock();
+
+        // Biome id plus any Pixelmon categories it belongs to
+        String biome = block.getBiome().getKey().toString();
+        List<String> biomes = new ArrayList<>();
+        biomes.add(biome);
+        biomes.addAll(biomeCategories.getOrDefault(biome, Collections.emptyList()));
+
+        List<String> types = new ArrayList<>(locationTypes);
+        if (block.getLightFromSky() == 0) {
+            types.addAll(undergroundLocationTypes);
+        }
+        if (block.getType().name().contains("WATER")) {
+            types.addAll(waterLocationTypes);
+        }
+
+        World world = player.getWorld();
+        SpawnConditionIndex.SpawnWeather weather = world.isThundering() ? SpawnConditionIndex.SpawnWeather.STORM
+                : world.hasStorm() ? SpawnConditionIndex.SpawnWeather.RAIN : SpawnConditionIndex.SpawnWeather.CLEAR;
+
+        long[] spawnable = index.query(world.getTime(), weather, block.getY(), block.getLightLevel(), biomes, types);
+        int count = 0;
+        for (long word : spawnable) {
+            count += Long.bitCount(word);
+        }
+
+        List<Bounty> picked = new ArrayList<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int attempt = 0; count > 0 && picked.size() < bountiesPerBoard && attempt < bountiesPerBoard * 4; attempt++) {
+            int entry = nthSetBit(spawnable, random.nextInt(count));
+            String species = index.getSpecies(entry);
+
+            boolean duplicate = false;
+            for (Bounty bounty : picked) {
+                duplicate |= bounty.species.equalsIgnoreCase(species);
+            }
+            if (!duplicate) {
+                picked.add(new Bounty(species, getReward(species)));
+            }
+        }
+
+        return picked.toArray(new Bounty[0]);
+    }
+
+    /**
+     * Find the position of the n-th set bit
+     */
+    private static int nthSetBit(long[] bits, int n) {
+        for (int word = 0; word < bits.length; word++) {
+            int inWord = Long.bitCount(bits[word]);
+            if (n < inWord) {
+                long value = bits[word];
+                for (int i = 0; i < n; i++) {
+                    value &= value - 1;
+                }
+                return (word << 6) + Long.numberOfTrailingZeros(value);
+            }
+            n -= inWord;
+        }
+        return -1;
+    }
+
+    /**
+     * Pay out a bounty if the captured species is on the player's board
+     * @param player Player who captured
+     * @param species Species captured
+     * @return Gems paid, 0 if there was no open bounty
+     */
+    public long onCapture(Player player, String species) {
+        Bounty[] board = boards.get(player.getUniqueId());
+        if (board == null) {
+            return 0;
+        }
+
+        for (Bounty bounty : board) {
+            if (!bounty.claimed && bounty.species.equalsIgnoreCase(species)) {
+                bounty.claimed = true;
+                plugin.addGems(player, bounty.reward);
+
+                player.sendMessage(plugin.getPrefix() + " " + ChatColor.GREEN + "Bounty complete! You earned " +
+                        ChatColor.GOLD + bounty.reward + ChatColor.GREEN + " gems for catching " + bounty.species + ".");
+                return bounty.reward;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Show a player their bounty board
+     * @param player Player to show the board to
+     * @param prefix Message prefix
+     */
+    public void showBoard(Player player, String prefix) {
+        if (!enabled) {
+            player.sendMessage(prefix + ChatColor.RED + "Bounties are disabled.");
+            return;
+        }
+
+        Bounty[] board = boards.computeIfAbsent(player.getUniqueId(), uuid -> createBoard(player));
+        long minutes = Math.max(0, TimeUnit.MILLISECONDS.toMinutes(nextRotation - System.currentTimeMillis()));
+
+        player.sendMessage(ChatColor.GREEN + "--------- " + prefix + "Bounties ---------");
+        if (board.length == 0) {
+            player.sendMessage(ChatColor.YELLOW + "Nothing can spawn around you right now.");
+        }
+        for (Bounty bounty : board) {
+            player.sendMessage((bounty.claimed ? ChatColor.GRAY + "" + ChatColor.STRIKETHROUGH : ChatColor.GOLD.toString()) +
+                    bounty.species + ChatColor.RESET + ChatColor.YELLOW + " - " + bounty.reward + " gems");
+        }
+        player.sendMessage(ChatColor.YELLOW + "New bounties in " + minutes + " minutes.");
+    }
+
+    /**
+     * Post a board for joining players
+     */
+    @EventHandler
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        if (enabled) {
+            boards.put(event.getPlayer().getUniqueId(), createBoard(event.getPlayer()));
+        }
+    }
+
+    /**
+     * Drop the board of leaving players
+     */
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        boards.remove(event.getPlayer().getUniqueId());
+    }
+
+    /**
+     * Stop the rotation task
+     */
+    public void shutdown() {
+        if (rotationTask != null) {
+            rotationTask.cancel();
+        }
+    }
+
+    /**
+     * A posted bounty
+     */
+    private static final class Bounty {
+        private final String species;
+        private final long reward;
+        private volatile boolean claimed;
+
+        private Bounty(String species, long reward) {
+            this.species = species;
+            this.reward = reward;
+        }
+    }
+}
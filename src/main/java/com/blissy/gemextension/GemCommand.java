@@ -2,17 +2,24 @@ package com.blissy.gemextension;
 
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.OfflinePlayer;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
 import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
 
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -21,7 +28,8 @@ import java.util.stream.Collectors;
 public class GemCommand implements CommandExecutor, TabCompleter {
 
     private final GemExtensionPlugin plugin;
-    private final List<String> subCommands = Arrays.asList("balance", "send", "help");
+    private final List<String> subCommands = Arrays.asList("balance", "send", "sell", "shop", "market", "bounties", "help");
+    private final List<String> marketCommands = Arrays.asList("buy", "sell", "book", "orders", "cancel", "claim");
 
     /**
      * Constructor
@@ -43,11 +51,7 @@ public class GemCommand implements CommandExecutor, TabCompleter {
                 return true;
             }
 
-            Player player = (Player) sender;
-            long gems = plugin.getGems(player);
-
-            sender.sendMessage(prefix + ChatColor.GREEN + "You have " +
-                    ChatColor.GOLD + formatNumber(gems) + ChatColor.GREEN + " gems.");
+            sendOwnBalance((Player) sender, prefix, false);
             return true;
         }
 
@@ -66,6 +70,23 @@ public class GemCommand implements CommandExecutor, TabCompleter {
                 handleSendCommand(sender, args, prefix);
                 break;
 
+            case "sell":
+                handleSellCommand(sender, args, prefix);
+                break;
+
+            case "shop":
+                handleShopCommand(sender, prefix);
+                break;
+
+            case "market":
+                handleMarketCommand(sender, args, prefix);
+                break;
+
+            case "bounties":
+            case "bounty":
+                handleBountiesCommand(sender, prefix);
+                break;
+
             case "help":
                 showHelp(sender, prefix);
                 break;
@@ -95,9 +116,10 @@ public class GemCommand implements CommandExecutor, TabCompleter {
                 return;
             }
 
-            long gems = plugin.getGems(target);
-            sender.sendMessage(prefix + ChatColor.GREEN + target.getName() + " has " +
-                    ChatColor.GOLD + formatNumber(gems) + ChatColor.GREEN + " gems.");
+            UUID uuid = target.getUniqueId();
+            String name = target.getName();
+            plugin.getCommandPipeline().submit(sender, () -> reply(sender, prefix + ChatColor.GREEN + name + " has " +
+                    ChatColor.GOLD + formatNumber(plugin.getGems(uuid)) + ChatColor.GREEN + " gems."));
             return;
         }
 
@@ -107,11 +129,57 @@ public class GemCommand implements CommandExecutor, TabCompleter {
             return;
         }
 
-        Player player = (Player) sender;
-        long gems = plugin.getGems(player);
+        sendOwnBalance((Player) sender, prefix, true);
+    }
+
+    /**
+     * Tell a player their balance, read after any of their earlier commands have applied
+     */
+    private void sendOwnBalance(Player player, String prefix, boolean withCurrencies) {
+        UUID uuid = player.getUniqueId();
+
+        plugin.getCommandPipeline().submit(player, () -> {
+            List<String> lines = new ArrayList<>();
+            lines.add(prefix + ChatColor.GREEN + "You have " +
+                    ChatColor.GOLD + formatNumber(plugin.getGems(uuid)) + ChatColor.GREEN + " gems.");
+            addExpiringNotice(uuid, prefix, lines);
+            if (withCurrencies) {
+                addOtherCurrencies(uuid, prefix, lines);
+            }
+            return reply(player, lines);
+        });
+    }
+
+    /**
+     * List a player's balance in every extra currency they hold
+     */
+    private void addOtherCurrencies(UUID uuid, String prefix, List<String> lines) {
+        GemLedger ledger = plugin.getLedger();
+        List<String> currencies = ledger.getCurrencyNames();
+
+        for (int currency = 1; currency < currencies.size(); currency++) {
+            long balance = ledger.get(uuid, currency);
+            if (balance > 0) {
+                lines.add(prefix + ChatColor.GREEN + "You have " + ChatColor.GOLD +
+                        formatNumber(balance) + ChatColor.GREEN + " " + currencies.get(currency) + ".");
+            }
+        }
+    }
+
+    /**
+     * Note how many of a player's gems come from expiring grants
+     */
+    private void addExpiringNotice(UUID uuid, String prefix, List<String> lines) {
+        GemGrantManager grantManager = plugin.getGrantManager();
+        long expiring = grantManager.getExpiringGems(uuid);
+        if (expiring <= 0) {
+            return;
+        }
 
-        sender.sendMessage(prefix + ChatColor.GREEN + "You have " +
-                ChatColor.GOLD + formatNumber(gems) + ChatColor.GREEN + " gems.");
+        long days = TimeUnit.MILLISECONDS.toDays(
+                Math.max(0, grantManager.getNextExpiry(uuid) - System.currentTimeMillis()));
+        lines.add(prefix + ChatColor.YELLOW + formatNumber(expiring) + " of them are bonus gems, " +
+                "the next ones expire in " + days + " days.");
     }
 
     /**
@@ -133,49 +201,401 @@ public class GemCommand implements CommandExecutor, TabCompleter {
             return;
         }
 
+        long amount;
+        try {
+            amount = Long.parseLong(args[2]);
+        } catch (NumberFormatException e) {
+            sender.sendMessage(prefix + ChatColor.RED + "Invalid amount.");
+            return;
+        }
+
+        if (amount <= 0) {
+            sender.sendMessage(prefix + ChatColor.RED + "Amount must be greater than 0.");
+            return;
+        }
+
+        GemConfig config = plugin.getGemConfig();
+        if (amount < config.getSendMin()) {
+            sender.sendMessage(prefix + ChatColor.RED + "You cannot send less than " +
+                    formatNumber(config.getSendMin()) + " gems.");
+            return;
+        }
+
+        if (config.getSendMax() > 0 && amount > config.getSendMax()) {
+            sender.sendMessage(prefix + ChatColor.RED + "You cannot send more than " +
+                    formatNumber(config.getSendMax()) + " gems.");
+            return;
+        }
+
         Player player = (Player) sender;
-        Player target = Bukkit.getPlayer(args[1]);
+        UUID uuid = player.getUniqueId();
+
+        // Throttled before the lookup so spam never reaches it, with the token refunded if nobody is found
+        GemRateLimitManager rateLimitManager = plugin.getRateLimitManager();
+        if (!rateLimitManager.tryAcquire(uuid)) {
+            sender.sendMessage(rateLimitManager.getCooldownMessage());
+            return;
+        }
+
+        String name = player.getName();
+        Player onlineTarget = Bukkit.getPlayer(args[1]);
+
+        // Offline lookups and the transfer itself happen off the main thread
+        plugin.getCommandPipeline().submit(sender, () -> {
+            OfflinePlayer target = onlineTarget != null ? onlineTarget : plugin.findPlayer(args[1]);
+            if (target == null) {
+                rateLimitManager.release(uuid);
+                return reply(sender, prefix + ChatColor.RED + "Player not found.");
+            }
+
+            UUID targetUuid = target.getUniqueId();
+            if (uuid.equals(targetUuid)) {
+                rateLimitManager.release(uuid);
+                return reply(sender, prefix + ChatColor.RED + "You cannot send gems to yourself.");
+            }
+
+            GemAnomalyManager anomalyManager = plugin.getAnomalyManager();
+            if (anomalyManager.isFrozen(uuid)) {
+                return reply(sender, prefix + ChatColor.RED + "Your gems are frozen pending review by an admin.");
+            }
+
+            if (anomalyManager.isFrozen(targetUuid)) {
+                return reply(sender, prefix + ChatColor.RED + target.getName() + " cannot receive gems right now.");
+            }
+
+            // Bonus gems from expiring grants stay with the player who was granted them
+            long playerGems = plugin.getTransferableGems(uuid);
+            if (playerGems < amount || !plugin.removeTransferableGems(uuid, amount)) {
+                return reply(sender, prefix + ChatColor.RED + "You don't have enough gems. You need " +
+                        amount + " but only have " + playerGems + " that can be sent.");
+            }
 
-        if (target == null) {
-            sender.sendMessage(prefix + ChatColor.RED + "Player not found.");
+            // Transfer the gems
+            plugin.addGems(targetUuid, amount);
+            anomalyManager.recordTransfer(uuid, targetUuid, amount);
+
+            String targetName = target.getName();
+            return () -> {
+                // Send messages
+                sender.sendMessage(prefix + ChatColor.GREEN + "You sent " + ChatColor.GOLD +
+                        formatNumber(amount) + ChatColor.GREEN + " gems to " + targetName + ".");
+
+                Player online = Bukkit.getPlayer(targetUuid);
+                if (online != null) {
+                    online.sendMessage(prefix + ChatColor.GREEN + "You received " + ChatColor.GOLD +
+                            formatNumber(amount) + ChatColor.GREEN + " gems from " + name + ".");
+                } else {
+                    plugin.getMailManager().deliver(targetUuid, name, "gems", amount);
+                }
+            };
+        });
+    }
+
+    /**
+     * Handle the sell command
+     */
+    private void handleSellCommand(CommandSender sender, String[] args, String prefix) {
+        if (!(sender instanceof Player)) {
+            sender.sendMessage(prefix + ChatColor.RED + "This command can only be used by players.");
             return;
         }
 
-        if (player.equals(target)) {
-            sender.sendMessage(prefix + ChatColor.RED + "You cannot send gems to yourself.");
+        if (!sender.hasPermission("gemextension.sell")) {
+            sender.sendMessage(prefix + ChatColor.RED + "You don't have permission to sell Pokemon.");
             return;
         }
 
-        long amount;
+        if (args.length < 2) {
+            sender.sendMessage(prefix + ChatColor.RED + "Usage: /gem sell <slot> [confirm]");
+            return;
+        }
+
+        GemSellManager sellManager = plugin.getSellManager();
+        PixelmonPartyBridge bridge = sellManager.getBridge();
+        if (!sellManager.isEnabled() || bridge == null) {
+            sender.sendMessage(prefix + ChatColor.RED + "Selling Pokemon is not available on this server.");
+            return;
+        }
+
+        int slot;
         try {
-            amount = Long.parseLong(args[2]);
+            slot = Integer.parseInt(args[1]);
         } catch (NumberFormatException e) {
-            sender.sendMessage(prefix + ChatColor.RED + "Invalid amount.");
+            sender.sendMessage(prefix + ChatColor.RED + "Invalid slot.");
             return;
         }
 
-        if (amount <= 0) {
-            sender.sendMessage(prefix + ChatColor.RED + "Amount must be greater than 0.");
+        if (slot < 1 || slot > 6) {
+            sender.sendMessage(prefix + ChatColor.RED + "Slot must be between 1 and 6.");
+            return;
+        }
+
+        Player player = (Player) sender;
+        PixelmonPartyBridge.PartyPokemon pokemon = bridge.getPartyPokemon(player, slot);
+        if (pokemon == null) {
+            sender.sendMessage(prefix + ChatColor.RED + "There is no Pokemon in that slot.");
             return;
         }
 
-        long playerGems = plugin.getGems(player);
-        if (playerGems < amount) {
-            sender.sendMessage(prefix + ChatColor.RED + "You don't have enough gems. You need " +
-                    amount + " but only have " + playerGems + ".");
+        long price = sellManager.quote(pokemon);
+        if (price <= 0) {
+            sender.sendMessage(prefix + ChatColor.RED + pokemon.getSpecies() + " cannot be sold.");
             return;
         }
 
-        // Transfer the gems
-        plugin.removeGems(player, amount);
-        plugin.addGems(target, amount);
+        // Quote only unless confirmed
+        if (args.length < 3 || !args[2].equalsIgnoreCase("confirm")) {
+            sender.sendMessage(prefix + ChatColor.GREEN + pokemon.getSpecies() + " is worth " + ChatColor.GOLD +
+                    formatNumber(price) + ChatColor.GREEN + " gems. Use /gem sell " + slot + " confirm to sell it.");
+            return;
+        }
 
-        // Send messages
-        sender.sendMessage(prefix + ChatColor.GREEN + "You sent " + ChatColor.GOLD +
-                formatNumber(amount) + ChatColor.GREEN + " gems to " + target.getName() + ".");
+        long paid = sellManager.sell(player, slot);
+        if (paid < 0) {
+            sender.sendMessage(prefix + ChatColor.RED + "Could not sell that Pokemon.");
+            return;
+        }
 
-        target.sendMessage(prefix + ChatColor.GREEN + "You received " + ChatColor.GOLD +
-                formatNumber(amount) + ChatColor.GREEN + " gems from " + player.getName() + ".");
+        sender.sendMessage(prefix + ChatColor.GREEN + "You sold " + pokemon.getSpecies() + " for " +
+                ChatColor.GOLD + formatNumber(paid) + ChatColor.GREEN + " gems.");
+    }
+
+    /**
+     * Handle the shop command
+     */
+    private void handleShopCommand(CommandSender sender, String prefix) {
+        if (!(sender instanceof Player)) {
+            sender.sendMessage(prefix + ChatColor.RED + "This command can only be used by players.");
+            return;
+        }
+
+        if (!sender.hasPermission("gemextension.shop")) {
+            sender.sendMessage(prefix + ChatColor.RED + "You don't have permission to use the gem shop.");
+            return;
+        }
+
+        plugin.getShopManager().open((Player) sender, 0);
+    }
+
+    /**
+     * Handle the market command
+     */
+    private void handleMarketCommand(CommandSender sender, String[] args, String prefix) {
+        if (!(sender instanceof Player)) {
+            sender.sendMessage(prefix + ChatColor.RED + "This command can only be used by players.");
+            return;
+        }
+
+        if (!sender.hasPermission("gemextension.market")) {
+            sender.sendMessage(prefix + ChatColor.RED + "You don't have permission to use the market.");
+            return;
+        }
+
+        GemMarketManager marketManager = plugin.getMarketManager();
+        if (!marketManager.isEnabled()) {
+            sender.sendMessage(prefix + ChatColor.RED + "The market is closed on this server.");
+            return;
+        }
+
+        if (args.length < 2) {
+            sender.sendMessage(prefix + ChatColor.RED + "Usage: /gem market <buy|sell|book|orders|cancel|claim>");
+            return;
+        }
+
+        Player player = (Player) sender;
+        UUID uuid = player.getUniqueId();
+        String action = args[1].toLowerCase();
+
+        switch (action) {
+            case "book":
+                if (args.length < 3) {
+                    sender.sendMessage(prefix + ChatColor.RED + "Usage: /gem market book <item>");
+                    return;
+                }
+
+                Material bookItem = matchMarketItem(args[2]);
+                if (bookItem == null) {
+                    sender.sendMessage(prefix + ChatColor.RED + "Unknown item.");
+                    return;
+                }
+
+                marketManager.describeBook(bookItem.name(), 5, lines -> sendLines(sender, prefix, lines));
+                return;
+
+            case "orders":
+                marketManager.describeOrders(uuid, lines -> sendLines(sender, prefix, lines));
+                return;
+
+            case "claim":
+                claimMarketItems(player, prefix);
+                return;
+
+            case "buy":
+            case "sell":
+            case "cancel":
+                break;
+
+            default:
+                sender.sendMessage(prefix + ChatColor.RED + "Usage: /gem market <buy|sell|book|orders|cancel|claim>");
+                return;
+        }
+
+        // Everything below moves gems or items, so it shares the transfer limits
+        GemRateLimitManager rateLimitManager = plugin.getRateLimitManager();
+        if (!rateLimitManager.tryAcquire(uuid)) {
+            sender.sendMessage(rateLimitManager.getCooldownMessage());
+            return;
+        }
+
+        if (action.equals("cancel")) {
+            long id;
+            try {
+                id = Long.parseLong(args.length > 2 ? args[2].replace("#", "") : "");
+            } catch (NumberFormatException e) {
+                sender.sendMessage(prefix + ChatColor.RED + "Usage: /gem market cancel <order>");
+                return;
+            }
+
+            marketManager.cancel(uuid, id, cancelled -> sender.sendMessage(prefix + (cancelled ?
+                    ChatColor.GREEN + "Order #" + id + " cancelled, its gems or items were returned." :
+                    ChatColor.RED + "You have no open order #" + id + ".")));
+            return;
+        }
+
+        if (args.length < 5) {
+            sender.sendMessage(prefix + ChatColor.RED + "Usage: /gem market " + action + " <item> <amount> <price each>");
+            return;
+        }
+
+        Material item = matchMarketItem(args[2]);
+        if (item == null) {
+            sender.sendMessage(prefix + ChatColor.RED + "Unknown item.");
+            return;
+        }
+
+        int amount;
+        long price;
+        try {
+            amount = Integer.parseInt(args[3]);
+            price = Long.parseLong(args[4]);
+        } catch (NumberFormatException e) {
+            sender.sendMessage(prefix + ChatColor.RED + "Invalid amount or price.");
+            return;
+        }
+
+        if (amount <= 0 || price <= 0) {
+            sender.sendMessage(prefix + ChatColor.RED + "Amount and price must be greater than 0.");
+            return;
+        }
+
+        if (plugin.getAnomalyManager().isFrozen(uuid)) {
+            sender.sendMessage(prefix + ChatColor.RED + "Your gems are frozen pending review by an admin.");
+            return;
+        }
+
+        String type = item.name();
+        if (action.equals("sell")) {
+            // Only plain items are listed, so the buyer gets exactly what they ordered
+            ItemStack listed = new ItemStack(item, amount);
+            PlayerInventory inventory = player.getInventory();
+            if (!inventory.containsAtLeast(new ItemStack(item, 1), amount) || !inventory.removeItem(listed).isEmpty()) {
+                sender.sendMessage(prefix + ChatColor.RED + "You don't have " + amount + " plain " + type + " to sell.");
+                return;
+            }
+
+            long id = marketManager.placeSell(uuid, type, amount, price);
+            sender.sendMessage(prefix + ChatColor.GREEN + "Order #" + id + " placed to sell " + amount + " " + type +
+                    " at " + ChatColor.GOLD + formatNumber(price) + ChatColor.GREEN + " gems each.");
+            return;
+        }
+
+        // The order's gems are taken with the sender's other balance changes
+        plugin.getCommandPipeline().submit(sender, () -> {
+            long id = marketManager.placeBuy(uuid, type, amount, price);
+            if (id < 0) {
+                return reply(sender, prefix + ChatColor.RED + "You don't have enough gems to buy " + amount + " " +
+                        type + " at " + formatNumber(price) + " each.");
+            }
+
+            return reply(sender, prefix + ChatColor.GREEN + "Order #" + id + " placed to buy " + amount + " " + type +
+                    " at up to " + ChatColor.GOLD + formatNumber(price) + ChatColor.GREEN + " gems each.");
+        });
+    }
+
+    /**
+     * Give a player everything in their market claim box that fits in their inventory
+     */
+    private void claimMarketItems(Player player, String prefix) {
+        GemMarketManager marketManager = plugin.getMarketManager();
+        Map<String, Long> claimed = marketManager.takeClaims(player.getUniqueId());
+        if (claimed.isEmpty()) {
+            player.sendMessage(prefix + ChatColor.YELLOW + "You have nothing to claim.");
+            return;
+        }
+
+        PlayerInventory inventory = player.getInventory();
+        long given = 0;
+        boolean full = false;
+
+        for (Map.Entry<String, Long> claim : claimed.entrySet()) {
+            Material item = Material.matchMaterial(claim.getKey());
+            if (item == null) {
+                plugin.getLogger().warning("Unknown market item " + claim.getKey() + " claimed by " + player.getName());
+                continue;
+            }
+
+            long left = claim.getValue();
+            while (left > 0 && !full) {
+                int stack = (int) Math.min(left, item.getMaxStackSize());
+                left -= stack;
+                for (ItemStack leftover : inventory.addItem(new ItemStack(item, stack)).values()) {
+                    left += leftover.getAmount();
+                    full = true;
+                }
+            }
+
+            given += claim.getValue() - left;
+            if (left > 0) {
+                marketManager.addClaim(player.getUniqueId(), claim.getKey(), left);
+            }
+        }
+
+        player.sendMessage(prefix + ChatColor.GREEN + "You claimed " + formatNumber(given) + " items." +
+                (full ? ChatColor.YELLOW + " Your inventory is full, claim again to collect the rest." : ""));
+    }
+
+    /**
+     * Find an item that can be traded on the market
+     */
+    private Material matchMarketItem(String name) {
+        Material item = Material.matchMaterial(name);
+        return item != null && item.isItem() && !item.isAir() ? item : null;
+    }
+
+    /**
+     * Send lines with the prefix
+     */
+    private void sendLines(CommandSender sender, String prefix, List<String> lines) {
+        for (String line : lines) {
+            sender.sendMessage(prefix + line);
+        }
+    }
+
+    /**
+     * Handle the bounties command
+     */
+    private void handleBountiesCommand(CommandSender sender, String prefix) {
+        if (!(sender instanceof Player)) {
+            sender.sendMessage(prefix + ChatColor.RED + "This command can only be used by players.");
+            return;
+        }
+
+        if (!sender.hasPermission("gemextension.bounties")) {
+            sender.sendMessage(prefix + ChatColor.RED + "You don't have permission to view bounties.");
+            return;
+        }
+
+        plugin.getBountyManager().showBoard((Player) sender, prefix);
     }
 
     /**
@@ -186,12 +606,30 @@ public class GemCommand implements CommandExecutor, TabCompleter {
         sender.sendMessage(ChatColor.GOLD + "/gem " + ChatColor.YELLOW + "- Show your gem balance");
         sender.sendMessage(ChatColor.GOLD + "/gem balance [player] " + ChatColor.YELLOW + "- Check gem balance");
         sender.sendMessage(ChatColor.GOLD + "/gem send <player> <amount> " + ChatColor.YELLOW + "- Send gems to a player");
+        sender.sendMessage(ChatColor.GOLD + "/gem sell <slot> [confirm] " + ChatColor.YELLOW + "- Sell a party Pokemon for gems");
+        sender.sendMessage(ChatColor.GOLD + "/gem shop " + ChatColor.YELLOW + "- Open the gem shop");
+        sender.sendMessage(ChatColor.GOLD + "/gem market <buy|sell|book|orders|cancel|claim> " + ChatColor.YELLOW + "- Trade items for gems");
+        sender.sendMessage(ChatColor.GOLD + "/gem bounties " + ChatColor.YELLOW + "- Show your capture bounties");
 
         if (sender.hasPermission("gemextension.admin")) {
             sender.sendMessage(ChatColor.GOLD + "/gemadmin " + ChatColor.YELLOW + "- Admin commands");
         }
     }
 
+    /**
+     * Build a reply that sends messages to a sender
+     */
+    private static Runnable reply(CommandSender sender, String... lines) {
+        return () -> sender.sendMessage(lines);
+    }
+
+    /**
+     * Build a reply that sends a list of messages to a sender
+     */
+    private static Runnable reply(CommandSender sender, List<String> lines) {
+        return reply(sender, lines.toArray(new String[0]));
+    }
+
     /**
      * Format a number with commas
      */
@@ -220,6 +658,13 @@ public class GemCommand implements CommandExecutor, TabCompleter {
                         .map(Player::getName)
                         .filter(name -> name.toLowerCase().startsWith(arg))
                         .collect(Collectors.toList());
+            } else if (args[0].equalsIgnoreCase("market") && sender.hasPermission("gemextension.market")) {
+                String arg = args[1].toLowerCase();
+                for (String marketCommand : marketCommands) {
+                    if (marketCommand.startsWith(arg)) {
+                        completions.add(marketCommand);
+                    }
+                }
             }
         } else if (args.length == 3) {
             // Third argument - provide suggested amounts for send command
@@ -0,0 +1,64 @@
+package com.blissy.gemextension;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * Runs the slow half of commands off the main thread
+ *
+ * Commands parse and validate their arguments on the main thread, then hand a
+ * stage to the pipeline. The stage resolves players and changes balances on an
+ * async worker and returns the reply, which is run back on the main thread. Work
+ * from one sender is chained, so their commands resolve, mutate and reply in the
+ * order they were typed, while different senders run in parallel.
+ */
+public class GemCommandPipeline {
+
+    private final GemExtensionPlugin plugin;
+    private final Map<Object, CompletableFuture<Void>> queues = new ConcurrentHashMap<>();
+    private final Executor worker;
+    private final Executor mainThread;
+
+    /**
+     * Constructor
+     * @param plugin GemExtensionPlugin instance
+     */
+    public GemCommandPipeline(GemExtensionPlugin plugin) {
+        this.plugin = plugin;
+        this.worker = task -> Bukkit.getScheduler().runTaskAsynchronously(plugin, task);
+        this.mainThread = task -> Bukkit.getScheduler().runTask(plugin, task);
+    }
+
+    /**
+     * Queue the async stage of a command behind the sender's earlier commands
+     * @param sender Sender of the command
+     * @param stage Resolves and mutates on a worker, returning the reply to run on the main thread
+     */
+    public void submit(CommandSender sender, Supplier<Runnable> stage) {
+        Object key = sender instanceof Player ? ((Player) sender).getUniqueId() : sender;
+
+        CompletableFuture<Void> queued = queues.compute(key, (k, previous) ->
+                (previous != null ? previous : CompletableFuture.<Void>completedFuture(null))
+                        .thenApplyAsync(ignored -> stage.get(), worker)
+                        .thenAcceptAsync(Runnable::run, mainThread)
+                        .exceptionally(e -> {
+                            // A failed command must not hold up the sender's next one
+                            plugin.getLogger().log(Level.SEVERE, "Gem command failed", e);
+                            mainThread.execute(() -> sender.sendMessage(plugin.getPrefix() + " " + ChatColor.RED +
+                                    "Something went wrong, see the console for details."));
+                            return null;
+                        }));
+
+        // Drop the queue once it is idle so it does not outlive the sender
+        queued.whenComplete((ignored, e) -> queues.remove(key, queued));
+    }
+}
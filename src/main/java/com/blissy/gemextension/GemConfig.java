@@ -1,52 +1,100 @@
 package com.blissy.gemextension;
 
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
 
 /**
- * Configuration manager for GemExtension
+ * Immutable snapshot of the core GemExtension settings
+ *
+ * A snapshot is built and validated in one go, then published by the plugin
+ * through a single volatile reference. Readers never lock and never see a
+ * half-applied reload, they either get the old snapshot or the new one.
  */
-public class GemConfig {
+public final class GemConfig {
 
-    private final GemExtensionPlugin plugin;
-    private int defaultBalance;
-    private int sendMin;
-    private int sendMax;
-    private int topUpdateInterval;
-    private String prefix;
+    private final int defaultBalance;
+    private final int sendMin;
+    private final int sendMax;
+    private final int topUpdateInterval;
+    private final String prefix;
 
     /**
      * Constructor
-     * @param plugin GemExtensionPlugin instance
      */
-    public GemConfig(GemExtensionPlugin plugin) {
-        this.plugin = plugin;
-        loadConfig();
+    private GemConfig(int defaultBalance, int sendMin, int sendMax, int topUpdateInterval, String prefix) {
+        this.defaultBalance = defaultBalance;
+        this.sendMin = sendMin;
+        this.sendMax = sendMax;
+        this.topUpdateInterval = topUpdateInterval;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Build a snapshot from a loaded configuration
+     * @param config Configuration to read
+     * @return Validated snapshot
+     * @throws IllegalArgumentException If a value is out of range
+     */
+    public static GemConfig from(FileConfiguration config) {
+        int defaultBalance = config.getInt("default-balance", 10);
+        int sendMin = config.getInt("send-amount-limit.min", 1);
+        int sendMax = config.getInt("send-amount-limit.max", 1000);
+        int topUpdateInterval = config.getInt("balance-top-update-interval", 5);
+        String prefix = ChatColor.translateAlternateColorCodes('&', config.getString("prefix", "&a[Gems]"));
+
+        if (defaultBalance < 0) {
+            throw new IllegalArgumentException("default-balance cannot be negative");
+        }
+        if (sendMin < 1) {
+            throw new IllegalArgumentException("send-amount-limit.min must be at least 1");
+        }
+        if (sendMax < 0 || (sendMax > 0 && sendMax < sendMin)) {
+            throw new IllegalArgumentException("send-amount-limit.max must be 0 or at least send-amount-limit.min");
+        }
+        if (topUpdateInterval < 1) {
+            throw new IllegalArgumentException("balance-top-update-interval must be at least 1 minute");
+        }
+
+        return new GemConfig(defaultBalance, sendMin, sendMax, topUpdateInterval, prefix);
+    }
+
+    /**
+     * Parse a configuration file without applying it
+     * @param file config.yml
+     * @return Parsed configuration
+     * @throws IllegalArgumentException If the file cannot be parsed
+     */
+    public static YamlConfiguration parse(File file) {
+        YamlConfiguration config = new YamlConfiguration();
+        try {
+            config.load(file);
+        } catch (IOException | InvalidConfigurationException e) {
+            throw new IllegalArgumentException("could not parse " + file.getName() + ": " + e.getMessage(), e);
+        }
+        return config;
     }
 
     /**
-     * Load configuration from config.yml
+     * Read and validate a snapshot straight from a file
+     * @param file config.yml
+     * @return Validated snapshot
+     * @throws IllegalArgumentException If the file cannot be parsed or a value is out of range
      */
-    public void loadConfig() {
-        // Save default config if it doesn't exist
-        plugin.saveDefaultConfig();
-
-        // Reload config
-        plugin.reloadConfig();
-        FileConfiguration config = plugin.getConfig();
-
-        // Load values
-        defaultBalance = config.getInt("default-balance", 10);
-        sendMin = config.getInt("send-amount-limit.min", 1);
-        sendMax = config.getInt("send-amount-limit.max", 1000);
-        topUpdateInterval = config.getInt("balance-top-update-interval", 5);
-        prefix = config.getString("prefix", "&a[Gems]");
+    public static GemConfig read(File file) {
+        return from(parse(file));
     }
 
     /**
-     * Reload the configuration
+     * Get a snapshot of the built-in defaults
+     * @return Default snapshot
      */
-    public void reloadConfig() {
-        loadConfig();
+    public static GemConfig defaults() {
+        return from(new YamlConfiguration());
     }
 
     /**
@@ -67,7 +115,7 @@ public class GemConfig {
 
     /**
      * Get the maximum amount that can be sent
-     * @return Maximum send amount, or -1 if no limit
+     * @return Maximum send amount, or 0 if no limit
      */
     public int getSendMax() {
         return sendMax;
@@ -83,9 +131,9 @@ public class GemConfig {
 
     /**
      * Get the plugin's message prefix
-     * @return Message prefix
+     * @return Message prefix with colors applied
      */
     public String getPrefix() {
         return prefix;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,112 @@
+package com.blissy.gemextension;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+
+/**
+ * Reloads the configuration when config.yml changes on disk
+ *
+ * The file's timestamp and size are checked off the main thread. A change is only
+ * picked up once it has stayed the same for one check, so a file still being
+ * written is not read halfway. The new file is parsed and validated off the main
+ * thread too, and only a valid one is handed to the main thread, which applies the
+ * parsed copy as is and reloads only the managers whose settings changed.
+ */
+public class GemConfigWatcher {
+
+    private static final long CHECK_TICKS = 40L;
+
+    private final GemExtensionPlugin plugin;
+    private final File configFile;
+    private BukkitTask watchTask;
+
+    // Written by the watch task, and by manual reloads through markApplied
+    private volatile long applied;
+    private volatile long pending;
+
+    /**
+     * Constructor
+     * @param plugin GemExtensionPlugin instance
+     */
+    public GemConfigWatcher(GemExtensionPlugin plugin) {
+        this.plugin = plugin;
+        this.configFile = new File(plugin.getDataFolder(), "config.yml");
+        loadConfig();
+    }
+
+    /**
+     * Start or stop watching based on config.yml
+     */
+    public void loadConfig() {
+        boolean enabled = plugin.getConfig().getBoolean("watch-config", true);
+
+        if (enabled && watchTask == null) {
+            applied = stamp();
+            pending = applied;
+            watchTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::check, CHECK_TICKS, CHECK_TICKS);
+        } else if (!enabled && watchTask != null) {
+            shutdown();
+        }
+    }
+
+    /**
+     * Look for a settled change to config.yml
+     */
+    private void check() {
+        long current = stamp();
+        if (current == applied) {
+            pending = current;
+            return;
+        }
+
+        // Wait for the file to stop changing before reading it
+        if (current != pending) {
+            pending = current;
+            return;
+        }
+        applied = current;
+
+        YamlConfiguration parsed;
+        try {
+            parsed = GemConfig.parse(configFile);
+            GemConfig.from(parsed);
+        } catch (IllegalArgumentException e) {
+            plugin.getLogger().warning("Ignoring change to config.yml, " + e.getMessage());
+            return;
+        }
+
+        Bukkit.getScheduler().runTask(plugin, () -> {
+            plugin.applyConfig(parsed);
+            plugin.getLogger().info("config.yml changed, configuration reloaded.");
+        });
+    }
+
+    /**
+     * Record config.yml as it is now as applied, so a reload done elsewhere is not repeated
+     */
+    public void markApplied() {
+        long current = stamp();
+        pending = current;
+        applied = current;
+    }
+
+    /**
+     * Combine the file's timestamp and size into one value that changes with the file
+     */
+    private long stamp() {
+        return configFile.lastModified() * 31 + configFile.length();
+    }
+
+    /**
+     * Stop watching
+     */
+    public void shutdown() {
+        if (watchTask != null) {
+            watchTask.cancel();
+            watchTask = null;
+        }
+    }
+}
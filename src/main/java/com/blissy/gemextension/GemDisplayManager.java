@@ -0,0 +1,312 @@
+package com.blissy.gemextension;
+
+import net.md_5.bungee.api.ChatMessageType;
+import net.md_5.bungee.api.chat.TextComponent;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.scheduler.BukkitTask;
+import org.bukkit.scoreboard.Criteria;
+import org.bukkit.scoreboard.DisplaySlot;
+import org.bukkit.scoreboard.Objective;
+import org.bukkit.scoreboard.Scoreboard;
+
+import java.text.NumberFormat;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Shows players their gem balance and rank in the action bar or sidebar
+ *
+ * Nothing is redrawn on a timer. Balance changes arrive as coalesced
+ * {@link GemBalanceChangeEvent}s and rank changes from the periodic ranking, and
+ * both only mark the player dirty. Dirty players are redrawn together in a single
+ * task on the next tick, and only if the text actually changed, so idle players
+ * cost nothing.
+ */
+public class GemDisplayManager implements Listener {
+
+    /**
+     * Where the balance is shown
+     */
+    public enum DisplayMode {
+        NONE,
+        ACTIONBAR,
+        SIDEBAR
+    }
+
+    private static final String OBJECTIVE_NAME = "gemextension";
+
+    private final GemExtensionPlugin plugin;
+    private final Map<UUID, DisplayState> states = new HashMap<>();
+    private final Set<UUID> dirty = new LinkedHashSet<>();
+    private Map<UUID, Integer> ranks = new HashMap<>();
+    private BukkitTask flushTask;
+    private BukkitTask rankTask;
+
+    private DisplayMode mode;
+    private String balanceFormat;
+    private String rankFormat;
+    private String sidebarTitle;
+    private int rankedPlayers;
+
+    /**
+     * Constructor
+     * @param plugin GemExtensionPlugin instance
+     */
+    public GemDisplayManager(GemExtensionPlugin plugin) {
+        this.plugin = plugin;
+        loadConfig();
+
+        // Register events
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+    }
+
+    /**
+     * Load display settings from config.yml and redraw everyone
+     */
+    public void loadConfig() {
+        FileConfiguration config = plugin.getConfig();
+        DisplayMode previous = mode;
+
+        try {
+            mode = DisplayMode.valueOf(config.getString("display.mode", "actionbar").toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            plugin.getLogger().warning("Unknown display mode " + config.getString("display.mode") + ", using none.");
+            mode = DisplayMode.NONE;
+        }
+
+        // Color codes are translated once here, redraws only fill in placeholders
+        balanceFormat = ChatColor.translateAlternateColorCodes('&',
+                config.getString("display.format", "&aGems: &6%amount%"));
+        rankFormat = ChatColor.translateAlternateColorCodes('&',
+                config.getString("display.rank-format", "&aRank: &6#%rank%"));
+        sidebarTitle = ChatColor.translateAlternateColorCodes('&',
+                config.getString("display.sidebar-title", "&a&lGems"));
+        rankedPlayers = Math.max(0, config.getInt("display.ranked-players", 10));
+
+        // Drop our sidebars, they are rebuilt below if still wanted
+        if (previous == DisplayMode.SIDEBAR) {
+            for (UUID uuid : states.keySet()) {
+                Player player = Bukkit.getPlayer(uuid);
+                if (player != null) {
+                    player.setScoreboard(Bukkit.getScoreboardManager().getMainScoreboard());
+                }
+            }
+        }
+
+        if (rankTask != null) {
+            rankTask.cancel();
+            rankTask = null;
+        }
+        if (mode != DisplayMode.NONE && rankedPlayers > 0) {
+            long period = plugin.getGemConfig().getTopUpdateInterval() * 1200L;
+            rankTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::updateRanks, 20L, period);
+        }
+
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            states.put(player.getUniqueId(), new DisplayState());
+            markDirty(player.getUniqueId());
+        }
+    }
+
+    /**
+     * Queue a redraw for a player on the next tick
+     * @param uuid Player to redraw
+     */
+    public void markDirty(UUID uuid) {
+        if (mode == DisplayMode.NONE || !states.containsKey(uuid)) {
+            return;
+        }
+
+        dirty.add(uuid);
+        if (flushTask == null) {
+            flushTask = Bukkit.getScheduler().runTask(plugin, this::flush);
+        }
+    }
+
+    /**
+     * Redraw every dirty player whose text changed
+     */
+    private void flush() {
+        flushTask = null;
+
+        for (UUID uuid : dirty) {
+            DisplayState state = states.get(uuid);
+            Player player = Bukkit.getPlayer(uuid);
+            if (state == null || player == null) {
+                continue;
+            }
+
+            long balance = plugin.getGems(uuid);
+            int rank = ranks.getOrDefault(uuid, -1);
+            if (state.drawn && balance == state.balance && rank == state.rank) {
+                continue;
+            }
+
+            if (balance != state.balance || !state.drawn) {
+                state.balanceLine = balanceFormat.replace("%amount%", formatNumber(balance));
+            }
+            if (rank != state.rank || !state.drawn) {
+                state.rankLine = rank > 0 ? rankFormat.replace("%rank%", String.valueOf(rank)) : null;
+            }
+            state.balance = balance;
+            state.rank = rank;
+            state.drawn = true;
+
+            if (mode == DisplayMode.ACTIONBAR) {
+                String text = state.rankLine != null ? state.balanceLine + ChatColor.GRAY + " | " + state.rankLine
+                        : state.balanceLine;
+                player.spigot().sendMessage(ChatMessageType.ACTION_BAR, TextComponent.fromLegacyText(text));
+            } else if (mode == DisplayMode.SIDEBAR) {
+                drawSidebar(player, state);
+            }
+        }
+
+        dirty.clear();
+    }
+
+    /**
+     * Update a player's sidebar, swapping only the lines that changed
+     */
+    private void drawSidebar(Player player, DisplayState state) {
+        Scoreboard scoreboard = player.getScoreboard();
+        Objective objective = scoreboard.getObjective(OBJECTIVE_NAME);
+        if (objective == null) {
+            scoreboard = Bukkit.getScoreboardManager().getNewScoreboard();
+            objective = scoreboard.registerNewObjective(OBJECTIVE_NAME, Criteria.DUMMY, sidebarTitle);
+            objective.setDisplaySlot(DisplaySlot.SIDEBAR);
+            player.setScoreboard(scoreboard);
+            state.sidebarBalance = null;
+            state.sidebarRank = null;
+        }
+
+        if (!state.balanceLine.equals(state.sidebarBalance)) {
+            if (state.sidebarBalance != null) {
+                scoreboard.resetScores(state.sidebarBalance);
+            }
+            objective.getScore(state.balanceLine).setScore(2);
+            state.sidebarBalance = state.balanceLine;
+        }
+
+        if (state.rankLine == null ? state.sidebarRank != null : !state.rankLine.equals(state.sidebarRank)) {
+            if (state.sidebarRank != null) {
+                scoreboard.resetScores(state.sidebarRank);
+            }
+            if (state.rankLine != null) {
+                objective.getScore(state.rankLine).setScore(1);
+            }
+            state.sidebarRank = state.rankLine;
+        }
+    }
+
+    /**
+     * Rank the top balances off the main thread and mark players whose rank moved
+     */
+    private void updateRanks() {
+        int limit = rankedPlayers;
+        PriorityQueue<Map.Entry<UUID, Long>> top = new PriorityQueue<>(limit + 1, Map.Entry.comparingByValue());
+
+        // Keep only the best few instead of sorting every holder
+        GemLedger.Cursor cursor = plugin.getLedger().cursor(GemLedger.GEMS);
+        while (cursor.next()) {
+            // Most balances lose to the current minimum, so they never become entries
+            if (!top.isEmpty() && top.size() == limit && cursor.getBalance() <= top.peek().getValue()) {
+                continue;
+            }
+
+            top.offer(new AbstractMap.SimpleImmutableEntry<>(cursor.getPlayer(), cursor.getBalance()));
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+
+        Map<UUID, Integer> updated = new HashMap<>();
+        for (int rank = top.size(); rank > 0; rank--) {
+            updated.put(top.poll().getKey(), rank);
+        }
+
+        Bukkit.getScheduler().runTask(plugin, () -> {
+            Map<UUID, Integer> previous = ranks;
+            ranks = updated;
+
+            for (UUID uuid : states.keySet()) {
+                if (!updated.getOrDefault(uuid, -1).equals(previous.getOrDefault(uuid, -1))) {
+                    markDirty(uuid);
+                }
+            }
+        });
+    }
+
+    /**
+     * Redraw after a balance change
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onBalanceChange(GemBalanceChangeEvent event) {
+        markDirty(event.getPlayerId());
+    }
+
+    /**
+     * Start tracking joining players
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        UUID uuid = event.getPlayer().getUniqueId();
+        states.put(uuid, new DisplayState());
+        markDirty(uuid);
+    }
+
+    /**
+     * Stop tracking leaving players
+     */
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        UUID uuid = event.getPlayer().getUniqueId();
+        states.remove(uuid);
+        dirty.remove(uuid);
+    }
+
+    /**
+     * Stop the ranking task
+     */
+    public void shutdown() {
+        if (rankTask != null) {
+            rankTask.cancel();
+        }
+        if (flushTask != null) {
+            flushTask.cancel();
+        }
+    }
+
+    /**
+     * Format a number with commas
+     */
+    private String formatNumber(long number) {
+        return NumberFormat.getNumberInstance(Locale.US).format(number);
+    }
+
+    /**
+     * What was last drawn for a player
+     */
+    private static final class DisplayState {
+        private boolean drawn;
+        private long balance;
+        private int rank = -1;
+        private String balanceLine;
+        private String rankLine;
+        private String sidebarBalance;
+        private String sidebarRank;
+    }
+}
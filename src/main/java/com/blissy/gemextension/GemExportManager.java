@@ -0,0 +1,240 @@
+package com.blissy.gemextension;
+
+import org.bukkit.Bukkit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Exports a ledger column as CSV or JSON Lines for analytics
+ *
+ * The column is walked in place with a {@link GemLedger.Cursor} on a background
+ * thread and each row is encoded straight into one reusable buffer, which is
+ * drained into a file channel whenever it fills. Memory use stays the same no
+ * matter how many players the ledger holds. Only one export runs at a time.
+ */
+public class GemExportManager {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Longest row is a JSON line with a 36 character UUID and a 20 digit balance
+    private static final int MAX_ROW = 128;
+
+    /**
+     * Output formats
+     */
+    public enum Format {
+        CSV("csv"),
+        JSONL("jsonl");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    private final GemExtensionPlugin plugin;
+    private final File folder;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * Constructor
+     * @param plugin GemExtensionPlugin instance
+     */
+    public GemExportManager(GemExtensionPlugin plugin) {
+        this.plugin = plugin;
+        this.folder = new File(plugin.getDataFolder(), "exports");
+    }
+
+    /**
+     * Export one currency off the main thread
+     * @param format Output format
+     * @param currency Currency column
+     * @param done Called on the main thread with the finished file, or null if the export failed
+     * @return False if an export is already running
+     */
+    public boolean export(Format format, int currency, Consumer<File> done) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+
+        String name = plugin.getLedger().getCurrencyNames().get(currency);
+        File target = new File(folder, name + "-" + GemBackupManager.format(System.currentTimeMillis()) + "." +
+                format.extension);
+
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            File result = null;
+            try {
+                int rows = write(format, currency, name, target);
+                plugin.getLogger().info("Exported " + rows + " " + name + " balances to " + target.getName());
+                result = target;
+            } catch (IOException e) {
+                plugin.getLogger().severe("Failed to export " + name + ": " + e.getMessage());
+            } finally {
+                running.set(false);
+            }
+
+            File finished = result;
+            Bukkit.getScheduler().runTask(plugin, () -> done.accept(finished));
+        });
+        return true;
+    }
+
+    /**
+     * Check whether an export is running
+     * @return True while an export is being written
+     */
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Stream a column to a temporary file, then move it into place
+     * @return Number of rows written
+     */
+    private int write(Format format, int currency, String name, File target) throws IOException {
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Could not create " + folder.getPath());
+        }
+
+        File temp = new File(folder, target.getName() + ".tmp");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        byte[] currencyBytes = name.getBytes(StandardCharsets.UTF_8);
+        int rows = 0;
+
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (format == Format.CSV) {
+                putAscii(buffer, "uuid,");
+                buffer.put(currencyBytes);
+                buffer.put((byte) '\n');
+            }
+
+            GemLedger.Cursor cursor = plugin.getLedger().cursor(currency);
+            while (cursor.next()) {
+                if (buffer.remaining() < MAX_ROW + currencyBytes.length) {
+                    drain(buffer, channel);
+                }
+
+                if (format == Format.CSV) {
+                    putUuid(buffer, cursor.getPlayer());
+                    buffer.put((byte) ',');
+                    putLong(buffer, cursor.getBalance());
+                } else {
+                    putAscii(buffer, "{\"uuid\":\"");
+                    putUuid(buffer, cursor.getPlayer());
+                    putAscii(buffer, "\",\"currency\":\"");
+                    buffer.put(currencyBytes);
+                    putAscii(buffer, "\",\"balance\":");
+                    putLong(buffer, cursor.getBalance());
+                    buffer.put((byte) '}');
+                }
+                buffer.put((byte) '\n');
+                rows++;
+            }
+
+            drain(buffer, channel);
+            channel.force(false);
+        }
+
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return rows;
+    }
+
+    /**
+     * Write everything in the buffer to the channel and clear it
+     */
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Put a plain ASCII string
+     */
+    private static void putAscii(ByteBuffer buffer, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            buffer.put((byte) text.charAt(i));
+        }
+    }
+
+    /**
+     * Put a UUID in its usual 8-4-4-4-12 form without building a string
+     */
+    private static void putUuid(ByteBuffer buffer, UUID uuid) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        putHex(buffer, msb >>> 32, 8);
+        buffer.put((byte) '-');
+        putHex(buffer, msb >>> 16, 4);
+        buffer.put((byte) '-');
+        putHex(buffer, msb, 4);
+        buffer.put((byte) '-');
+        putHex(buffer, lsb >>> 48, 4);
+        buffer.put((byte) '-');
+        putHex(buffer, lsb, 12);
+    }
+
+    /**
+     * Put the lowest digits of a value as lowercase hex
+     */
+    private static void putHex(ByteBuffer buffer, long value, int digits) {
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            buffer.put((byte) Character.forDigit((int) (value >>> shift) & 0xF, 16));
+        }
+    }
+
+    /**
+     * Put a decimal number without building a string
+     */
+    private static void putLong(ByteBuffer buffer, long value) {
+        if (value == Long.MIN_VALUE) {
+            putAscii(buffer, Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+
+        // Digits come out backwards, so write them at the end of their slot
+        int length = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            length++;
+        }
+        int end = buffer.position() + length;
+        for (int i = end - 1; i >= end - length; i--) {
+            buffer.put(i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        buffer.position(end);
+    }
+
+    /**
+     * Parse a format name
+     * @param name csv or jsonl
+     * @return Format, or null if unknown
+     */
+    public static Format parseFormat(String name) {
+        for (Format format : Format.values()) {
+            if (format.extension.equals(name.toLowerCase(Locale.ROOT))) {
+                return format;
+            }
+        }
+        return null;
+    }
+}
@@ -2,9 +2,10 @@ package com.blissy.gemextension;
 
 import me.realized.tokenmanager.api.event.TokenManager;
 import org.bukkit.Bukkit;
-import org.bukkit.ChatColor;
+import org.bukkit.OfflinePlayer;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
@@ -16,10 +17,17 @@ import org.bukkit.plugin.java.JavaPlugin;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongUnaryOperator;
 
 /**
  * GemExtension - An extension for TokenManager that adds gem currency
@@ -27,11 +35,32 @@ import java.util.concurrent.ConcurrentHashMap;
 public class GemExtensionPlugin extends JavaPlugin implements Listener {
 
     private TokenManager tokenManager;
-    private final Map<UUID, Long> gemCache = new ConcurrentHashMap<>();
+    private GemBalanceEventManager balanceEventManager;
+    private GemRewardManager rewardManager;
+    private GemSellManager sellManager;
+    private GemShopManager shopManager;
+    private GemSweepManager sweepManager;
+    private GemGrantManager grantManager;
+    private GemBountyManager bountyManager;
+    private GemDisplayManager displayManager;
+    private GemBackupManager backupManager;
+    private GemAnomalyManager anomalyManager;
+    private GemMailManager mailManager;
+    private GemIntegrityManager integrityManager;
+    private GemLoginManager loginManager;
+    private GemIdempotencyManager idempotencyManager;
+    private GemRateLimitManager rateLimitManager;
+    private GemCommandPipeline commandPipeline;
+    private GemExportManager exportManager;
+    private GemMarketManager marketManager;
+    private GemSimulationManager simulationManager;
+    private final GemLedger ledger = new GemLedger(this::onLedgerChange);
+    private final Object saveLock = new Object();
     private File dataFile;
     private FileConfiguration dataConfig;
-    private int defaultBalance;
-    private String prefix;
+    private volatile GemConfig gemConfig;
+    private volatile FileConfiguration config;
+    private GemConfigWatcher configWatcher;
 
     @Override
     public void onEnable() {
@@ -51,7 +80,65 @@ public class GemExtensionPlugin extends JavaPlugin implements Listener {
             return;
         }
 
-        // Register commands
+        // Set up balance change events
+        balanceEventManager = new GemBalanceEventManager(this);
+
+        // Set up ledger backups
+        backupManager = new GemBackupManager(this);
+
+        // Set up gem rewards
+        rewardManager = new GemRewardManager(this);
+
+        // Set up Pokemon selling
+        sellManager = new GemSellManager(this);
+
+        // Set up the gem shop
+        shopManager = new GemShopManager(this);
+
+        // Set up ledger sweeps
+        sweepManager = new GemSweepManager(this, dataConfig);
+
+        // Set up expiring grants
+        grantManager = new GemGrantManager(this, dataConfig);
+
+        // Set up the bounty board
+        bountyManager = new GemBountyManager(this);
+
+        // Set up the balance display
+        displayManager = new GemDisplayManager(this);
+
+        // Set up the dedup cache for keyed gem operations
+        idempotencyManager = new GemIdempotencyManager(this);
+
+        // Set up transfer rate limits
+        rateLimitManager = new GemRateLimitManager(this);
+
+        // Set up transfer anomaly detection
+        anomalyManager = new GemAnomalyManager(this, dataConfig);
+
+        // Set up the offline mailbox
+        mailManager = new GemMailManager(this, dataConfig);
+
+        // Set up the ledger digest used to verify saves and backups
+        integrityManager = new GemIntegrityManager(this, dataFile);
+
+        // Set up daily login rewards
+        loginManager = new GemLoginManager(this);
+
+        // Set up ledger exports
+        exportManager = new GemExportManager(this);
+
+        // Set up the player exchange
+        marketManager = new GemMarketManager(this, dataConfig);
+
+        // Set up economy simulations
+        simulationManager = new GemSimulationManager(this);
+
+        // Reload automatically when config.yml is edited
+        configWatcher = new GemConfigWatcher(this);
+
+        // Register commands, with their slow stages run by the pipeline
+        commandPipeline = new GemCommandPipeline(this);
         getCommand("gem").setExecutor(new GemCommand(this));
         getCommand("gemadmin").setExecutor(new GemAdminCommand(this));
 
@@ -66,6 +153,51 @@ public class GemExtensionPlugin extends JavaPlugin implements Listener {
 
     @Override
     public void onDisable() {
+        if (configWatcher != null) {
+            configWatcher.shutdown();
+        }
+
+        if (sellManager != null) {
+            sellManager.shutdown();
+        }
+
+        if (sweepManager != null) {
+            sweepManager.shutdown();
+        }
+
+        if (grantManager != null) {
+            grantManager.shutdown();
+        }
+
+        if (bountyManager != null) {
+            bountyManager.shutdown();
+        }
+
+        if (displayManager != null) {
+            displayManager.shutdown();
+        }
+
+        if (balanceEventManager != null) {
+            balanceEventManager.shutdown();
+        }
+
+        if (backupManager != null) {
+            backupManager.shutdown();
+        }
+
+        if (anomalyManager != null) {
+            anomalyManager.shutdown();
+        }
+
+        // Finish queued orders before their books are saved
+        if (marketManager != null) {
+            marketManager.shutdown();
+        }
+
+        if (simulationManager != null) {
+            simulationManager.shutdown();
+        }
+
         // Save all data
         saveAllData();
 
@@ -78,9 +210,31 @@ public class GemExtensionPlugin extends JavaPlugin implements Listener {
     private void loadConfig() {
         FileConfiguration config = getConfig();
 
-        defaultBalance = config.getInt("default-balance", 10);
-        prefix = ChatColor.translateAlternateColorCodes('&',
-                config.getString("prefix", "&a[Gems]"));
+        // Published in one step so readers never see half a reload
+        try {
+            gemConfig = GemConfig.from(config);
+        } catch (IllegalArgumentException e) {
+            getLogger().warning("Invalid config.yml, using the default settings: " + e.getMessage());
+            gemConfig = GemConfig.defaults();
+        }
+
+        // Gems are always the first column, extra currencies follow in config order
+        List<String> currencies = new ArrayList<>();
+        List<Long> startBalances = new ArrayList<>();
+        currencies.add("gems");
+        startBalances.add((long) gemConfig.getDefaultBalance());
+
+        ConfigurationSection section = config.getConfigurationSection("currencies");
+        if (section != null) {
+            for (String name : section.getKeys(false)) {
+                String currency = name.toLowerCase(Locale.ROOT);
+                if (!currency.equals("gems")) {
+                    currencies.add(currency);
+                    startBalances.add(section.getLong(name + ".default-balance", 0));
+                }
+            }
+        }
+        ledger.defineCurrencies(currencies, startBalances);
     }
 
     /**
@@ -101,37 +255,141 @@ public class GemExtensionPlugin extends JavaPlugin implements Listener {
      * Load all gem data
      */
     private void loadAllData() {
-        if (dataConfig.contains("gems")) {
-            for (String uuidStr : dataConfig.getConfigurationSection("gems").getKeys(false)) {
-                try {
-                    UUID uuid = UUID.fromString(uuidStr);
-                    long gems = dataConfig.getLong("gems." + uuidStr);
-                    gemCache.put(uuid, gems);
-                } catch (IllegalArgumentException e) {
-                    getLogger().warning("Invalid UUID in gemdata.yml: " + uuidStr);
-                }
+        loadColumn("gems", GemLedger.GEMS);
+
+        List<String> currencies = ledger.getCurrencyNames();
+        for (int currency = 1; currency < currencies.size(); currency++) {
+            loadColumn("currencies." + currencies.get(currency), currency);
+        }
+    }
+
+    /**
+     * Load one currency column from gemdata.yml
+     */
+    private void loadColumn(String path, int currency) {
+        ConfigurationSection section = dataConfig.getConfigurationSection(path);
+        if (section == null) {
+            return;
+        }
+
+        for (String uuidStr : section.getKeys(false)) {
+            try {
+                UUID uuid = UUID.fromString(uuidStr);
+                ledger.set(uuid, currency, section.getLong(uuidStr));
+            } catch (IllegalArgumentException e) {
+                getLogger().warning("Invalid UUID in gemdata.yml: " + uuidStr);
             }
         }
     }
 
     /**
      * Save all gem data
+     *
+     * Balances are copied into arrays while sweep chunks and the market are held
+     * off, so the checkpoint and the market orders match the balances, and are only
+     * turned into YAML once both are free to carry on.
      */
     public void saveAllData() {
+        synchronized (saveLock) {
+            writeAllData();
+        }
+    }
+
+    /**
+     * Copy every column and write it with the rest of gemdata.yml
+     */
+    private void writeAllData() {
+        List<String> currencies = ledger.getCurrencyNames();
+        ColumnCopy[] columns = new ColumnCopy[currencies.size()];
+
+        // Keep market fills and sweep chunks out while copying so the orders and checkpoint match the balances.
+        // The market is paused before the sweep lock is taken, so waiting for it never holds up the main thread.
+        GemMarketManager.Snapshot market = marketManager != null ? marketManager.pause() : null;
+        Object sweepLock = sweepManager != null ? sweepManager.getApplyLock() : new Object();
+        Object grantLock = grantManager != null ? grantManager : new Object();
+        try {
+            synchronized (sweepLock) {
+                // Grant lots are written with the balances they were spent from
+                synchronized (grantLock) {
+                    for (int currency = 0; currency < columns.length; currency++) {
+                        columns[currency] = new ColumnCopy(ledger, currency);
+                    }
+
+                    if (grantManager != null) {
+                        grantManager.writeLots(dataConfig);
+                    }
+                }
+
+                if (sweepManager != null) {
+                    sweepManager.writeCheckpoint(dataConfig);
+                }
+            }
+        } finally {
+            if (marketManager != null) {
+                marketManager.resume();
+            }
+        }
+
         // Clear current data
         dataConfig.set("gems", null);
+        dataConfig.set("currencies", null);
+
+        // Save the ledger a whole column at a time, digesting exactly what is written
+        GemLedgerDigest written = integrityManager != null ? integrityManager.newSnapshotDigest() : null;
+        ColumnCopy gems = columns[GemLedger.GEMS];
+        for (int i = 0; i < gems.size; i++) {
+            dataConfig.set("gems." + gems.players[i].toString(), gems.balances[i]);
+            if (written != null) {
+                written.add(gems.players[i], gems.balances[i]);
+            }
+        }
+
+        if (written != null) {
+            integrityManager.writeSnapshotDigest(dataConfig, written);
+        }
 
-        // Save all cached data
-        for (Map.Entry<UUID, Long> entry : gemCache.entrySet()) {
-            dataConfig.set("gems." + entry.getKey().toString(), entry.getValue());
+        for (int currency = 1; currency < columns.length; currency++) {
+            String path = "currencies." + currencies.get(currency) + ".";
+            ColumnCopy column = columns[currency];
+            for (int i = 0; i < column.size; i++) {
+                dataConfig.set(path + column.players[i].toString(), column.balances[i]);
+            }
+        }
+
+        if (sweepManager != null) {
+            sweepManager.writeLastSeen(dataConfig);
         }
 
-        // Save to file
+        if (anomalyManager != null) {
+            anomalyManager.writeFrozen(dataConfig);
+        }
+
+        if (mailManager != null) {
+            mailManager.writeMail(dataConfig);
+        }
+
+        // Without a copy the orders from the last save are kept
+        if (market != null) {
+            marketManager.writeMarket(dataConfig, market);
+        }
+
+        // Written beside the file and moved into place, so readers never see a half-written save
+        File temp = new File(dataFile.getParentFile(), dataFile.getName() + ".tmp");
         try {
-            dataConfig.save(dataFile);
+            dataConfig.save(temp);
+            Files.move(temp.toPath(), dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
         } catch (IOException e) {
             getLogger().severe("Failed to save gemdata.yml: " + e.getMessage());
         }
+
+        if (shopManager != null) {
+            shopManager.saveStock();
+        }
+
+        if (loginManager != null) {
+            loginManager.save();
+        }
     }
 
     /**
@@ -162,10 +420,13 @@ public class GemExtensionPlugin extends JavaPlugin implements Listener {
         Player player = event.getPlayer();
         UUID uuid = player.getUniqueId();
 
-        // Load from storage if not in cache
-        if (!gemCache.containsKey(uuid)) {
-            long gems = dataConfig.getLong("gems." + uuid.toString(), defaultBalance);
-            gemCache.put(uuid, gems);
+        // New players get a row with every currency at its default
+        if (!ledger.contains(uuid)) {
+            ledger.set(uuid, GemLedger.GEMS, gemConfig.getDefaultBalance());
+        }
+
+        if (loginManager != null) {
+            loginManager.handleJoin(player);
         }
     }
 
@@ -175,7 +436,16 @@ public class GemExtensionPlugin extends JavaPlugin implements Listener {
      * @return Gem balance
      */
     public long getGems(Player player) {
-        return gemCache.getOrDefault(player.getUniqueId(), (long)defaultBalance);
+        return getGems(player.getUniqueId());
+    }
+
+    /**
+     * Get a player's gem balance
+     * @param uuid UUID of player to check
+     * @return Gem balance
+     */
+    public long getGems(UUID uuid) {
+        return ledger.get(uuid, GemLedger.GEMS);
     }
 
     /**
@@ -184,7 +454,23 @@ public class GemExtensionPlugin extends JavaPlugin implements Listener {
      * @param amount Amount to set
      */
     public void setGems(Player player, long amount) {
-        gemCache.put(player.getUniqueId(), Math.max(0, amount));
+        setGems(player.getUniqueId(), amount);
+    }
+
+    /**
+     * Set a player's gem balance
+     * @param uuid UUID of player to set balance for
+     * @param amount Amount to set
+     */
+    public void setGems(UUID uuid, long amount) {
+        long updated = Math.max(0, amount);
+
+        // Gems taken out use up expiring grants first
+        if (grantManager != null) {
+            grantManager.debit(uuid, current -> updated);
+        } else {
+            ledger.set(uuid, GemLedger.GEMS, updated);
+        }
     }
 
     /**
@@ -194,8 +480,22 @@ public class GemExtensionPlugin extends JavaPlugin implements Listener {
      * @return True if successful
      */
     public boolean addGems(Player player, long amount) {
-        long current = getGems(player);
-        setGems(player, current + amount);
+        return addGems(player.getUniqueId(), amount);
+    }
+
+    /**
+     * Add gems to a player's balance
+     * @param uuid UUID of player to add gems to
+     * @param amount Amount to add, negative amounts are clamped at a zero balance
+     * @return True if successful
+     */
+    public boolean addGems(UUID uuid, long amount) {
+        // Gems taken out use up expiring grants first
+        if (amount < 0 && grantManager != null) {
+            grantManager.debit(uuid, current -> Math.max(0, current + amount));
+        } else {
+            ledger.update(uuid, GemLedger.GEMS, current -> Math.max(0, current + amount));
+        }
         return true;
     }
 
@@ -206,15 +506,207 @@ public class GemExtensionPlugin extends JavaPlugin implements Listener {
      * @return True if successful, false if player doesn't have enough gems
      */
     public boolean removeGems(Player player, long amount) {
-        long current = getGems(player);
-        if (current < amount) {
+        return removeGems(player.getUniqueId(), amount);
+    }
+
+    /**
+     * Remove gems from a player's balance
+     * @param uuid UUID of player to remove gems from
+     * @param amount Amount to remove
+     * @return True if successful, false if player doesn't have enough gems
+     */
+    public boolean removeGems(UUID uuid, long amount) {
+        // Check and debit in one step so concurrent callers cannot overdraw
+        LongUnaryOperator debit = current -> current < amount ? current : current - amount;
+
+        // Gems taken out use up expiring grants first
+        long before = grantManager != null ? grantManager.debit(uuid, debit) : ledger.update(uuid, GemLedger.GEMS, debit);
+        return before >= amount;
+    }
+
+    /**
+     * Remove gems that are not due to expire, for transfers and escrow
+     * @param uuid UUID of player to remove gems from
+     * @param amount Amount to remove
+     * @return True if successful, false if player doesn't have enough gems outside expiring grants
+     */
+    public boolean removeTransferableGems(UUID uuid, long amount) {
+        if (grantManager != null) {
+            return grantManager.removePermanent(uuid, amount);
+        }
+
+        long before = ledger.update(uuid, GemLedger.GEMS, current -> current < amount ? current : current - amount);
+        return before >= amount;
+    }
+
+    /**
+     * Get how many of a player's gems can be sent or escrowed
+     * @param uuid UUID of player to check
+     * @return Gem balance less gems due to expire
+     */
+    public long getTransferableGems(UUID uuid) {
+        long expiring = grantManager != null ? grantManager.getExpiringGems(uuid) : 0;
+        return Math.max(0, getGems(uuid) - expiring);
+    }
+
+    /**
+     * Add gems once per idempotency key, so a retried call is not paid twice
+     * @param uuid UUID of player to add gems to
+     * @param amount Amount to add, negative amounts are clamped at a zero balance
+     * @param idempotencyKey Key identifying this operation, or null to always add
+     * @return Result of the first call with this key
+     * @throws IllegalArgumentException If the key was already used for a different operation
+     */
+    public boolean addGems(UUID uuid, long amount, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return addGems(uuid, amount);
+        }
+        return idempotencyManager.run(idempotencyKey, "add:" + uuid + ":" + amount, () -> addGems(uuid, amount));
+    }
+
+    /**
+     * Remove gems once per idempotency key, so a retried call is not charged twice
+     * @param uuid UUID of player to remove gems from
+     * @param amount Amount to remove
+     * @param idempotencyKey Key identifying this operation, or null to always remove
+     * @return Result of the first call with this key
+     * @throws IllegalArgumentException If the key was already used for a different operation
+     */
+    public boolean removeGems(UUID uuid, long amount, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return removeGems(uuid, amount);
+        }
+        return idempotencyManager.run(idempotencyKey, "remove:" + uuid + ":" + amount, () -> removeGems(uuid, amount));
+    }
+
+    /**
+     * Move gems from one player to another
+     *
+     * Gems from expiring grants cannot be moved, so they still expire. Transfers
+     * share the sender's rate limit with /gem send, are refused while either side
+     * is frozen, and count towards unusual flow alerts.
+     * @param from UUID of player sending gems
+     * @param to UUID of player receiving gems
+     * @param amount Amount to move
+     * @return True if successful, false if the sender doesn't have enough gems, is rate limited or either side is frozen
+     */
+    public boolean transferGems(UUID from, UUID to, long amount) {
+        return Boolean.TRUE.equals(transfer(from, to, amount));
+    }
+
+    /**
+     * Move gems once per idempotency key, so a retried transfer is not applied twice
+     *
+     * Refusals for a rate limit or a frozen account are not remembered, so the
+     * same key can be retried once they pass.
+     * @param from UUID of player sending gems
+     * @param to UUID of player receiving gems
+     * @param amount Amount to move
+     * @param idempotencyKey Key identifying this transfer, or null to always transfer
+     * @return Result of the first call with this key
+     * @throws IllegalArgumentException If the key was already used for a different operation
+     */
+    public boolean transferGems(UUID from, UUID to, long amount, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return transferGems(from, to, amount);
+        }
+        return idempotencyManager.runRetryable(idempotencyKey, "transfer:" + from + ":" + to + ":" + amount,
+                () -> transfer(from, to, amount));
+    }
+
+    /**
+     * Move gems with the same checks as /gem send
+     * @return True if moved, false if refused for good, null if refused for now
+     */
+    private Boolean transfer(UUID from, UUID to, long amount) {
+        if (amount <= 0 || from.equals(to)) {
             return false;
         }
 
-        setGems(player, current - amount);
+        if (anomalyManager != null && (anomalyManager.isFrozen(from) || anomalyManager.isFrozen(to))) {
+            return null;
+        }
+
+        if (rateLimitManager != null && !rateLimitManager.tryAcquire(from)) {
+            return null;
+        }
+
+        if (!removeTransferableGems(from, amount)) {
+            return false;
+        }
+        addGems(to, amount);
+
+        if (anomalyManager != null) {
+            anomalyManager.recordTransfer(from, to, amount);
+        }
         return true;
     }
 
+    /**
+     * Take back the unspent part of an expired grant
+     * @param uuid UUID of player whose grant expired
+     * @param amount Gems left in the grant
+     */
+    void expireGems(UUID uuid, long amount) {
+        if (ledger.contains(uuid)) {
+            ledger.update(uuid, GemLedger.GEMS, current -> Math.max(0, current - amount));
+        }
+    }
+
+    /**
+     * Pass gem balance changes on to backups, events and the digest, called while the player's row is held
+     */
+    private void onLedgerChange(UUID uuid, int currency, long oldBalance, long newBalance) {
+        // Backups, events and the digest only cover gems
+        if (currency != GemLedger.GEMS) {
+            return;
+        }
+
+        if (integrityManager != null) {
+            integrityManager.recordChange(uuid, oldBalance, newBalance);
+        }
+
+        if (backupManager != null) {
+            backupManager.markChanged(uuid);
+        }
+
+        if (balanceEventManager != null) {
+            balanceEventManager.record(uuid, oldBalance, newBalance);
+        }
+    }
+
+    /**
+     * Replace every gem balance in the ledger, used when restoring a backup
+     * @param balances Balances to restore, players not in it go back to the default balance
+     */
+    void replaceLedger(Map<UUID, Long> balances) {
+        for (UUID uuid : ledger.getPlayers()) {
+            if (!balances.containsKey(uuid)) {
+                ledger.set(uuid, GemLedger.GEMS, gemConfig.getDefaultBalance());
+            }
+        }
+
+        for (Map.Entry<UUID, Long> entry : balances.entrySet()) {
+            ledger.set(entry.getKey(), GemLedger.GEMS, entry.getValue());
+        }
+    }
+
+    /**
+     * Get the UUIDs of every player in the ledger
+     * @return Live, unmodifiable view of the ledger's players
+     */
+    public Set<UUID> getGemHolders() {
+        return ledger.getPlayers();
+    }
+
+    /**
+     * Get the ledger holding every currency
+     * @return GemLedger instance
+     */
+    public GemLedger getLedger() {
+        return ledger;
+    }
+
     /**
      * Get the TokenManager instance
      * @return TokenManager instance
@@ -223,12 +715,188 @@ public class GemExtensionPlugin extends JavaPlugin implements Listener {
         return tokenManager;
     }
 
+    /**
+     * Get the balance event manager
+     * @return GemBalanceEventManager instance
+     */
+    public GemBalanceEventManager getBalanceEventManager() {
+        return balanceEventManager;
+    }
+
+    /**
+     * Get the reward manager
+     * @return GemRewardManager instance
+     */
+    public GemRewardManager getRewardManager() {
+        return rewardManager;
+    }
+
+    /**
+     * Get the sell manager
+     * @return GemSellManager instance
+     */
+    public GemSellManager getSellManager() {
+        return sellManager;
+    }
+
+    /**
+     * Get the shop manager
+     * @return GemShopManager instance
+     */
+    public GemShopManager getShopManager() {
+        return shopManager;
+    }
+
+    /**
+     * Get the sweep manager
+     * @return GemSweepManager instance
+     */
+    public GemSweepManager getSweepManager() {
+        return sweepManager;
+    }
+
+    /**
+     * Get the grant manager
+     * @return GemGrantManager instance
+     */
+    public GemGrantManager getGrantManager() {
+        return grantManager;
+    }
+
+    /**
+     * Get the bounty manager
+     * @return GemBountyManager instance
+     */
+    public GemBountyManager getBountyManager() {
+        return bountyManager;
+    }
+
+    /**
+     * Get the display manager
+     * @return GemDisplayManager instance
+     */
+    public GemDisplayManager getDisplayManager() {
+        return displayManager;
+    }
+
+    /**
+     * Get the backup manager
+     * @return GemBackupManager instance
+     */
+    public GemBackupManager getBackupManager() {
+        return backupManager;
+    }
+
+    /**
+     * Get the anomaly manager
+     * @return GemAnomalyManager instance
+     */
+    public GemAnomalyManager getAnomalyManager() {
+        return anomalyManager;
+    }
+
+    /**
+     * Get the mail manager
+     * @return GemMailManager instance
+     */
+    public GemMailManager getMailManager() {
+        return mailManager;
+    }
+
+    /**
+     * Get the integrity manager
+     * @return GemIntegrityManager instance
+     */
+    public GemIntegrityManager getIntegrityManager() {
+        return integrityManager;
+    }
+
+    /**
+     * Get the login reward manager
+     * @return GemLoginManager instance
+     */
+    public GemLoginManager getLoginManager() {
+        return loginManager;
+    }
+
+    /**
+     * Get the idempotency manager
+     * @return GemIdempotencyManager instance
+     */
+    public GemIdempotencyManager getIdempotencyManager() {
+        return idempotencyManager;
+    }
+
+    /**
+     * Get the rate limit manager
+     * @return GemRateLimitManager instance
+     */
+    public GemRateLimitManager getRateLimitManager() {
+        return rateLimitManager;
+    }
+
+    /**
+     * Get the command pipeline
+     * @return GemCommandPipeline instance
+     */
+    public GemCommandPipeline getCommandPipeline() {
+        return commandPipeline;
+    }
+
+    /**
+     * Get the export manager
+     * @return GemExportManager instance
+     */
+    public GemExportManager getExportManager() {
+        return exportManager;
+    }
+
+    /**
+     * Get the market manager
+     * @return GemMarketManager instance
+     */
+    public GemMarketManager getMarketManager() {
+        return marketManager;
+    }
+
+    /**
+     * Get the simulation manager
+     * @return GemSimulationManager instance
+     */
+    public GemSimulationManager getSimulationManager() {
+        return simulationManager;
+    }
+
+    /**
+     * Find a player by name, online or not
+     * @param name Player name
+     * @return Player, or null if nobody by that name has joined the server
+     */
+    public OfflinePlayer findPlayer(String name) {
+        Player online = Bukkit.getPlayer(name);
+        if (online != null) {
+            return online;
+        }
+
+        // Only the server's own cache, never a blocking profile lookup
+        OfflinePlayer offline = Bukkit.getOfflinePlayerIfCached(name);
+        return offline != null && offline.hasPlayedBefore() ? offline : null;
+    }
+
+    /**
+     * Get the current configuration snapshot
+     * @return GemConfig snapshot, replaced as a whole on reload
+     */
+    public GemConfig getGemConfig() {
+        return gemConfig;
+    }
+
     /**
      * Get the default gem balance
      * @return Default balance
      */
     public int getDefaultBalance() {
-        return defaultBalance;
+        return gemConfig.getDefaultBalance();
     }
 
     /**
@@ -236,14 +904,179 @@ public class GemExtensionPlugin extends JavaPlugin implements Listener {
      * @return Message prefix
      */
     public String getPrefix() {
-        return prefix;
+        return gemConfig.getPrefix();
     }
 
     /**
      * Reload the plugin configuration
+     *
+     * config.yml is validated before anything is applied, so a broken edit leaves
+     * the running settings untouched.
+     * @return True if the configuration was reloaded, false if config.yml is invalid
      */
-    public void reloadGemConfig() {
-        reloadConfig();
+    public boolean reloadGemConfig() {
+        // Taken before reading, so an edit made during the reload is still picked up
+        if (configWatcher != null) {
+            configWatcher.markApplied();
+        }
+
+        YamlConfiguration parsed;
+        try {
+            parsed = GemConfig.parse(new File(getDataFolder(), "config.yml"));
+            GemConfig.from(parsed);
+        } catch (IllegalArgumentException e) {
+            getLogger().warning("Not reloading config.yml, " + e.getMessage());
+            return false;
+        }
+
+        applyConfig(parsed);
+
+        // A manual reload also picks up edited species files
+        if (sellManager != null) {
+            sellManager.refresh();
+        }
+        return true;
+    }
+
+    /**
+     * Apply an already parsed and validated config.yml, reloading only the managers whose settings changed
+     * @param parsed Parsed config.yml
+     */
+    public void applyConfig(YamlConfiguration parsed) {
+        FileConfiguration previous = getConfig();
+        parsed.setDefaults(super.getConfig().getDefaults());
+        config = parsed;
+
         loadConfig();
+
+        if (rewardManager != null && changed(previous, parsed, "rewards")) {
+            rewardManager.loadConfig();
+            if (changed(previous, parsed, "rewards.spawn-data-folder")) {
+                rewardManager.rebuildIndex();
+            }
+        }
+
+        if (sellManager != null && changed(previous, parsed, "selling")) {
+            sellManager.loadConfig();
+        }
+
+        if (shopManager != null && changed(previous, parsed, "shop")) {
+            shopManager.loadConfig();
+        }
+
+        if (sweepManager != null && changed(previous, parsed, "sweep")) {
+            sweepManager.loadConfig();
+        }
+
+        if (balanceEventManager != null && changed(previous, parsed, "events")) {
+            balanceEventManager.loadConfig();
+        }
+
+        if (backupManager != null && changed(previous, parsed, "backups")) {
+            backupManager.loadConfig();
+        }
+
+        if (bountyManager != null) {
+            if (changed(previous, parsed, "bounties")) {
+                bountyManager.loadConfig();
+            }
+            if (changed(previous, parsed, "rewards.spawn-data-folder")) {
+                bountyManager.rebuildIndex();
+            }
+        }
+
+        if (displayManager != null && changed(previous, parsed, "display")) {
+            displayManager.loadConfig();
+        }
+
+        if (anomalyManager != null && changed(previous, parsed, "anomaly")) {
+            anomalyManager.loadConfig();
+        }
+
+        if (loginManager != null && changed(previous, parsed, "login-rewards")) {
+            loginManager.loadConfig();
+        }
+
+        if (idempotencyManager != null && changed(previous, parsed, "idempotency")) {
+            idempotencyManager.loadConfig();
+        }
+
+        if (rateLimitManager != null && changed(previous, parsed, "rate-limit")) {
+            rateLimitManager.loadConfig();
+        }
+
+        if (marketManager != null && changed(previous, parsed, "market")) {
+            marketManager.loadConfig();
+        }
+
+        if (simulationManager != null && changed(previous, parsed, "simulation")) {
+            simulationManager.loadConfig();
+        }
+
+        // The default balances decide which players count towards the digest
+        if (integrityManager != null
+                && (changed(previous, parsed, "default-balance") || changed(previous, parsed, "currencies"))) {
+            integrityManager.rebuild();
+        }
+
+        if (configWatcher != null && changed(previous, parsed, "watch-config")) {
+            configWatcher.loadConfig();
+        }
+    }
+
+    /**
+     * Check whether a key, or any key below it, differs between two configurations
+     */
+    private static boolean changed(FileConfiguration before, FileConfiguration after, String path) {
+        return !values(before, path).equals(values(after, path));
+    }
+
+    /**
+     * Collect the plain values at or below a path
+     */
+    private static Map<String, Object> values(FileConfiguration config, String path) {
+        Map<String, Object> values = new HashMap<>();
+        ConfigurationSection section = config.getConfigurationSection(path);
+        if (section == null) {
+            values.put(path, config.get(path));
+            return values;
+        }
+        for (String key : section.getKeys(true)) {
+            if (!section.isConfigurationSection(key)) {
+                values.put(key, section.get(key));
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public FileConfiguration getConfig() {
+        // Holds the last applied reload, the file loaded at startup until then
+        FileConfiguration applied = config;
+        return applied != null ? applied : super.getConfig();
+    }
+
+    /**
+     * Balances of one currency column, copied at one point in time
+     */
+    private static final class ColumnCopy {
+        private UUID[] players;
+        private long[] balances;
+        private int size;
+
+        private ColumnCopy(GemLedger ledger, int currency) {
+            players = new UUID[Math.max(16, ledger.size())];
+            balances = new long[players.length];
+
+            GemLedger.Cursor cursor = ledger.cursor(currency);
+            while (cursor.next()) {
+                if (size == players.length) {
+                    players = Arrays.copyOf(players, size * 2);
+                    balances = Arrays.copyOf(balances, size * 2);
+                }
+                players[size] = cursor.getPlayer();
+                balances[size++] = cursor.getBalance();
+            }
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,290 @@
+package com.blissy.gemextension;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Tracks time-limited gem grants
+ *
+ * Granted gems are added to the normal balance and remembered as lots. Spending
+ * uses up the oldest lots first, and whatever is left of a lot when it expires is
+ * taken back out of the balance. Gems in lots cannot leave the player's balance
+ * any other way, so transfers and market escrow only draw on the rest. Balance
+ * changes that touch lots happen while holding this manager, so a save holding it
+ * sees lots and balances that match. Expiry is driven by a {@link TimingWheel}
+ * ticking once a minute, so pending lots cost nothing until they are due.
+ */
+public class GemGrantManager {
+
+    private static final long TICK_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final GemExtensionPlugin plugin;
+    private final Map<UUID, Deque<Lot>> lots = new HashMap<>();
+    private final TimingWheel<Lot> wheel;
+    private final BukkitTask expiryTask;
+
+    /**
+     * Constructor
+     * @param plugin GemExtensionPlugin instance
+     * @param dataConfig Loaded gemdata.yml holding saved lots
+     */
+    public GemGrantManager(GemExtensionPlugin plugin, FileConfiguration dataConfig) {
+        this.plugin = plugin;
+        this.wheel = new TimingWheel<>(currentTick());
+        loadLots(dataConfig);
+
+        // Expire due lots once a minute, catching up after lag or downtime
+        expiryTask = Bukkit.getScheduler().runTaskTimer(plugin, this::expireDue, 20L, 1200L);
+    }
+
+    /**
+     * Load saved lots from gemdata.yml
+     */
+    private synchronized void loadLots(FileConfiguration dataConfig) {
+        ConfigurationSection section = dataConfig.getConfigurationSection("grants");
+        if (section == null) {
+            return;
+        }
+
+        for (String uuidStr : section.getKeys(false)) {
+            UUID uuid;
+            try {
+                uuid = UUID.fromString(uuidStr);
+            } catch (IllegalArgumentException e) {
+                plugin.getLogger().warning("Invalid UUID in gemdata.yml grants: " + uuidStr);
+                continue;
+            }
+
+            // Each lot is saved as amount:expiry-millis, oldest first
+            for (String saved : section.getStringList(uuidStr)) {
+                String[] parts = saved.split(":");
+                try {
+                    addLot(uuid, Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    plugin.getLogger().warning("Invalid grant in gemdata.yml for " + uuidStr + ": " + saved);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write all lots into gemdata.yml
+     * @param dataConfig gemdata.yml being saved
+     */
+    public synchronized void writeLots(FileConfiguration dataConfig) {
+        dataConfig.set("grants", null);
+
+        for (Map.Entry<UUID, Deque<Lot>> entry : lots.entrySet()) {
+            List<String> saved = new ArrayList<>(entry.getValue().size());
+            for (Lot lot : entry.getValue()) {
+                saved.add(lot.remaining + ":" + lot.expiresAt);
+            }
+            dataConfig.set("grants." + entry.getKey().toString(), saved);
+        }
+    }
+
+    /**
+     * Grant gems that expire after a while
+     * @param uuid Player to grant gems to
+     * @param amount Gems to grant
+     * @param durationMillis Time until the gems expire
+     */
+    public void grant(UUID uuid, long amount, long durationMillis) {
+        if (amount <= 0) {
+            return;
+        }
+
+        synchronized (this) {
+            addLot(uuid, amount, System.currentTimeMillis() + durationMillis);
+            plugin.addGems(uuid, amount);
+        }
+    }
+
+    /**
+     * Record a lot and schedule its expiry
+     */
+    private void addLot(UUID uuid, long amount, long expiresAt) {
+        Lot lot = new Lot(uuid, amount, expiresAt);
+        lots.computeIfAbsent(uuid, key -> new ArrayDeque<>()).addLast(lot);
+        wheel.schedule(lot);
+    }
+
+    /**
+     * Change a gem balance and use up lots for anything taken, in one step
+     * @param uuid Player to update
+     * @param update Maps the current balance to the new one
+     * @return Balance before the update
+     */
+    public synchronized long debit(UUID uuid, LongUnaryOperator update) {
+        long[] after = new long[1];
+        long before = plugin.getLedger().update(uuid, GemLedger.GEMS, current -> {
+            after[0] = update.applyAsLong(current);
+            return after[0];
+        });
+
+        if (after[0] < before) {
+            consume(uuid, before - after[0]);
+        }
+        return before;
+    }
+
+    /**
+     * Use up lots, oldest first, after gems were taken from a balance
+     * @param uuid Player whose balance went down
+     * @param amount Gems taken
+     */
+    private synchronized void consume(UUID uuid, long amount) {
+        Deque<Lot> playerLots = lots.get(uuid);
+        if (playerLots == null) {
+            return;
+        }
+
+        while (amount > 0 && !playerLots.isEmpty()) {
+            Lot lot = playerLots.peekFirst();
+            long used = Math.min(amount, lot.remaining);
+            lot.remaining -= used;
+            amount -= used;
+
+            if (lot.remaining == 0) {
+                playerLots.pollFirst();
+                wheel.cancel(lot);
+            }
+        }
+
+        if (playerLots.isEmpty()) {
+            lots.remove(uuid);
+        }
+    }
+
+    /**
+     * Take gems that are not part of any unexpired lot
+     *
+     * Used for transfers and escrow, where the gems end up as someone's permanent
+     * gems. Lots are left alone, so the player's expiring gems still expire.
+     * @param uuid Player to take gems from
+     * @param amount Gems to take
+     * @return True if taken, false if the player has fewer gems outside their lots
+     */
+    public synchronized boolean removePermanent(UUID uuid, long amount) {
+        long expiring = getExpiringGems(uuid);
+        long before = plugin.getLedger().update(uuid, GemLedger.GEMS,
+                current -> current - expiring < amount ? current : current - amount);
+        return before - expiring >= amount;
+    }
+
+    /**
+     * Get how many of a player's gems are still due to expire
+     * @param uuid Player to check
+     * @return Gems held in unexpired lots
+     */
+    public synchronized long getExpiringGems(UUID uuid) {
+        Deque<Lot> playerLots = lots.get(uuid);
+        if (playerLots == null) {
+            return 0;
+        }
+
+        long total = 0;
+        for (Lot lot : playerLots) {
+            total += lot.remaining;
+        }
+        return total;
+    }
+
+    /**
+     * Get when a player's next lot expires
+     * @param uuid Player to check
+     * @return Expiry time in milliseconds, or -1 if the player has no lots
+     */
+    public synchronized long getNextExpiry(UUID uuid) {
+        Deque<Lot> playerLots = lots.get(uuid);
+        if (playerLots == null) {
+            return -1;
+        }
+
+        long next = Long.MAX_VALUE;
+        for (Lot lot : playerLots) {
+            next = Math.min(next, lot.expiresAt);
+        }
+        return next;
+    }
+
+    /**
+     * Take back whatever is left of every lot that is due
+     */
+    private void expireDue() {
+        List<Lot> expired = new ArrayList<>();
+
+        synchronized (this) {
+            wheel.advanceTo(currentTick(), lot -> {
+                Deque<Lot> playerLots = lots.get(lot.owner);
+                if (playerLots == null) {
+                    return;
+                }
+
+                // Lots normally expire in grant order, so this is almost always the head
+                Iterator<Lot> iterator = playerLots.iterator();
+                while (iterator.hasNext()) {
+                    if (iterator.next() == lot) {
+                        iterator.remove();
+                        break;
+                    }
+                }
+                if (playerLots.isEmpty()) {
+                    lots.remove(lot.owner);
+                }
+
+                expired.add(lot);
+            });
+
+            // Taken back before the lock is released so removePermanent never sees them as permanent
+            for (Lot lot : expired) {
+                if (lot.remaining > 0) {
+                    plugin.expireGems(lot.owner, lot.remaining);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop the expiry task
+     */
+    public void shutdown() {
+        expiryTask.cancel();
+    }
+
+    /**
+     * Get the wheel tick for the current time
+     */
+    private static long currentTick() {
+        return System.currentTimeMillis() / TICK_MILLIS;
+    }
+
+    /**
+     * Gems granted together with a shared expiry time
+     */
+    private static final class Lot extends TimingWheel.Entry {
+        private final UUID owner;
+        private final long expiresAt;
+        private long remaining;
+
+        private Lot(UUID owner, long amount, long expiresAt) {
+            super((expiresAt + TICK_MILLIS - 1) / TICK_MILLIS);
+            this.owner = owner;
+            this.remaining = amount;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
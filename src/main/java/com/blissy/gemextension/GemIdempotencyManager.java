@@ -0,0 +1,168 @@
+package com.blissy.gemextension;
+
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the outcome of keyed gem operations so retries are not applied twice
+ *
+ * The first call with a key runs the operation, later calls with the same key get
+ * its result back, waiting for it if it is still running. Keys are forgotten after
+ * a fixed time. Since every key lives for the same time, keys expire in the order
+ * they were added, so each new key evicts the expired ones from the head of a queue
+ * without scanning the whole cache. A key whose operation is still running is never
+ * evicted. Keys are only kept in memory and are lost on restart.
+ */
+public class GemIdempotencyManager {
+
+    private final GemExtensionPlugin plugin;
+    private final Map<String, Outcome> outcomes = new ConcurrentHashMap<>();
+    private final Queue<Outcome> order = new ConcurrentLinkedQueue<>();
+
+    private volatile long ttlMillis;
+    private volatile int maxKeys;
+
+    /**
+     * Constructor
+     * @param plugin GemExtensionPlugin instance
+     */
+    public GemIdempotencyManager(GemExtensionPlugin plugin) {
+        this.plugin = plugin;
+        loadConfig();
+    }
+
+    /**
+     * Load cache settings from config.yml
+     */
+    public void loadConfig() {
+        FileConfiguration config = plugin.getConfig();
+
+        ttlMillis = Math.max(1, config.getLong("idempotency.ttl-seconds", 600)) * 1000L;
+        maxKeys = Math.max(1, config.getInt("idempotency.max-keys", 100000));
+    }
+
+    /**
+     * Run an operation once per key
+     * @param key Idempotency key chosen by the caller
+     * @param operation Description of the operation, a key cannot be reused for a different one
+     * @param action The operation itself
+     * @return Result of the first run with this key
+     * @throws IllegalArgumentException If the key was already used for a different operation
+     */
+    public boolean run(String key, String operation, BooleanSupplier action) {
+        return runRetryable(key, operation, () -> action.getAsBoolean());
+    }
+
+    /**
+     * Run an operation once per key, forgetting the key if the operation was only refused for now
+     *
+     * Refusals that may pass, such as a rate limit or a frozen account, are not
+     * remembered, so retrying with the same key runs the operation again.
+     * @param key Idempotency key chosen by the caller
+     * @param operation Description of the operation, a key cannot be reused for a different one
+     * @param action The operation itself, returning null if it was refused for now
+     * @return Result of the first run with this key that was not refused for now, false if this one was
+     * @throws IllegalArgumentException If the key was already used for a different operation
+     */
+    public boolean runRetryable(String key, String operation, Supplier<Boolean> action) {
+        evictExpired();
+
+        Outcome fresh = new Outcome(key, operation, System.currentTimeMillis() + ttlMillis);
+        Outcome existing = outcomes.putIfAbsent(key, fresh);
+        if (existing != null) {
+            if (!existing.operation.equals(operation)) {
+                throw new IllegalArgumentException("Idempotency key " + key + " was already used for " + existing.operation);
+            }
+            return existing.await();
+        }
+        order.add(fresh);
+
+        Boolean result;
+        try {
+            result = action.get();
+        } catch (RuntimeException e) {
+            // Nothing was remembered, so the caller may retry with the same key
+            outcomes.remove(key, fresh);
+            fresh.result.completeExceptionally(e);
+            throw e;
+        }
+
+        if (result == null) {
+            // Callers already waiting see the refusal, later retries run again
+            outcomes.remove(key, fresh);
+            fresh.result.complete(false);
+            return false;
+        }
+
+        fresh.result.complete(result);
+        return result;
+    }
+
+    /**
+     * Get the number of keys currently remembered
+     * @return Key count
+     */
+    public int size() {
+        return outcomes.size();
+    }
+
+    /**
+     * Forget expired keys, and the oldest keys if there are too many
+     *
+     * Stops at the first key still running, so a retry during a slow operation
+     * waits for it instead of running it again.
+     */
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+
+        Outcome oldest;
+        while ((oldest = order.peek()) != null) {
+            if (!oldest.result.isDone() || (oldest.expires > now && outcomes.size() < maxKeys)) {
+                return;
+            }
+
+            // Only the thread that takes the outcome off the queue forgets it
+            if (order.remove(oldest)) {
+                outcomes.remove(oldest.key, oldest);
+            }
+        }
+    }
+
+    /**
+     * Result of one keyed operation
+     */
+    private static final class Outcome {
+        private final String key;
+        private final String operation;
+        private final long expires;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        private Outcome(String key, String operation, long expires) {
+            this.key = key;
+            this.operation = operation;
+            this.expires = expires;
+        }
+
+        /**
+         * Wait for the result of the first run
+         */
+        private boolean await() {
+            try {
+                return result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for a keyed gem operation", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Keyed gem operation failed", e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.blissy.gemextension;
+
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Checks the ledger against saved snapshots and backups
+ *
+ * A {@link GemLedgerDigest} of the live gem balances is kept up to date on every
+ * change, and each save stores the digest of exactly what it wrote. Verifying
+ * builds trees for both sides and only walks the subtrees that differ, then
+ * compares individual balances in the differing buckets.
+ */
+public class GemIntegrityManager {
+
+    private static final int MAX_LISTED_BUCKETS = 20;
+    private static final int MAX_LISTED_PLAYERS = 10;
+
+    private final GemExtensionPlugin plugin;
+    private final File dataFile;
+    private volatile GemLedgerDigest live;
+    private volatile Rebuild rebuilding;
+
+    /**
+     * Constructor
+     * @param plugin GemExtensionPlugin instance
+     * @param dataFile gemdata.yml
+     */
+    public GemIntegrityManager(GemExtensionPlugin plugin, File dataFile) {
+        this.plugin = plugin;
+        this.dataFile = dataFile;
+        rebuild();
+    }
+
+    /**
+     * Rebuild the live digest from the ledger, needed when the default balance changes
+     *
+     * Each balance is read while its row is held, and changes made during the walk
+     * go into the new digest too, so nothing is lost while the ledger keeps changing.
+     */
+    public synchronized void rebuild() {
+        Rebuild rebuild = new Rebuild(new GemLedgerDigest(plugin.getDefaultBalance()));
+        rebuilding = rebuild;
+
+        GemLedger ledger = plugin.getLedger();
+        for (UUID uuid : ledger.getPlayers()) {
+            // An update that keeps the balance holds the row without reporting a change
+            ledger.update(uuid, GemLedger.GEMS, balance -> {
+                if (rebuild.seen.add(uuid)) {
+                    rebuild.digest.add(uuid, balance);
+                }
+                return balance;
+            });
+        }
+
+        live = rebuild.digest;
+        rebuilding = null;
+    }
+
+    /**
+     * Fold a gem balance change into the live digest, called while the player's row is held
+     * @param uuid Player whose balance changed
+     * @param oldBalance Balance before
+     * @param newBalance Balance after
+     */
+    void recordChange(UUID uuid, long oldBalance, long newBalance) {
+        // Read in the opposite order rebuild publishes them, so a finished rebuild is never missed
+        Rebuild rebuild = rebuilding;
+        GemLedgerDigest digest = live;
+
+        if (rebuild != null) {
+            // A row the walk has not reached yet is added with its new balance, and skipped by the walk
+            if (rebuild.seen.add(uuid)) {
+                rebuild.digest.add(uuid, newBalance);
+            } else {
+                rebuild.digest.update(uuid, oldBalance, newBalance);
+            }
+            if (digest == rebuild.digest) {
+                return;
+            }
+        }
+
+        if (digest != null) {
+            digest.update(uuid, oldBalance, newBalance);
+        }
+    }
+
+    /**
+     * Start a digest for a snapshot being written
+     * @return Empty digest using the current default balance
+     */
+    public GemLedgerDigest newSnapshotDigest() {
+        return new GemLedgerDigest(plugin.getDefaultBalance());
+    }
+
+    /**
+     * Store the digest of a snapshot alongside it in gemdata.yml
+     * @param dataConfig gemdata.yml being saved
+     * @param digest Digest of the balances that were written
+     */
+    public void writeSnapshotDigest(FileConfiguration dataConfig, GemLedgerDigest digest) {
+        dataConfig.set("integrity.default-balance", digest.getDefaultBalance());
+        dataConfig.set("integrity.buckets", GemLedgerDigest.encode(digest.buildTree()));
+    }
+
+    /**
+     * Compare two sources off the main thread
+     * @param first "memory", "disk" or a backup time
+     * @param second "memory", "disk" or a backup time
+     * @param done Called on the main thread with the report lines
+     */
+    public void verify(String first, String second, Consumer<List<String>> done) {
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            List<String> report = new ArrayList<>();
+            try {
+                Source left = load(first, report);
+                Source right = load(second, report);
+                if (left != null && right != null) {
+                    compare(left, right, report);
+                }
+            } catch (IOException e) {
+                report.add("Could not read " + e.getMessage());
+            }
+
+            Bukkit.getScheduler().runTask(plugin, () -> done.accept(report));
+        });
+    }
+
+    /**
+     * Load the balances and tree of a source
+     */
+    private Source load(String name, List<String> report) throws IOException {
+        if (name.equalsIgnoreCase("memory")) {
+            return new Source("memory", null, live.buildTree());
+        }
+
+        if (name.equalsIgnoreCase("disk")) {
+            return loadDisk(report);
+        }
+
+        long time = GemBackupManager.parseTime(name);
+        if (time < 0) {
+            report.add("Unknown source " + name + ", use memory, disk or a backup time.");
+            return null;
+        }
+
+        Map<UUID, Long> balances = plugin.getBackupManager().readPoint(time);
+        if (balances == null) {
+            report.add("There is no backup at or before " + name + ".");
+            return null;
+        }
+
+        String label = "backup " + GemBackupManager.format(plugin.getBackupManager().findRestorePoint(time));
+        return new Source(label, balances, digestOf(balances, plugin.getDefaultBalance()).buildTree());
+    }
+
+    /**
+     * Read gemdata.yml and check it against the digest saved with it
+     */
+    private Source loadDisk(List<String> report) {
+        YamlConfiguration saved = YamlConfiguration.loadConfiguration(dataFile);
+
+        Map<UUID, Long> balances = new HashMap<>();
+        ConfigurationSection section = saved.getConfigurationSection("gems");
+        if (section != null) {
+            for (String uuidStr : section.getKeys(false)) {
+                try {
+                    balances.put(UUID.fromString(uuidStr), section.getLong(uuidStr));
+                } catch (IllegalArgumentException e) {
+                    report.add("gemdata.yml has an invalid UUID: " + uuidStr);
+                }
+            }
+        }
+
+        long[] stored = GemLedgerDigest.decode(saved.getString("integrity.buckets"));
+        if (stored == null) {
+            report.add("gemdata.yml has no saved digest yet, it is written on the next save.");
+        } else {
+            long savedDefault = saved.getLong("integrity.default-balance", plugin.getDefaultBalance());
+            List<Integer> damaged = GemLedgerDigest.diff(stored, digestOf(balances, savedDefault).buildTree());
+            if (damaged.isEmpty()) {
+                report.add("gemdata.yml matches the digest saved with it.");
+            } else {
+                report.add("gemdata.yml does not match the digest saved with it in " + damaged.size() +
+                        " buckets, it was edited or damaged after saving: " + listBuckets(damaged));
+            }
+        }
+
+        return new Source("disk", balances, digestOf(balances, plugin.getDefaultBalance()).buildTree());
+    }
+
+    /**
+     * Report which buckets and balances differ between two sources
+     */
+    private void compare(Source left, Source right, List<String> report) {
+        List<Integer> buckets = GemLedgerDigest.diff(left.tree, right.tree);
+        if (buckets.isEmpty()) {
+            report.add(left.label + " and " + right.label + " match (root " + Long.toHexString(left.tree[1]) + ").");
+            return;
+        }
+
+        report.add(buckets.size() + " of " + GemLedgerDigest.BUCKETS + " buckets differ between " + left.label +
+                " and " + right.label + ": " + listBuckets(buckets));
+
+        // Only players in differing buckets need their balances compared
+        boolean[] differing = new boolean[GemLedgerDigest.BUCKETS];
+        for (int bucket : buckets) {
+            differing[bucket] = true;
+        }
+
+        Set<UUID> candidates = new HashSet<>();
+        for (Source source : new Source[] {left, right}) {
+            Set<UUID> players = source.balances != null ? source.balances.keySet() : plugin.getGemHolders();
+            for (UUID uuid : players) {
+                if (differing[GemLedgerDigest.bucket(uuid)]) {
+                    candidates.add(uuid);
+                }
+            }
+        }
+
+        int listed = 0;
+        int mismatched = 0;
+        for (UUID uuid : candidates) {
+            long a = left.get(plugin, uuid);
+            long b = right.get(plugin, uuid);
+            if (a == b) {
+                continue;
+            }
+
+            mismatched++;
+            if (listed < MAX_LISTED_PLAYERS) {
+                report.add("  " + name(uuid) + ": " + left.label + " " + a + ", " + right.label + " " + b);
+                listed++;
+            }
+        }
+        if (mismatched > listed) {
+            report.add("  ...and " + (mismatched - listed) + " more players.");
+        }
+    }
+
+    /**
+     * Build a digest of a set of balances
+     */
+    private static GemLedgerDigest digestOf(Map<UUID, Long> balances, long defaultBalance) {
+        GemLedgerDigest digest = new GemLedgerDigest(defaultBalance);
+        for (Map.Entry<UUID, Long> entry : balances.entrySet()) {
+            digest.add(entry.getKey(), entry.getValue());
+        }
+        return digest;
+    }
+
+    /**
+     * List bucket numbers, shortened if there are many
+     */
+    private static String listBuckets(List<Integer> buckets) {
+        List<String> shown = new ArrayList<>();
+        for (int i = 0; i < buckets.size() && i < MAX_LISTED_BUCKETS; i++) {
+            shown.add(String.valueOf(buckets.get(i)));
+        }
+        return String.join(", ", shown) + (buckets.size() > MAX_LISTED_BUCKETS ? ", ..." : "");
+    }
+
+    /**
+     * Get a player's name for reports
+     */
+    private static String name(UUID uuid) {
+        OfflinePlayer player = Bukkit.getOfflinePlayer(uuid);
+        return player.getName() != null ? player.getName() : uuid.toString();
+    }
+
+    /**
+     * Digest being rebuilt and the players already folded into it
+     */
+    private static final class Rebuild {
+        private final GemLedgerDigest digest;
+        private final Set<UUID> seen = ConcurrentHashMap.newKeySet();
+
+        private Rebuild(GemLedgerDigest digest) {
+            this.digest = digest;
+        }
+    }
+
+    /**
+     * Balances and tree of one side of a comparison
+     */
+    private static final class Source {
+        private final String label;
+        private final Map<UUID, Long> balances;
+        private final long[] tree;
+
+        private Source(String label, Map<UUID, Long> balances, long[] tree) {
+            this.label = label;
+            this.balances = balances;
+            this.tree = tree;
+        }
+
+        /**
+         * Get a balance, reading the live ledger when this side is memory
+         */
+        private long get(GemExtensionPlugin plugin, UUID uuid) {
+            if (balances == null) {
+                return plugin.getGems(uuid);
+            }
+            return balances.getOrDefault(uuid, (long) plugin.getDefaultBalance());
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package com.blissy.gemextension;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.LongUnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Balances of every player in every currency, stored by column
+ *
+ * Each player gets a dense row number the first time they are seen. Every
+ * currency is a column of primitive longs indexed by row, split into fixed-size
+ * chunks so growing the ledger never copies existing balances. A currency costs
+ * 8 bytes per player, and whole-column reads such as saves and exports walk the
+ * chunks in place through a {@link Cursor}. Updates to a row are serialized by a striped lock, which also covers
+ * the change listener so changes to one player are reported in order.
+ */
+public class GemLedger {
+
+    /**
+     * Column of the primary currency, gems
+     */
+    public static final int GEMS = 0;
+
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int STRIPES = 64;
+
+    /**
+     * Told about every balance change while the row is locked
+     */
+    public interface ChangeListener {
+        void changed(UUID uuid, int currency, long oldBalance, long newBalance);
+    }
+
+    /**
+     * Receives one value of a column
+     */
+    public interface ColumnVisitor {
+        void visit(UUID uuid, long balance);
+    }
+
+    private final Map<UUID, Integer> index = new ConcurrentHashMap<>();
+    private final Object[] locks = new Object[STRIPES];
+    private final Object growLock = new Object();
+    private final ChangeListener listener;
+
+    // Outer arrays are replaced when growing, chunks themselves are shared
+    private volatile UUID[][] players = new UUID[0][];
+    private volatile long[][][] columns = new long[0][][];
+    private volatile String[] currencyNames = new String[0];
+    private volatile long[] defaults = new long[0];
+    private volatile Map<String, Integer> currencyIds = Collections.emptyMap();
+    private int size;
+
+    /**
+     * Constructor
+     * @param listener Told about every balance change
+     */
+    public GemLedger(ChangeListener listener) {
+        this.listener = listener;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Declare the currencies in the ledger
+     *
+     * Currencies already in the ledger keep their column and balances, new ones get
+     * a column filled with their default. Gems must come first.
+     * @param names Currency names in column order for new currencies
+     * @param startBalances Default balance of each currency
+     */
+    public void defineCurrencies(List<String> names, List<Long> startBalances) {
+        synchronized (growLock) {
+            List<String> allNames = new ArrayList<>(Arrays.asList(currencyNames));
+            long[] allDefaults = defaults.clone();
+            long[][][] allColumns = columns;
+
+            for (int i = 0; i < names.size(); i++) {
+                String name = names.get(i);
+                int existing = allNames.indexOf(name);
+                if (existing >= 0) {
+                    allDefaults[existing] = startBalances.get(i);
+                    continue;
+                }
+
+                // Existing players start the new currency at its default
+                long[][] column = new long[players.length][];
+                for (int chunk = 0; chunk < column.length; chunk++) {
+                    column[chunk] = new long[CHUNK_SIZE];
+                    Arrays.fill(column[chunk], startBalances.get(i));
+                }
+
+                allNames.add(name);
+                allDefaults = Arrays.copyOf(allDefaults, allNames.size());
+                allDefaults[allNames.size() - 1] = startBalances.get(i);
+                allColumns = Arrays.copyOf(allColumns, allNames.size());
+                allColumns[allNames.size() - 1] = column;
+            }
+
+            Map<String, Integer> ids = new HashMap<>();
+            for (int i = 0; i < allNames.size(); i++) {
+                ids.put(allNames.get(i), i);
+            }
+
+            columns = allColumns;
+            defaults = allDefaults;
+            currencyNames = allNames.toArray(new String[0]);
+            currencyIds = Collections.unmodifiableMap(ids);
+        }
+    }
+
+    /**
+     * Get the column of a currency
+     * @param name Currency name
+     * @return Column number, or -1 if there is no such currency
+     */
+    public int getCurrency(String name) {
+        return currencyIds.getOrDefault(name.toLowerCase(Locale.ROOT), -1);
+    }
+
+    /**
+     * Get the names of every currency, in column order
+     * @return Currency names
+     */
+    public List<String> getCurrencyNames() {
+        return Collections.unmodifiableList(Arrays.asList(currencyNames));
+    }
+
+    /**
+     * Get the balance new players start with in a currency
+     * @param currency Currency column
+     * @return Default balance
+     */
+    public long getDefault(int currency) {
+        return defaults[currency];
+    }
+
+    /**
+     * Check whether a player has a row in the ledger
+     * @param uuid Player to check
+     * @return True if the player has a row
+     */
+    public boolean contains(UUID uuid) {
+        return index.containsKey(uuid);
+    }
+
+    /**
+     * Get a player's balance
+     * @param uuid Player to check
+     * @param currency Currency column
+     * @return Balance, or the currency's default if the player has no row
+     */
+    public long get(UUID uuid, int currency) {
+        Integer row = index.get(uuid);
+        if (row == null) {
+            return defaults[currency];
+        }
+
+        synchronized (locks[row & (STRIPES - 1)]) {
+            return columns[currency][row >>> CHUNK_BITS][row & CHUNK_MASK];
+        }
+    }
+
+    /**
+     * Update a player's balance, adding a row for them if needed
+     * @param uuid Player to update
+     * @param currency Currency column
+     * @param update Maps the current balance to the new one
+     * @return Balance before the update
+     */
+    public long update(UUID uuid, int currency, LongUnaryOperator update) {
+        int row = rowFor(uuid);
+        long[] chunk = columns[currency][row >>> CHUNK_BITS];
+        int offset = row & CHUNK_MASK;
+
+        synchronized (locks[row & (STRIPES - 1)]) {
+            long before = chunk[offset];
+            long after = update.applyAsLong(before);
+            chunk[offset] = after;
+
+            if (before != after) {
+                listener.changed(uuid, currency, before, after);
+            }
+            return before;
+        }
+    }
+
+    /**
+     * Set a player's balance, adding a row for them if needed
+     * @param uuid Player to update
+     * @param currency Currency column
+     * @param balance New balance
+     * @return Balance before the update
+     */
+    public long set(UUID uuid, int currency, long balance) {
+        return update(uuid, currency, current -> balance);
+    }
+
+    /**
+     * Walk one currency column in row order
+     *
+     * Weakly consistent: rows added during the walk may or may not be visited, and
+     * each balance is read as it is at the moment it is visited.
+     * @param currency Currency column
+     * @param visitor Receives every player and balance
+     */
+    public void forEach(int currency, ColumnVisitor visitor) {
+        Cursor cursor = cursor(currency);
+        while (cursor.next()) {
+            visitor.visit(cursor.getPlayer(), cursor.getBalance());
+        }
+    }
+
+    /**
+     * Open a cursor over one currency column, reading the ledger in place
+     *
+     * Nothing is copied. The cursor covers the rows that exist when it is opened,
+     * and each balance is read as it is at the moment the cursor reaches it.
+     * @param currency Currency column
+     * @return Cursor positioned before the first row
+     */
+    public Cursor cursor(int currency) {
+        int count;
+        synchronized (growLock) {
+            count = size;
+        }
+        return new Cursor(players, columns[currency], count);
+    }
+
+    /**
+     * Stream one currency column in row order, with the same guarantees as {@link #cursor(int)}
+     * @param currency Currency column
+     * @return Sequential stream of players and balances
+     */
+    public Stream<Map.Entry<UUID, Long>> stream(int currency) {
+        Cursor cursor = cursor(currency);
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<Map.Entry<UUID, Long>>(cursor.count,
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.SIZED) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Map.Entry<UUID, Long>> action) {
+                if (!cursor.next()) {
+                    return false;
+                }
+                action.accept(new AbstractMap.SimpleImmutableEntry<>(cursor.getPlayer(), cursor.getBalance()));
+                return true;
+            }
+        }, false);
+    }
+
+    /**
+     * Get every player with a row
+     * @return Live, unmodifiable view of the ledger's players
+     */
+    public Set<UUID> getPlayers() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    /**
+     * Get the number of players with a row
+     * @return Row count
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Forward-only position in one currency column
+     */
+    public final class Cursor {
+        private final UUID[][] rows;
+        private final long[][] column;
+        private final int count;
+        private int row = -1;
+        private UUID player;
+        private long balance;
+
+        private Cursor(UUID[][] rows, long[][] column, int count) {
+            this.rows = rows;
+            this.column = column;
+            this.count = count;
+        }
+
+        /**
+         * Move to the next row
+         * @return True if there is a row, false at the end of the column
+         */
+        public boolean next() {
+            if (row + 1 >= count) {
+                return false;
+            }
+
+            row++;
+            player = rows[row >>> CHUNK_BITS][row & CHUNK_MASK];
+            synchronized (locks[row & (STRIPES - 1)]) {
+                balance = column[row >>> CHUNK_BITS][row & CHUNK_MASK];
+            }
+            return true;
+        }
+
+        /**
+         * Get the player of the current row
+         * @return Player UUID
+         */
+        public UUID getPlayer() {
+            return player;
+        }
+
+        /**
+         * Get the balance of the current row, as read when the cursor reached it
+         * @return Balance
+         */
+        public long getBalance() {
+            return balance;
+        }
+    }
+
+    /**
+     * Get a player's row, adding one filled with defaults if they have none
+     */
+    private int rowFor(UUID uuid) {
+        Integer row = index.get(uuid);
+        if (row != null) {
+            return row;
+        }
+
+        synchronized (growLock) {
+            row = index.get(uuid);
+            if (row != null) {
+                return row;
+            }
+
+            int next = size;
+            int chunk = next >>> CHUNK_BITS;
+            if (chunk >= players.length) {
+                grow();
+            }
+
+            int offset = next & CHUNK_MASK;
+            players[chunk][offset] = uuid;
+            for (int currency = 0; currency < columns.length; currency++) {
+                columns[currency][chunk][offset] = defaults[currency];
+            }
+            size++;
+
+            // Published last so readers never see a row before it is filled
+            index.put(uuid, next);
+            return next;
+        }
+    }
+
+    /**
+     * Add a chunk of rows to every column
+     */
+    private void grow() {
+        int chunks = players.length + 1;
+
+        UUID[][] grownPlayers = Arrays.copyOf(players, chunks);
+        grownPlayers[chunks - 1] = new UUID[CHUNK_SIZE];
+
+        long[][][] grownColumns = new long[columns.length][][];
+        for (int currency = 0; currency < grownColumns.length; currency++) {
+            grownColumns[currency] = Arrays.copyOf(columns[currency], chunks);
+            grownColumns[currency][chunks - 1] = new long[CHUNK_SIZE];
+        }
+
+        players = grownPlayers;
+        columns = grownColumns;
+    }
+}
@@ -0,0 +1,183 @@
+package com.blissy.gemextension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Merkle tree over the gem balances of the ledger
+ *
+ * Players are spread over a fixed number of buckets by UUID. Each bucket hash is
+ * the XOR of a 64-bit hash of every player and balance in it, so a balance change
+ * updates its bucket in constant time by XORing the old entry out and the new one
+ * in. Players at the default balance contribute nothing, which makes a missing
+ * player and one at the default look the same. The tree over the buckets is built
+ * on demand, and two trees are compared from the root down, only descending into
+ * subtrees whose hashes differ.
+ */
+public class GemLedgerDigest {
+
+    /**
+     * Number of buckets, a power of two
+     */
+    public static final int BUCKETS = 1024;
+
+    private final AtomicLongArray leaves = new AtomicLongArray(BUCKETS);
+    private final long defaultBalance;
+
+    /**
+     * Constructor
+     * @param defaultBalance Balance that contributes nothing to the digest
+     */
+    public GemLedgerDigest(long defaultBalance) {
+        this.defaultBalance = defaultBalance;
+    }
+
+    /**
+     * Fold a player's balance into the digest
+     * @param uuid Player
+     * @param balance Balance
+     */
+    public void add(UUID uuid, long balance) {
+        update(uuid, defaultBalance, balance);
+    }
+
+    /**
+     * Replace a player's balance in the digest
+     * @param uuid Player
+     * @param oldBalance Balance that was folded in before
+     * @param newBalance Balance to fold in instead
+     */
+    public void update(UUID uuid, long oldBalance, long newBalance) {
+        if (oldBalance == newBalance) {
+            return;
+        }
+
+        int bucket = bucket(uuid);
+        long change = hash(uuid, oldBalance) ^ hash(uuid, newBalance);
+
+        long current;
+        do {
+            current = leaves.get(bucket);
+        } while (!leaves.compareAndSet(bucket, current, current ^ change));
+    }
+
+    /**
+     * Get the balance that contributes nothing
+     * @return Default balance
+     */
+    public long getDefaultBalance() {
+        return defaultBalance;
+    }
+
+    /**
+     * Build the tree as an array in heap order
+     *
+     * Node 1 is the root, the children of node i are 2i and 2i + 1, and the buckets
+     * are the leaves from {@link #BUCKETS} onwards.
+     * @return Tree nodes, index 0 unused
+     */
+    public long[] buildTree() {
+        long[] tree = new long[BUCKETS * 2];
+        for (int i = 0; i < BUCKETS; i++) {
+            tree[BUCKETS + i] = leaves.get(i);
+        }
+        for (int node = BUCKETS - 1; node > 0; node--) {
+            tree[node] = mix(tree[node * 2] * 31 + tree[node * 2 + 1]);
+        }
+        return tree;
+    }
+
+    /**
+     * Find the buckets where two trees differ
+     * @param first Tree from {@link #buildTree()}
+     * @param second Tree from {@link #buildTree()}
+     * @return Differing bucket numbers, empty if the roots match
+     */
+    public static List<Integer> diff(long[] first, long[] second) {
+        List<Integer> buckets = new ArrayList<>();
+        diff(first, second, 1, buckets);
+        return buckets;
+    }
+
+    /**
+     * Descend into the children of a node that differs
+     */
+    private static void diff(long[] first, long[] second, int node, List<Integer> buckets) {
+        if (first[node] == second[node]) {
+            return;
+        }
+
+        if (node >= BUCKETS) {
+            buckets.add(node - BUCKETS);
+            return;
+        }
+
+        diff(first, second, node * 2, buckets);
+        diff(first, second, node * 2 + 1, buckets);
+    }
+
+    /**
+     * Encode the leaves of a tree as hex, for storing with a snapshot
+     * @param tree Tree from {@link #buildTree()}
+     * @return Hex string of every bucket hash
+     */
+    public static String encode(long[] tree) {
+        StringBuilder builder = new StringBuilder(BUCKETS * 16);
+        for (int i = BUCKETS; i < tree.length; i++) {
+            String hex = Long.toHexString(tree[i]);
+            for (int pad = hex.length(); pad < 16; pad++) {
+                builder.append('0');
+            }
+            builder.append(hex);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Rebuild a tree from encoded leaves
+     * @param encoded Hex string from {@link #encode(long[])}
+     * @return Tree, or null if the string is not a valid encoding
+     */
+    public static long[] decode(String encoded) {
+        if (encoded == null || encoded.length() != BUCKETS * 16) {
+            return null;
+        }
+
+        GemLedgerDigest digest = new GemLedgerDigest(0);
+        try {
+            for (int i = 0; i < BUCKETS; i++) {
+                digest.leaves.set(i, Long.parseUnsignedLong(encoded.substring(i * 16, i * 16 + 16), 16));
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return digest.buildTree();
+    }
+
+    /**
+     * Get the bucket a player belongs to
+     * @param uuid Player
+     * @return Bucket number
+     */
+    public static int bucket(UUID uuid) {
+        return (int) mix(uuid.getMostSignificantBits() ^ uuid.getLeastSignificantBits()) & (BUCKETS - 1);
+    }
+
+    /**
+     * Hash one player and balance
+     */
+    private static long hash(UUID uuid, long balance) {
+        return mix(mix(uuid.getMostSignificantBits() ^ mix(uuid.getLeastSignificantBits())) + balance);
+    }
+
+    /**
+     * SplitMix64 finalizer
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,309 @@
+package com.blissy.gemextension;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.entity.Player;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.NumberFormat;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Daily login rewards with streak multipliers
+ *
+ * Each player's login history is a rolling bitset of the last {@link #HISTORY_DAYS}
+ * days, bit 0 being the day they last joined. A new day shifts the bits along, so
+ * whether today was already claimed is one bit test and the streak is the run of
+ * set bits from bit 0. Histories are saved to logins.dat as fixed-size binary
+ * records instead of one YAML entry per day.
+ */
+public class GemLoginManager {
+
+    /**
+     * Days of history kept per player
+     */
+    public static final int HISTORY_DAYS = 384;
+
+    private static final int WORDS = HISTORY_DAYS / 64;
+    private static final int MAGIC = 0x47454D4C;
+    private static final int VERSION = 1;
+
+    private final GemExtensionPlugin plugin;
+    private final File loginFile;
+    private final Map<UUID, LoginHistory> histories = new ConcurrentHashMap<>();
+
+    private boolean enabled;
+    private long baseReward;
+    private long maxReward;
+    private ZoneId zone;
+    private NavigableMap<Integer, Double> multipliers;
+    private String message;
+
+    /**
+     * Constructor
+     * @param plugin GemExtensionPlugin instance
+     */
+    public GemLoginManager(GemExtensionPlugin plugin) {
+        this.plugin = plugin;
+        this.loginFile = new File(plugin.getDataFolder(), "logins.dat");
+        loadConfig();
+        loadHistories();
+    }
+
+    /**
+     * Load login reward settings from config.yml
+     */
+    public void loadConfig() {
+        FileConfiguration config = plugin.getConfig();
+
+        enabled = config.getBoolean("login-rewards.enabled", true);
+        baseReward = Math.max(0, config.getLong("login-rewards.base", 10));
+        maxReward = config.getLong("login-rewards.max-reward", 0);
+        message = ChatColor.translateAlternateColorCodes('&', config.getString("login-rewards.message",
+                "&aDaily reward: &6%amount% &agems for a &e%streak% &aday streak."));
+
+        String timezone = config.getString("login-rewards.timezone", "");
+        try {
+            zone = timezone.isEmpty() ? ZoneId.systemDefault() : ZoneId.of(timezone);
+        } catch (DateTimeException e) {
+            plugin.getLogger().warning("Invalid login-rewards timezone " + timezone + ", using the server's.");
+            zone = ZoneId.systemDefault();
+        }
+
+        NavigableMap<Integer, Double> loaded = new TreeMap<>();
+        ConfigurationSection section = config.getConfigurationSection("login-rewards.streak-multipliers");
+        if (section != null) {
+            for (String days : section.getKeys(false)) {
+                try {
+                    loaded.put(Integer.parseInt(days), section.getDouble(days, 1.0));
+                } catch (NumberFormatException e) {
+                    plugin.getLogger().warning("Invalid streak length in login-rewards: " + days);
+                }
+            }
+        }
+        multipliers = loaded;
+    }
+
+    /**
+     * Record a join and pay the reward if it is the player's first today
+     * @param player Player who joined
+     */
+    public void handleJoin(Player player) {
+        UUID uuid = player.getUniqueId();
+        int today = (int) LocalDate.now(zone).toEpochDay();
+
+        LoginHistory history = histories.computeIfAbsent(uuid, key -> new LoginHistory(today));
+        int streak;
+        synchronized (history) {
+            if (!history.login(today)) {
+                return;
+            }
+            streak = history.streak();
+        }
+
+        if (!enabled) {
+            return;
+        }
+
+        long reward = getReward(streak);
+        if (reward <= 0) {
+            return;
+        }
+        plugin.addGems(uuid, reward);
+
+        // Shortly after join so the message is not buried under join messages
+        String text = plugin.getPrefix() + " " + message
+                .replace("%amount%", formatNumber(reward))
+                .replace("%streak%", String.valueOf(streak));
+        Bukkit.getScheduler().runTaskLater(plugin, () -> {
+            Player online = Bukkit.getPlayer(uuid);
+            if (online != null) {
+                online.sendMessage(text);
+            }
+        }, 40L);
+    }
+
+    /**
+     * Get the reward for a streak, using the multiplier of the longest streak reached
+     * @param streak Consecutive days including today
+     * @return Gems to pay
+     */
+    public long getReward(int streak) {
+        Map.Entry<Integer, Double> multiplier = multipliers.floorEntry(streak);
+        long reward = Math.round(baseReward * (multiplier != null ? multiplier.getValue() : 1.0));
+        return maxReward > 0 ? Math.min(reward, maxReward) : reward;
+    }
+
+    /**
+     * Check whether login rewards are paid
+     * @return True if rewards are turned on
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get a player's current login streak
+     * @param uuid Player to check
+     * @return Consecutive days up to today or yesterday, 0 if the streak is broken
+     */
+    public int getStreak(UUID uuid) {
+        LoginHistory history = histories.get(uuid);
+        if (history == null) {
+            return 0;
+        }
+
+        int today = (int) LocalDate.now(zone).toEpochDay();
+        synchronized (history) {
+            return today - history.lastDay > 1 ? 0 : history.streak();
+        }
+    }
+
+    /**
+     * Read login histories from logins.dat
+     */
+    private void loadHistories() {
+        if (!loginFile.exists()) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(loginFile.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not a login history file");
+            }
+
+            int words = in.readInt();
+            while (in.readBoolean()) {
+                UUID uuid = new UUID(in.readLong(), in.readLong());
+                LoginHistory history = new LoginHistory(in.readInt());
+                for (int i = 0; i < words; i++) {
+                    long word = in.readLong();
+                    if (i < WORDS) {
+                        history.bits[i] = word;
+                    }
+                }
+                histories.put(uuid, history);
+            }
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to load logins.dat: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write login histories to logins.dat
+     */
+    public synchronized void save() {
+        File temp = new File(loginFile.getPath() + ".tmp");
+
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(WORDS);
+
+                for (Map.Entry<UUID, LoginHistory> entry : histories.entrySet()) {
+                    LoginHistory history = entry.getValue();
+                    out.writeBoolean(true);
+                    out.writeLong(entry.getKey().getMostSignificantBits());
+                    out.writeLong(entry.getKey().getLeastSignificantBits());
+                    synchronized (history) {
+                        out.writeInt(history.lastDay);
+                        for (long word : history.bits) {
+                            out.writeLong(word);
+                        }
+                    }
+                }
+                out.writeBoolean(false);
+            }
+
+            Files.move(temp.toPath(), loginFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to save logins.dat: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Format a number with commas
+     */
+    private String formatNumber(long number) {
+        return NumberFormat.getNumberInstance(Locale.US).format(number);
+    }
+
+    /**
+     * Rolling login bitset of one player
+     */
+    private static final class LoginHistory {
+        private final long[] bits = new long[WORDS];
+        private int lastDay;
+
+        private LoginHistory(int lastDay) {
+            this.lastDay = lastDay;
+        }
+
+        /**
+         * Record a login, shifting the history along to the new day
+         * @return True if this is the first login of the day
+         */
+        private boolean login(int day) {
+            if (day < lastDay || (day == lastDay && (bits[0] & 1L) != 0)) {
+                return false;
+            }
+
+            shift(day - lastDay);
+            lastDay = day;
+            bits[0] |= 1L;
+            return true;
+        }
+
+        /**
+         * Count the days logged in without a gap, ending at the last login
+         */
+        private int streak() {
+            int streak = 0;
+            for (long word : bits) {
+                if (word != -1L) {
+                    return streak + Long.numberOfTrailingZeros(~word);
+                }
+                streak += 64;
+            }
+            return streak;
+        }
+
+        /**
+         * Age every day by a number of days, dropping the oldest
+         */
+        private void shift(int days) {
+            if (days <= 0) {
+                return;
+            }
+
+            int wordShift = days / 64;
+            int bitShift = days % 64;
+            for (int i = WORDS - 1; i >= 0; i--) {
+                int source = i - wordShift;
+                long word = source >= 0 ? bits[source] << bitShift : 0L;
+                if (bitShift > 0 && source > 0) {
+                    word |= bits[source - 1] >>> (64 - bitShift);
+                }
+                bits[i] = word;
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.blissy.gemextension;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mailbox for transfers to offline players
+ *
+ * The gems themselves are credited straight away. Only the notice waits: each
+ * offline player has a mailbox keyed by UUID, and transfers from the same sender in
+ * the same currency are folded into one line as they arrive. On join the whole
+ * mailbox is taken out in one lookup and delivered as a single summary.
+ */
+public class GemMailManager implements Listener {
+
+    private final GemExtensionPlugin plugin;
+    private final Map<UUID, Map<String, Notice>> mailboxes = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     * @param plugin GemExtensionPlugin instance
+     * @param dataConfig Loaded gemdata.yml holding undelivered notices
+     */
+    public GemMailManager(GemExtensionPlugin plugin, FileConfiguration dataConfig) {
+        this.plugin = plugin;
+        loadMail(dataConfig);
+
+        // Register events
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+    }
+
+    /**
+     * Load undelivered notices from gemdata.yml
+     */
+    private void loadMail(FileConfiguration dataConfig) {
+        ConfigurationSection section = dataConfig.getConfigurationSection("mail");
+        if (section == null) {
+            return;
+        }
+
+        for (String uuidStr : section.getKeys(false)) {
+            UUID uuid;
+            try {
+                uuid = UUID.fromString(uuidStr);
+            } catch (IllegalArgumentException e) {
+                plugin.getLogger().warning("Invalid UUID in gemdata.yml mail: " + uuidStr);
+                continue;
+            }
+
+            // Each notice is saved as total:count:currency:sender
+            for (String saved : section.getStringList(uuidStr)) {
+                String[] parts = saved.split(":", 4);
+                try {
+                    add(uuid, parts[3], parts[2], Long.parseLong(parts[0]), Integer.parseInt(parts[1]));
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    plugin.getLogger().warning("Invalid mail in gemdata.yml for " + uuidStr + ": " + saved);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write undelivered notices into gemdata.yml
+     * @param dataConfig gemdata.yml being saved
+     */
+    public void writeMail(FileConfiguration dataConfig) {
+        dataConfig.set("mail", null);
+
+        for (Map.Entry<UUID, Map<String, Notice>> entry : mailboxes.entrySet()) {
+            List<String> saved = new ArrayList<>();
+            synchronized (entry.getValue()) {
+                for (Notice notice : entry.getValue().values()) {
+                    saved.add(notice.total + ":" + notice.count + ":" + notice.currency + ":" + notice.from);
+                }
+            }
+            dataConfig.set("mail." + entry.getKey().toString(), saved);
+        }
+    }
+
+    /**
+     * Queue a notice for a player who was credited while offline
+     * @param recipient Player who received the gems
+     * @param from Name of the sender, shown in the summary
+     * @param currency Currency name
+     * @param amount Amount credited
+     */
+    public void deliver(UUID recipient, String from, String currency, long amount) {
+        add(recipient, from, currency, amount, 1);
+    }
+
+    /**
+     * Fold a notice into a mailbox
+     */
+    private void add(UUID recipient, String from, String currency, long amount, int count) {
+        // Folded while the entry is held, so a join cannot take the mailbox halfway through
+        mailboxes.compute(recipient, (key, mailbox) -> {
+            Map<String, Notice> notices = mailbox != null ? mailbox : new LinkedHashMap<>();
+            synchronized (notices) {
+                Notice notice = notices.computeIfAbsent(currency + ":" + from, name -> new Notice(from, currency));
+                notice.total += amount;
+                notice.count += count;
+            }
+            return notices;
+        });
+    }
+
+    /**
+     * Get how many notices are waiting for a player
+     * @param uuid Player to check
+     * @return Number of summarized senders waiting
+     */
+    public int getPending(UUID uuid) {
+        Map<String, Notice> mailbox = mailboxes.get(uuid);
+        return mailbox == null ? 0 : mailbox.size();
+    }
+
+    /**
+     * Deliver the mailbox of joining players as one summary
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        UUID uuid = event.getPlayer().getUniqueId();
+        if (!mailboxes.containsKey(uuid)) {
+            return;
+        }
+
+        // Shortly after join so the summary is not buried under join messages. The mailbox stays
+        // in place until then, so a save or crash in between keeps it.
+        Bukkit.getScheduler().runTaskLater(plugin, () -> {
+            Player player = Bukkit.getPlayer(uuid);
+            if (player == null) {
+                return;
+            }
+
+            Map<String, Notice> mailbox = mailboxes.remove(uuid);
+            if (mailbox != null) {
+                sendSummary(player, mailbox);
+            }
+        }, 40L);
+    }
+
+    /**
+     * Send the summary of a mailbox
+     */
+    private void sendSummary(Player player, Map<String, Notice> mailbox) {
+        String prefix = plugin.getPrefix() + " ";
+
+        // Totals per currency first, then who sent what
+        Map<String, long[]> totals = new LinkedHashMap<>();
+        for (Notice notice : mailbox.values()) {
+            long[] total = totals.computeIfAbsent(notice.currency, key -> new long[2]);
+            total[0] += notice.total;
+            total[1] += notice.count;
+        }
+
+        for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+            long[] total = entry.getValue();
+            player.sendMessage(prefix + ChatColor.GREEN + "While you were away you received " + ChatColor.GOLD +
+                    formatNumber(total[0]) + ChatColor.GREEN + " " + entry.getKey() + " in " + total[1] +
+                    (total[1] == 1 ? " transfer." : " transfers."));
+        }
+
+        List<String> senders = new ArrayList<>();
+        for (Notice notice : mailbox.values()) {
+            senders.add(ChatColor.YELLOW + notice.from + ChatColor.GRAY + " (" + formatNumber(notice.total) + " " +
+                    notice.currency + ")");
+        }
+        player.sendMessage(prefix + ChatColor.GRAY + "From: " + String.join(ChatColor.GRAY + ", ", senders));
+    }
+
+    /**
+     * Format a number with commas
+     */
+    private String formatNumber(long number) {
+        return NumberFormat.getNumberInstance(Locale.US).format(number);
+    }
+
+    /**
+     * Everything one sender sent in one currency
+     */
+    private static final class Notice {
+        private final String from;
+        private final String currency;
+        private long total;
+        private int count;
+
+        private Notice(String from, String currency) {
+            this.from = from;
+            this.currency = currency;
+        }
+    }
+}
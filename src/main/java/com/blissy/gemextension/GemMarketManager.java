@@ -0,0 +1,715 @@
+package com.blissy.gemextension;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.text.NumberFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * Player exchange with one order book per listing type
+ *
+ * Every order book is owned by a single matching thread. Orders, cancels and
+ * queries are queued to it, so books need no locks and orders are matched strictly
+ * in the order they arrive: best price first, then oldest first within a price.
+ * Buyers' gems are taken from the ledger on the matching thread as the order is
+ * placed, and sellers' items when they list them. A fill pays the seller at the
+ * resting order's price, refunds any difference to the buyer and puts the items in
+ * the buyer's claim box, all on the matching thread. Since every market change to
+ * the ledger happens there, a save pauses the thread to copy balances and orders
+ * at one point. Messages about fills are batched to the main thread once a second.
+ */
+public class GemMarketManager {
+
+    private static final int MAX_NOTICES_PER_FLUSH = 5;
+
+    private final GemExtensionPlugin plugin;
+    private final BlockingQueue<Runnable> inbox = new LinkedBlockingQueue<>();
+    private final Thread matcher;
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final Map<UUID, Map<String, Long>> claims = new ConcurrentHashMap<>();
+    private final Map<Long, Order> pending = new ConcurrentHashMap<>();
+    private final Queue<Notice> notices = new ConcurrentLinkedQueue<>();
+    private final BukkitTask noticeTask;
+    private volatile boolean running = true;
+    private volatile Pause pause;
+
+    // Only touched by the matching thread
+    private final Map<String, OrderBook> books = new HashMap<>();
+    private final Map<Long, Order> orders = new HashMap<>();
+    private final Map<UUID, Integer> openCounts = new HashMap<>();
+
+    private volatile boolean enabled;
+    private volatile int maxOpenOrders;
+    private volatile double feePercent;
+
+    /**
+     * Constructor
+     * @param plugin GemExtensionPlugin instance
+     * @param dataConfig Loaded gemdata.yml holding open orders and claims
+     */
+    public GemMarketManager(GemExtensionPlugin plugin, FileConfiguration dataConfig) {
+        this.plugin = plugin;
+        loadConfig();
+        loadMarket(dataConfig);
+
+        matcher = new Thread(this::runMatcher, "GemExtension-Market");
+        matcher.setDaemon(true);
+        matcher.start();
+
+        noticeTask = Bukkit.getScheduler().runTaskTimer(plugin, this::flushNotices, 20L, 20L);
+    }
+
+    /**
+     * Load market settings from config.yml
+     */
+    public void loadConfig() {
+        FileConfiguration config = plugin.getConfig();
+
+        enabled = config.getBoolean("market.enabled", true);
+        maxOpenOrders = Math.max(1, config.getInt("market.max-open-orders", 20));
+        feePercent = Math.max(0, Math.min(100, config.getDouble("market.fee-percent", 2.0)));
+    }
+
+    /**
+     * Check whether the market is open
+     * @return True if orders can be placed
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get the fee taken from sellers
+     * @return Fee as a percentage of each fill
+     */
+    public double getFeePercent() {
+        return feePercent;
+    }
+
+    /**
+     * Place a buy order, taking its full cost in gems now
+     *
+     * The gems are taken on the matching thread, so this blocks until the order is
+     * queued there and must not be called on the main thread. Gems from expiring
+     * grants cannot be escrowed, since refunds and proceeds are paid out as
+     * permanent gems.
+     * @param owner Buyer
+     * @param type Listing type, such as a material name
+     * @param quantity Units wanted
+     * @param price Highest price per unit
+     * @return Order id, or -1 if the buyer cannot cover the order
+     */
+    public long placeBuy(UUID owner, String type, int quantity, long price) {
+        long cost;
+        try {
+            cost = Math.multiplyExact(price, (long) quantity);
+        } catch (ArithmeticException e) {
+            return -1;
+        }
+
+        if (quantity <= 0 || price <= 0 || !running) {
+            return -1;
+        }
+
+        // Whichever side claims the order first decides whether it runs
+        AtomicBoolean claimed = new AtomicBoolean();
+        CompletableFuture<Long> placed = new CompletableFuture<>();
+        inbox.add(() -> {
+            if (!claimed.compareAndSet(false, true)) {
+                return;
+            }
+            if (!plugin.removeTransferableGems(owner, cost)) {
+                placed.complete(-1L);
+                return;
+            }
+
+            Order order = new Order(nextId.getAndIncrement(), owner, true, type, price, quantity);
+            placed.complete(order.id);
+            place(order);
+        });
+
+        try {
+            try {
+                return placed.get(10, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                if (claimed.compareAndSet(false, true)) {
+                    plugin.getLogger().warning("Market did not take a buy order within 10 seconds, it was dropped.");
+                    return -1;
+                }
+                // Already being placed, which never waits on anything
+                return placed.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted placing a market order", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Market order failed", e.getCause());
+        }
+    }
+
+    /**
+     * Place a sell order for items already taken from the seller
+     * @param owner Seller
+     * @param type Listing type, such as a material name
+     * @param quantity Units offered, already held in escrow
+     * @param price Lowest price per unit
+     * @return Order id
+     */
+    public long placeSell(UUID owner, String type, int quantity, long price) {
+        Order order = new Order(nextId.getAndIncrement(), owner, false, type, price, quantity);
+
+        // The items are already gone, so saves include the order until it reaches its book
+        pending.put(order.id, order);
+        inbox.add(() -> place(order));
+        return order.id;
+    }
+
+    /**
+     * Cancel an open order and return its escrow
+     * @param owner Player cancelling, who must own the order
+     * @param id Order id
+     * @param done Called on the main thread with true if the order was cancelled
+     */
+    public void cancel(UUID owner, long id, Consumer<Boolean> done) {
+        inbox.add(() -> {
+            Order order = orders.get(id);
+            boolean cancelled = order != null && order.owner.equals(owner);
+            if (cancelled) {
+                remove(order);
+                refund(order);
+            }
+            Bukkit.getScheduler().runTask(plugin, () -> done.accept(cancelled));
+        });
+    }
+
+    /**
+     * Describe the best prices in a book
+     * @param type Listing type
+     * @param depth Price levels to show on each side
+     * @param done Called on the main thread with the lines to show
+     */
+    public void describeBook(String type, int depth, Consumer<List<String>> done) {
+        inbox.add(() -> {
+            List<String> lines = new ArrayList<>();
+            OrderBook book = books.get(type);
+            if (book == null || (book.asks.isEmpty() && book.bids.isEmpty())) {
+                lines.add(ChatColor.YELLOW + "There are no orders for " + type + ".");
+            } else {
+                lines.add(ChatColor.GREEN + "Selling " + type + ":");
+                describeSide(book.asks, depth, lines);
+                lines.add(ChatColor.GREEN + "Buying " + type + ":");
+                describeSide(book.bids, depth, lines);
+            }
+            Bukkit.getScheduler().runTask(plugin, () -> done.accept(lines));
+        });
+    }
+
+    /**
+     * Describe a player's open orders
+     * @param owner Player whose orders to list
+     * @param done Called on the main thread with the lines to show
+     */
+    public void describeOrders(UUID owner, Consumer<List<String>> done) {
+        inbox.add(() -> {
+            List<String> lines = new ArrayList<>();
+            for (Order order : orders.values()) {
+                if (order.owner.equals(owner)) {
+                    lines.add(ChatColor.GOLD + "#" + order.id + " " + ChatColor.YELLOW + (order.buy ? "Buy " : "Sell ") +
+                            order.remaining + " " + order.type + " at " + formatNumber(order.price) + " each");
+                }
+            }
+            if (lines.isEmpty()) {
+                lines.add(ChatColor.YELLOW + "You have no open orders.");
+            }
+            Bukkit.getScheduler().runTask(plugin, () -> done.accept(lines));
+        });
+    }
+
+    /**
+     * Take everything waiting in a player's claim box
+     * @param owner Player claiming
+     * @return Units waiting by listing type, empty if there is nothing to claim
+     */
+    public Map<String, Long> takeClaims(UUID owner) {
+        Map<String, Long> claimed = claims.remove(owner);
+        return claimed != null ? claimed : Collections.emptyMap();
+    }
+
+    /**
+     * Put units into a player's claim box
+     * @param owner Player to credit
+     * @param type Listing type
+     * @param quantity Units to add
+     */
+    public void addClaim(UUID owner, String type, long quantity) {
+        claims.compute(owner, (key, box) -> {
+            Map<String, Long> updated = box != null ? box : new LinkedHashMap<>();
+            updated.merge(type, quantity, Long::sum);
+            return updated;
+        });
+    }
+
+    /**
+     * Add an order to its book, matching it against the other side first
+     */
+    private void place(Order order) {
+        pending.remove(order.id);
+
+        if (openCounts.getOrDefault(order.owner, 0) >= maxOpenOrders) {
+            refund(order);
+            notify(order.owner, ChatColor.RED + "Order #" + order.id + " was refused, you already have " +
+                    maxOpenOrders + " open orders.");
+            return;
+        }
+
+        OrderBook book = books.computeIfAbsent(order.type, key -> new OrderBook());
+        TreeMap<Long, ArrayDeque<Order>> opposite = order.buy ? book.asks : book.bids;
+
+        while (order.remaining > 0 && !opposite.isEmpty()) {
+            Map.Entry<Long, ArrayDeque<Order>> best = opposite.firstEntry();
+            long price = best.getKey();
+            if (order.buy ? price > order.price : price < order.price) {
+                break;
+            }
+
+            ArrayDeque<Order> level = best.getValue();
+            Order resting = level.peekFirst();
+            int quantity = Math.min(order.remaining, resting.remaining);
+            settle(order.buy ? order : resting, order.buy ? resting : order, price, quantity);
+            order.remaining -= quantity;
+            resting.remaining -= quantity;
+
+            if (resting.remaining == 0) {
+                level.pollFirst();
+                if (level.isEmpty()) {
+                    opposite.pollFirstEntry();
+                }
+                orders.remove(resting.id);
+                openCounts.merge(resting.owner, -1, Integer::sum);
+            }
+        }
+
+        if (order.remaining > 0) {
+            rest(book, order);
+        }
+    }
+
+    /**
+     * Leave an order in its book at its own price
+     */
+    private void rest(OrderBook book, Order order) {
+        (order.buy ? book.bids : book.asks).computeIfAbsent(order.price, key -> new ArrayDeque<>()).addLast(order);
+        orders.put(order.id, order);
+        openCounts.merge(order.owner, 1, Integer::sum);
+    }
+
+    /**
+     * Take an open order out of its book
+     */
+    private void remove(Order order) {
+        OrderBook book = books.get(order.type);
+        TreeMap<Long, ArrayDeque<Order>> side = order.buy ? book.bids : book.asks;
+        ArrayDeque<Order> level = side.get(order.price);
+        level.remove(order);
+        if (level.isEmpty()) {
+            side.remove(order.price);
+        }
+        orders.remove(order.id);
+        openCounts.merge(order.owner, -1, Integer::sum);
+    }
+
+    /**
+     * Move gems and items for one fill
+     */
+    private void settle(Order buy, Order sell, long price, int quantity) {
+        long proceeds = price * quantity;
+        long fee = (long) (proceeds * feePercent / 100.0);
+
+        // The buyer paid their own limit up front, so return what the fill saved them
+        long refund = (buy.price - price) * quantity;
+        if (refund > 0) {
+            plugin.addGems(buy.owner, refund);
+        }
+
+        plugin.addGems(sell.owner, proceeds - fee);
+        addClaim(buy.owner, buy.type, quantity);
+        plugin.getAnomalyManager().recordTransfer(buy.owner, sell.owner, proceeds);
+
+        notify(buy.owner, ChatColor.GREEN + "Bought " + quantity + " " + buy.type + " for " + ChatColor.GOLD +
+                formatNumber(proceeds) + ChatColor.GREEN + " gems. Use /gem market claim to collect them.");
+        notify(sell.owner, ChatColor.GREEN + "Sold " + quantity + " " + sell.type + " for " + ChatColor.GOLD +
+                formatNumber(proceeds - fee) + ChatColor.GREEN + " gems" +
+                (fee > 0 ? " after a " + formatNumber(fee) + " gem fee." : "."));
+    }
+
+    /**
+     * Return the unfilled part of an order's escrow
+     */
+    private void refund(Order order) {
+        if (order.buy) {
+            plugin.addGems(order.owner, order.price * order.remaining);
+        } else {
+            addClaim(order.owner, order.type, order.remaining);
+        }
+    }
+
+    /**
+     * Run queued work until shut down and the queue is empty
+     */
+    private void runMatcher() {
+        while (running || !inbox.isEmpty()) {
+            try {
+                holdForPause();
+                Runnable task = inbox.poll(1, TimeUnit.SECONDS);
+                if (task != null) {
+                    task.run();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                plugin.getLogger().log(Level.SEVERE, "Market order failed", e);
+            }
+        }
+    }
+
+    /**
+     * Queue a message for a player, sent with the next batch
+     */
+    private void notify(UUID uuid, String message) {
+        notices.add(new Notice(uuid, message));
+    }
+
+    /**
+     * Send queued messages to players who are online
+     */
+    private void flushNotices() {
+        if (notices.isEmpty()) {
+            return;
+        }
+
+        Map<UUID, List<String>> batches = new LinkedHashMap<>();
+        Notice notice;
+        while ((notice = notices.poll()) != null) {
+            batches.computeIfAbsent(notice.uuid, key -> new ArrayList<>()).add(notice.message);
+        }
+
+        String prefix = plugin.getPrefix() + " ";
+        for (Map.Entry<UUID, List<String>> batch : batches.entrySet()) {
+            Player player = Bukkit.getPlayer(batch.getKey());
+            if (player == null) {
+                continue;
+            }
+
+            List<String> messages = batch.getValue();
+            for (int i = 0; i < messages.size() && i < MAX_NOTICES_PER_FLUSH; i++) {
+                player.sendMessage(prefix + messages.get(i));
+            }
+            if (messages.size() > MAX_NOTICES_PER_FLUSH) {
+                player.sendMessage(prefix + ChatColor.GRAY + "...and " + (messages.size() - MAX_NOTICES_PER_FLUSH) +
+                        " more market updates.");
+            }
+        }
+    }
+
+    /**
+     * Load open orders and claim boxes from gemdata.yml
+     */
+    private void loadMarket(FileConfiguration dataConfig) {
+        nextId.set(Math.max(1, dataConfig.getLong("market.next-id", 1)));
+
+        // Saved as id:owner:side:type:price:remaining, in book order
+        for (String saved : dataConfig.getStringList("market.orders")) {
+            String[] parts = saved.split(":");
+            try {
+                Order order = new Order(Long.parseLong(parts[0]), UUID.fromString(parts[1]), parts[2].equals("buy"),
+                        parts[3], Long.parseLong(parts[4]), Integer.parseInt(parts[5]));
+                rest(books.computeIfAbsent(order.type, key -> new OrderBook()), order);
+                nextId.set(Math.max(nextId.get(), order.id + 1));
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                plugin.getLogger().warning("Invalid market order in gemdata.yml: " + saved);
+            }
+        }
+
+        ConfigurationSection section = dataConfig.getConfigurationSection("market.claims");
+        if (section == null) {
+            return;
+        }
+
+        for (String uuidStr : section.getKeys(false)) {
+            ConfigurationSection box = section.getConfigurationSection(uuidStr);
+            try {
+                UUID uuid = UUID.fromString(uuidStr);
+                for (String type : box.getKeys(false)) {
+                    addClaim(uuid, type, box.getLong(type));
+                }
+            } catch (IllegalArgumentException | NullPointerException e) {
+                plugin.getLogger().warning("Invalid market claim in gemdata.yml: " + uuidStr);
+            }
+        }
+    }
+
+    /**
+     * Hold the matching thread and copy the market, until {@link #resume()} is called
+     *
+     * While paused the market moves no gems, so balances copied before resuming
+     * match the copied orders.
+     * @return Copy of the market, or null if the matching thread did not pause in time
+     */
+    Snapshot pause() {
+        // Orders belong to the matching thread, so it copies them out itself
+        if (!matcher.isAlive()) {
+            return snapshot();
+        }
+
+        // Picked up between tasks rather than queued, so the save does not wait for the backlog
+        Pause request = new Pause();
+        pause = request;
+        inbox.add(() -> { });
+
+        try {
+            return request.copied.get(10, TimeUnit.SECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            plugin.getLogger().severe("Could not save market orders: " + e);
+            resume();
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Let the matching thread carry on after {@link #pause()}
+     */
+    void resume() {
+        Pause request = pause;
+        if (request != null) {
+            pause = null;
+            request.resumed.countDown();
+        }
+    }
+
+    /**
+     * Copy the market for a waiting save and hold until it resumes, on the matching thread
+     */
+    private void holdForPause() {
+        Pause request = pause;
+        if (request == null || !request.copied.complete(snapshot())) {
+            return;
+        }
+
+        try {
+            // Bounded, so a save that never resumes cannot stop the market for good
+            if (!request.resumed.await(30, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Market was paused for a save for over 30 seconds, resuming.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Write a copy of the open orders and claim boxes into gemdata.yml
+     * @param dataConfig gemdata.yml being saved
+     * @param snapshot Copy taken by {@link #pause()}
+     */
+    void writeMarket(FileConfiguration dataConfig, Snapshot snapshot) {
+        dataConfig.set("market.next-id", snapshot.nextId);
+        dataConfig.set("market.orders", snapshot.orders);
+        dataConfig.set("market.claims", null);
+        for (Map.Entry<UUID, Map<String, Long>> entry : snapshot.claims.entrySet()) {
+            for (Map.Entry<String, Long> claim : entry.getValue().entrySet()) {
+                dataConfig.set("market.claims." + entry.getKey() + "." + claim.getKey(), claim.getValue());
+            }
+        }
+    }
+
+    /**
+     * Copy orders, claims and the next id, on the matching thread or once it has stopped
+     */
+    private Snapshot snapshot() {
+        List<String> saved = snapshotOrders();
+
+        // Sells not yet in a book come after it, in the order they were placed
+        List<Order> queued = new ArrayList<>(pending.values());
+        queued.sort(Comparator.comparingLong(order -> order.id));
+        for (Order order : queued) {
+            saved.add(describe(order));
+        }
+
+        Map<UUID, Map<String, Long>> boxes = new HashMap<>();
+        for (UUID owner : claims.keySet()) {
+            // Copied inside compute, so a box is never read while it is being changed
+            claims.computeIfPresent(owner, (key, box) -> {
+                boxes.put(key, new LinkedHashMap<>(box));
+                return box;
+            });
+        }
+
+        return new Snapshot(saved, boxes, nextId.get());
+    }
+
+    /**
+     * List open orders oldest first within each price, on the matching thread
+     */
+    private List<String> snapshotOrders() {
+        List<String> saved = new ArrayList<>();
+        for (OrderBook book : books.values()) {
+            for (TreeMap<Long, ArrayDeque<Order>> side : List.of(book.bids, book.asks)) {
+                for (ArrayDeque<Order> level : side.values()) {
+                    for (Order order : level) {
+                        saved.add(describe(order));
+                    }
+                }
+            }
+        }
+        return saved;
+    }
+
+    /**
+     * Encode an order the way gemdata.yml stores it
+     */
+    private static String describe(Order order) {
+        return order.id + ":" + order.owner + ":" + (order.buy ? "buy" : "sell") + ":" +
+                order.type + ":" + order.price + ":" + order.remaining;
+    }
+
+    /**
+     * Describe the best price levels of one side of a book
+     */
+    private void describeSide(TreeMap<Long, ArrayDeque<Order>> side, int depth, List<String> lines) {
+        if (side.isEmpty()) {
+            lines.add(ChatColor.GRAY + "  none");
+            return;
+        }
+
+        int shown = 0;
+        for (Map.Entry<Long, ArrayDeque<Order>> level : side.entrySet()) {
+            if (shown++ >= depth) {
+                break;
+            }
+
+            long units = 0;
+            for (Order order : level.getValue()) {
+                units += order.remaining;
+            }
+            lines.add(ChatColor.GOLD + "  " + formatNumber(level.getKey()) + ChatColor.YELLOW + " gems each, " +
+                    formatNumber(units) + " available");
+        }
+    }
+
+    /**
+     * Stop matching once queued orders are done
+     */
+    public void shutdown() {
+        noticeTask.cancel();
+        running = false;
+        try {
+            matcher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Format a number with commas
+     */
+    private String formatNumber(long number) {
+        return NumberFormat.getNumberInstance(Locale.US).format(number);
+    }
+
+    /**
+     * Buy and sell sides of one listing type, best price first
+     */
+    private static final class OrderBook {
+        private final TreeMap<Long, ArrayDeque<Order>> bids = new TreeMap<>(Comparator.reverseOrder());
+        private final TreeMap<Long, ArrayDeque<Order>> asks = new TreeMap<>();
+    }
+
+    /**
+     * Save waiting for the matching thread to copy the market and hold
+     */
+    private static final class Pause {
+        private final CompletableFuture<Snapshot> copied = new CompletableFuture<>();
+        private final CountDownLatch resumed = new CountDownLatch(1);
+    }
+
+    /**
+     * Open orders, claim boxes and next order id copied at one point
+     */
+    static final class Snapshot {
+        private final List<String> orders;
+        private final Map<UUID, Map<String, Long>> claims;
+        private final long nextId;
+
+        private Snapshot(List<String> orders, Map<UUID, Map<String, Long>> claims, long nextId) {
+            this.orders = orders;
+            this.claims = claims;
+            this.nextId = nextId;
+        }
+    }
+
+    /**
+     * One buy or sell order
+     */
+    private static final class Order {
+        private final long id;
+        private final UUID owner;
+        private final boolean buy;
+        private final String type;
+        private final long price;
+        private int remaining;
+
+        private Order(long id, UUID owner, boolean buy, String type, long price, int remaining) {
+            this.id = id;
+            this.owner = owner;
+            this.buy = buy;
+            this.type = type;
+            this.price = price;
+            this.remaining = remaining;
+        }
+    }
+
+    /**
+     * Message waiting for the next batch
+     */
+    private static final class Notice {
+        private final UUID uuid;
+        private final String message;
+
+        private Notice(UUID uuid, String message) {
+            this.uuid = uuid;
+            this.message = message;
+        }
+    }
+}
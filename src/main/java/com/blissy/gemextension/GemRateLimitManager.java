@@ -0,0 +1,173 @@
+package com.blissy.gemextension;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token-bucket limits on gem transfers, per player and server-wide
+ *
+ * Each bucket is a single atomic long holding the time at which it will be full
+ * again. Taking a token moves that time forward by one refill interval, and is
+ * refused if it would put the bucket more than its burst behind. This behaves
+ * exactly like a bucket of tokens refilled at a steady rate, but needs no refill
+ * task, no lock and only one compare-and-set per call. Online players keep their
+ * bucket until they leave. Buckets of offline players, who can only send through
+ * the API, are dropped once they have refilled, since a full bucket behaves the
+ * same as a new one.
+ */
+public class GemRateLimitManager implements Listener {
+
+    private static final int PRUNE_MIN = 256;
+
+    private final GemExtensionPlugin plugin;
+    private final Map<UUID, AtomicLong> players = new ConcurrentHashMap<>();
+    private final AtomicLong global = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicInteger pruneAt = new AtomicInteger(PRUNE_MIN);
+
+    private volatile boolean enabled;
+    private volatile Rate playerRate;
+    private volatile Rate globalRate;
+    private volatile String cooldownMessage;
+
+    /**
+     * Constructor
+     * @param plugin GemExtensionPlugin instance
+     */
+    public GemRateLimitManager(GemExtensionPlugin plugin) {
+        this.plugin = plugin;
+        loadConfig();
+
+        // Register events
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+    }
+
+    /**
+     * Load limits from config.yml
+     */
+    public void loadConfig() {
+        FileConfiguration config = plugin.getConfig();
+
+        enabled = config.getBoolean("rate-limit.enabled", true);
+        playerRate = new Rate(config.getInt("rate-limit.player.burst", 5),
+                config.getDouble("rate-limit.player.per-second", 1.0));
+        globalRate = new Rate(config.getInt("rate-limit.global.burst", 100),
+                config.getDouble("rate-limit.global.per-second", 50.0));
+
+        // Built once, throttled calls only send it
+        cooldownMessage = plugin.getPrefix() + " " + ChatColor.translateAlternateColorCodes('&',
+                config.getString("rate-limit.message", "&cYou are sending gems too quickly, slow down."));
+    }
+
+    /**
+     * Take a token from the player's bucket and then the global one
+     * @param uuid Player making the transfer
+     * @return True if the transfer may go ahead
+     */
+    public boolean tryAcquire(UUID uuid) {
+        if (!enabled) {
+            return true;
+        }
+
+        long now = System.nanoTime();
+        Rate rate = playerRate;
+        AtomicLong bucket = players.computeIfAbsent(uuid, key -> new AtomicLong(Long.MIN_VALUE));
+
+        // Only when the map has doubled since the last prune, so the walk stays rare
+        int threshold = pruneAt.get();
+        if (players.size() > threshold && pruneAt.compareAndSet(threshold, Integer.MAX_VALUE)) {
+            prune(now);
+        }
+
+        // The player's own bucket first, so one spammer cannot drain the global one
+        if (!take(bucket, rate, now)) {
+            return false;
+        }
+        if (!take(global, globalRate, now)) {
+            // Nothing was sent, so the player gets their token back
+            bucket.addAndGet(-rate.interval);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Give back a token taken by {@link #tryAcquire(UUID)} for a transfer that never ran
+     * @param uuid Player whose transfer was refused
+     */
+    public void release(UUID uuid) {
+        if (!enabled) {
+            return;
+        }
+
+        AtomicLong bucket = players.get(uuid);
+        if (bucket != null) {
+            bucket.addAndGet(-playerRate.interval);
+        }
+        global.addAndGet(-globalRate.interval);
+    }
+
+    /**
+     * Get the message shown to throttled players
+     * @return Cooldown message with the prefix
+     */
+    public String getCooldownMessage() {
+        return cooldownMessage;
+    }
+
+    /**
+     * Forget the bucket of players who leave
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        players.remove(event.getPlayer().getUniqueId());
+    }
+
+    /**
+     * Drop the buckets of offline players that have refilled
+     */
+    private void prune(long now) {
+        players.entrySet().removeIf(entry -> entry.getValue().get() <= now &&
+                Bukkit.getPlayer(entry.getKey()) == null);
+        pruneAt.set(Math.max(PRUNE_MIN, players.size() * 2));
+    }
+
+    /**
+     * Take one token from a bucket if it has one
+     */
+    private static boolean take(AtomicLong bucket, Rate rate, long now) {
+        while (true) {
+            long full = bucket.get();
+            long start = Math.max(full, now);
+            if (start - now > rate.tolerance) {
+                return false;
+            }
+            if (bucket.compareAndSet(full, start + rate.interval)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Refill interval and burst of a bucket, in nanoseconds
+     */
+    private static final class Rate {
+        private final long interval;
+        private final long tolerance;
+
+        private Rate(int burst, double perSecond) {
+            this.interval = (long) (1_000_000_000L / Math.max(0.001, perSecond));
+            this.tolerance = (Math.max(1, burst) - 1) * interval;
+        }
+    }
+}
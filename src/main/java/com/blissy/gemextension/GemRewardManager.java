@@ -0,0 +1,179 @@
+package com.blissy.gemextension;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.entity.Player;
+
+import java.io.File;
+import java.text.NumberFormat;
+import java.util.Locale;
+
+/**
+ * Pays gems for Pixelmon captures and defeats, scaled by spawn rarity
+ *
+ * Pixelmon fires its events on the Forge bus, which this plugin does not compile
+ * against, so the bridge (or a command-on-event plugin via /gemadmin reward) calls
+ * {@link #rewardCapture(Player, String)} and {@link #rewardDefeat(Player, String)}.
+ */
+public class GemRewardManager {
+
+    /**
+     * Kind of encounter that earned the reward
+     */
+    public enum RewardType {
+        CAPTURE,
+        DEFEAT
+    }
+
+    private final GemExtensionPlugin plugin;
+    private volatile SpawnRarityIndex rarityIndex = SpawnRarityIndex.empty();
+
+    private boolean enabled;
+    private String spawnDataFolder;
+    private long captureBase;
+    private long defeatBase;
+    private double referenceRarity;
+    private double minMultiplier;
+    private double maxMultiplier;
+    private double unknownMultiplier;
+
+    /**
+     * Constructor
+     * @param plugin GemExtensionPlugin instance
+     */
+    public GemRewardManager(GemExtensionPlugin plugin) {
+        this.plugin = plugin;
+        loadConfig();
+        rebuildIndex();
+    }
+
+    /**
+     * Load reward settings from config.yml
+     */
+    public void loadConfig() {
+        FileConfiguration config = plugin.getConfig();
+
+        enabled = config.getBoolean("rewards.enabled", true);
+        spawnDataFolder = config.getString("rewards.spawn-data-folder", "spawns");
+        captureBase = config.getLong("rewards.capture-base", 5);
+        defeatBase = config.getLong("rewards.defeat-base", 1);
+        referenceRarity = config.getDouble("rewards.reference-rarity", 100.0);
+        minMultiplier = config.getDouble("rewards.min-multiplier", 0.5);
+        maxMultiplier = config.getDouble("rewards.max-multiplier", 20.0);
+        unknownMultiplier = config.getDouble("rewards.unknown-species-multiplier", 1.0);
+    }
+
+    /**
+     * Rebuild the rarity index from the spawn sets on a background thread
+     */
+    public void rebuildIndex() {
+        File folder = new File(plugin.getDataFolder(), spawnDataFolder);
+
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            long start = System.currentTimeMillis();
+            SpawnRarityIndex index = SpawnRarityIndex.load(folder, plugin.getLogger());
+            rarityIndex = index;
+
+            if (index.size() == 0) {
+                plugin.getLogger().warning("No spawn sets found in " + folder.getPath() +
+                        ", rewards will use the unknown species multiplier.");
+            } else {
+                plugin.getLogger().info("Indexed spawn rarity for " + index.size() + " species in " +
+                        (System.currentTimeMillis() - start) + "ms.");
+            }
+        });
+    }
+
+    /**
+     * Reward a player for capturing a Pokemon
+     * @param player Player who captured
+     * @param species Species that was captured
+     * @return Gems paid
+     */
+    public long rewardCapture(Player player, String species) {
+        return reward(player, species, RewardType.CAPTURE);
+    }
+
+    /**
+     * Reward a player for defeating a wild Pokemon
+     * @param player Player who won the battle
+     * @param species Species that was defeated
+     * @return Gems paid
+     */
+    public long rewardDefeat(Player player, String species) {
+        return reward(player, species, RewardType.DEFEAT);
+    }
+
+    /**
+     * Pay and announce a reward
+     * @param player Player to reward
+     * @param species Species involved
+     * @param type Capture or defeat
+     * @return Gems paid, including any bounty
+     */
+    public long reward(Player player, String species, RewardType type) {
+        // Captures can also complete a bounty
+        long bounty = 0;
+        if (type == RewardType.CAPTURE && plugin.getBountyManager() != null) {
+            bounty = plugin.getBountyManager().onCapture(player, species);
+        }
+
+        long amount = getReward(species, type);
+        if (amount <= 0) {
+            return bounty;
+        }
+
+        plugin.addGems(player, amount);
+
+        String action = type == RewardType.CAPTURE ? "catching " : "defeating ";
+        player.sendMessage(plugin.getPrefix() + " " + ChatColor.GREEN + "You earned " + ChatColor.GOLD +
+                formatNumber(amount) + ChatColor.GREEN + " gems for " + action + species + ".");
+        return amount + bounty;
+    }
+
+    /**
+     * Work out the reward for a species without paying it
+     * @param species Species involved
+     * @param type Capture or defeat
+     * @return Gems that would be paid
+     */
+    public long getReward(String species, RewardType type) {
+        if (!enabled) {
+            return 0;
+        }
+
+        long base = type == RewardType.CAPTURE ? captureBase : defeatBase;
+        return Math.round(base * getMultiplier(species));
+    }
+
+    /**
+     * Get the rarity multiplier for a species
+     * @param species Species name
+     * @return Multiplier applied to the base reward
+     */
+    public double getMultiplier(String species) {
+        float rarity = rarityIndex.getRarity(species);
+        if (rarity <= 0) {
+            return unknownMultiplier;
+        }
+
+        double multiplier = referenceRarity / rarity;
+        return Math.max(minMultiplier, Math.min(maxMultiplier, multiplier));
+    }
+
+    /**
+     * Get the current rarity index
+     * @return Rarity index
+     */
+    public SpawnRarityIndex getRarityIndex() {
+        return rarityIndex;
+    }
+
+    /**
+     * Format a number with commas
+     */
+    private String formatNumber(long number) {
+        return NumberFormat.getNumberInstance(Locale.US).format(number);
+    }
+}
@@ -0,0 +1,215 @@
+package com.blissy.gemextension;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.RegisteredServiceProvider;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Prices party Pokemon in gems from the compiled species index
+ */
+public class GemSellManager {
+
+    /**
+     * Highest possible sum of six IVs
+     */
+    private static final int MAX_IV_TOTAL = 186;
+
+    private final GemExtensionPlugin plugin;
+    private volatile SpeciesPriceIndex priceIndex;
+    private BukkitTask refreshTask;
+
+    private boolean enabled;
+    private String speciesDataFolder;
+    private int refreshInterval;
+    private double basePrice;
+    private double referenceStatTotal;
+    private double catchRateWeight;
+    private double levelWeight;
+    private double ivWeight;
+    private double legendaryMultiplier;
+    private double mythicalMultiplier;
+    private double ultraBeastMultiplier;
+    private double finalStageMultiplier;
+
+    /**
+     * Constructor
+     * @param plugin GemExtensionPlugin instance
+     */
+    public GemSellManager(GemExtensionPlugin plugin) {
+        this.plugin = plugin;
+        loadConfig();
+    }
+
+    /**
+     * Load selling settings from config.yml and reschedule the index refresh
+     */
+    public void loadConfig() {
+        FileConfiguration config = plugin.getConfig();
+
+        enabled = config.getBoolean("selling.enabled", true);
+        speciesDataFolder = config.getString("selling.species-data-folder", "pixelmon_data");
+        refreshInterval = config.getInt("selling.refresh-interval", 5);
+        basePrice = config.getDouble("selling.base-price", 10.0);
+        referenceStatTotal = config.getDouble("selling.reference-stat-total", 500.0);
+        catchRateWeight = config.getDouble("selling.catch-rate-weight", 2.0);
+        levelWeight = config.getDouble("selling.level-weight", 1.0);
+        ivWeight = config.getDouble("selling.iv-weight", 1.0);
+        legendaryMultiplier = config.getDouble("selling.legendary-multiplier", 5.0);
+        mythicalMultiplier = config.getDouble("selling.mythical-multiplier", 5.0);
+        ultraBeastMultiplier = config.getDouble("selling.ultra-beast-multiplier", 3.0);
+        finalStageMultiplier = config.getDouble("selling.final-stage-multiplier", 1.25);
+
+        // One index per data folder, so a reload keeps reading the one already mapped
+        File folder = new File(plugin.getDataFolder(), speciesDataFolder);
+        if (enabled && !folder.isDirectory()) {
+            plugin.getLogger().warning("No species data found in " + folder.getPath() +
+                    ", copy the pixelmon_data folder there to price Pokemon.");
+        }
+        if (priceIndex == null || !priceIndex.getDataFolder().equals(folder)) {
+            priceIndex = new SpeciesPriceIndex(new File(plugin.getDataFolder(), "species.idx"), folder,
+                    plugin.getLogger());
+        }
+
+        // Refresh right away, then keep picking up edited species files
+        if (refreshTask != null) {
+            refreshTask.cancel();
+        }
+        if (refreshInterval > 0) {
+            refreshTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::refreshIndex,
+                    0L, refreshInterval * 1200L);
+        } else {
+            refreshTask = Bukkit.getScheduler().runTaskAsynchronously(plugin, this::refreshIndex);
+        }
+    }
+
+    /**
+     * Check for edited species files off the main thread
+     */
+    public void refresh() {
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, this::refreshIndex);
+    }
+
+    /**
+     * Bring the species index up to date with the data folder
+     */
+    private void refreshIndex() {
+        SpeciesPriceIndex index = priceIndex;
+        try {
+            long start = System.currentTimeMillis();
+            int updated = index.refresh();
+
+            if (updated > 0) {
+                plugin.getLogger().info("Rebuilt " + updated + " species price records in " +
+                        (System.currentTimeMillis() - start) + "ms.");
+            }
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to build species.idx: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Check whether selling is enabled
+     * @return True if players can sell Pokemon
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get the registered Pixelmon party bridge
+     * @return Bridge, or null if none is registered
+     */
+    public PixelmonPartyBridge getBridge() {
+        RegisteredServiceProvider<PixelmonPartyBridge> provider =
+                Bukkit.getServicesManager().getRegistration(PixelmonPartyBridge.class);
+        return provider == null ? null : provider.getProvider();
+    }
+
+    /**
+     * Quote the gem value of a Pokemon
+     * @param dex National dex number
+     * @param level Pokemon level
+     * @param ivTotal Sum of the Pokemon's six IVs
+     * @return Price in gems, or 0 if the species is not indexed
+     */
+    public long quote(int dex, int level, int ivTotal) {
+        SpeciesPriceIndex priceIndex = this.priceIndex;
+        int statTotal = priceIndex.getBaseStatTotal(dex);
+        if (statTotal <= 0) {
+            return 0;
+        }
+
+        int catchRate = Math.max(1, Math.min(255, priceIndex.getCatchRate(dex)));
+        int flags = priceIndex.getFlags(dex);
+
+        double price = basePrice * (statTotal / referenceStatTotal);
+        price *= 1.0 + catchRateWeight * (255 - catchRate) / 254.0;
+        price *= 1.0 + levelWeight * Math.max(1, Math.min(100, level)) / 100.0;
+        price *= 1.0 + ivWeight * Math.max(0, Math.min(MAX_IV_TOTAL, ivTotal)) / (double) MAX_IV_TOTAL;
+
+        if ((flags & SpeciesPriceIndex.FLAG_LEGENDARY) != 0) {
+            price *= legendaryMultiplier;
+        }
+        if ((flags & SpeciesPriceIndex.FLAG_MYTHICAL) != 0) {
+            price *= mythicalMultiplier;
+        }
+        if ((flags & SpeciesPriceIndex.FLAG_ULTRA_BEAST) != 0) {
+            price *= ultraBeastMultiplier;
+        }
+        if ((flags & SpeciesPriceIndex.FLAG_FINAL_STAGE) != 0) {
+            price *= finalStageMultiplier;
+        }
+
+        return Math.max(0, Math.round(price));
+    }
+
+    /**
+     * Quote the gem value of a party Pokemon
+     * @param pokemon Party Pokemon
+     * @return Price in gems
+     */
+    public long quote(PixelmonPartyBridge.PartyPokemon pokemon) {
+        return quote(pokemon.getDex(), pokemon.getLevel(), pokemon.getIvTotal());
+    }
+
+    /**
+     * Sell a party Pokemon for gems
+     * @param player Seller
+     * @param slot Party slot from 1 to 6
+     * @return Gems paid, or -1 if nothing was sold
+     */
+    public long sell(Player player, int slot) {
+        PixelmonPartyBridge bridge = getBridge();
+        if (bridge == null) {
+            return -1;
+        }
+
+        PixelmonPartyBridge.PartyPokemon pokemon = bridge.getPartyPokemon(player, slot);
+        if (pokemon == null) {
+            return -1;
+        }
+
+        long price = quote(pokemon);
+        if (price <= 0 || !bridge.removePartyPokemon(player, slot)) {
+            return -1;
+        }
+
+        plugin.addGems(player, price);
+        return price;
+    }
+
+    /**
+     * Stop the index refresh task
+     */
+    public void shutdown() {
+        if (refreshTask != null) {
+            refreshTask.cancel();
+            refreshTask = null;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.blissy.gemextension;
+
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+
+/**
+ * Marks an inventory as a gem shop page
+ */
+public class GemShopHolder implements InventoryHolder {
+
+    private final int page;
+    private final int generation;
+    private Inventory inventory;
+
+    /**
+     * Constructor
+     * @param page Shop page shown by the inventory
+     * @param generation Shop load the page was rendered from
+     */
+    public GemShopHolder(int page, int generation) {
+        this.page = page;
+        this.generation = generation;
+    }
+
+    /**
+     * Get the shop page shown by the inventory
+     * @return Page index
+     */
+    public int getPage() {
+        return page;
+    }
+
+    /**
+     * Get the shop load the page was rendered from
+     * @return Generation, which changes on every reload
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    void setInventory(Inventory inventory) {
+        this.inventory = inventory;
+    }
+
+    @Override
+    public Inventory getInventory() {
+        return inventory;
+    }
+}
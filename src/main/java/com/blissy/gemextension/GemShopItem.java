@@ -0,0 +1,116 @@
+package com.blissy.gemextension;
+
+import org.bukkit.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A configured gem shop entry
+ */
+public class GemShopItem {
+
+    /**
+     * Stock value meaning the item never runs out
+     */
+    public static final long UNLIMITED = -1;
+
+    private final String id;
+    private final int index;
+    private final Material material;
+    private final int amount;
+    private final String name;
+    private final List<String> lore;
+    private final long price;
+    private final long stock;
+    private final List<String> commands;
+
+    /**
+     * Constructor
+     * @param id Item id from config.yml
+     * @param index Position of the item in the shop
+     * @param section Config section describing the item
+     */
+    public GemShopItem(String id, int index, ConfigurationSection section) {
+        this.id = id;
+        this.index = index;
+
+        Material configured = Material.matchMaterial(section.getString("material", "EMERALD"));
+        this.material = configured != null ? configured : Material.EMERALD;
+        this.amount = Math.max(1, section.getInt("amount", 1));
+        this.name = ChatColor.translateAlternateColorCodes('&', section.getString("name", id));
+        this.price = Math.max(0, section.getLong("price", 0));
+        this.stock = section.getLong("stock", UNLIMITED);
+        this.commands = Collections.unmodifiableList(new ArrayList<>(section.getStringList("commands")));
+
+        List<String> configuredLore = new ArrayList<>();
+        for (String line : section.getStringList("lore")) {
+            configuredLore.add(ChatColor.translateAlternateColorCodes('&', line));
+        }
+        this.lore = Collections.unmodifiableList(configuredLore);
+    }
+
+    /**
+     * Render the item as it appears in the shop menu
+     * @param remaining Remaining global stock, or {@link #UNLIMITED}
+     * @return Display item
+     */
+    public ItemStack render(long remaining) {
+        ItemStack item = new ItemStack(material, amount);
+        ItemMeta meta = item.getItemMeta();
+        if (meta == null) {
+            return item;
+        }
+
+        List<String> displayLore = new ArrayList<>(lore);
+        displayLore.add("");
+        displayLore.add(ChatColor.GREEN + "Price: " + ChatColor.GOLD + price + ChatColor.GREEN + " gems");
+        if (remaining != UNLIMITED) {
+            displayLore.add(remaining > 0
+                    ? ChatColor.YELLOW + "Stock: " + ChatColor.GOLD + remaining
+                    : ChatColor.RED + "Sold out");
+        }
+
+        meta.setDisplayName(name);
+        meta.setLore(displayLore);
+        item.setItemMeta(meta);
+        return item;
+    }
+
+    /**
+     * Create the item handed to a buyer when there are no reward commands
+     * @return Reward item
+     */
+    public ItemStack createReward() {
+        return new ItemStack(material, amount);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getPrice() {
+        return price;
+    }
+
+    public long getStock() {
+        return stock;
+    }
+
+    public List<String> getCommands() {
+        return commands;
+    }
+}
@@ -0,0 +1,428 @@
+package com.blissy.gemextension;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryDragEvent;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Gem shop menus, stock and purchases
+ *
+ * Rendered pages are cached and only rebuilt after a purchase or restock changes
+ * the stock shown on them. Stock is kept in an {@link AtomicLongArray} and reserved
+ * with compare-and-set, so concurrent buyers can never take the last unit twice.
+ */
+public class GemShopManager implements Listener {
+
+    /**
+     * Result of a purchase attempt
+     */
+    public enum PurchaseResult {
+        SUCCESS,
+        SOLD_OUT,
+        NOT_ENOUGH_GEMS,
+        INVENTORY_FULL,
+        FAILED
+    }
+
+    private static final int PAGE_SIZE = 45;
+    private static final int INVENTORY_SIZE = 54;
+    private static final int PREVIOUS_SLOT = 45;
+    private static final int NEXT_SLOT = 53;
+
+    private final GemExtensionPlugin plugin;
+    private final File stockFile;
+    private volatile List<GemShopItem> items = Collections.emptyList();
+    private volatile AtomicLongArray stock = new AtomicLongArray(0);
+    private volatile AtomicReferenceArray<ItemStack[]> pages = new AtomicReferenceArray<>(0);
+    private volatile int generation;
+    private String title;
+
+    /**
+     * Constructor
+     * @param plugin GemExtensionPlugin instance
+     */
+    public GemShopManager(GemExtensionPlugin plugin) {
+        this.plugin = plugin;
+        this.stockFile = new File(plugin.getDataFolder(), "shopdata.yml");
+        loadConfig();
+
+        // Register events
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+    }
+
+    /**
+     * Load shop items from config.yml and remaining stock from shopdata.yml
+     *
+     * Items keep their remaining stock, limited or unlimited, unless their stock in
+     * config.yml was changed. On a reload that is the live stock, since sales made
+     * after the last save are not in shopdata.yml yet. Menus left open from before
+     * the reload stop selling.
+     */
+    public void loadConfig() {
+        FileConfiguration config = plugin.getConfig();
+        FileConfiguration stockConfig = YamlConfiguration.loadConfiguration(stockFile);
+        Map<String, Long> liveStock = new HashMap<>();
+        Map<String, Long> previousConfigured = new HashMap<>();
+        List<GemShopItem> previous = items;
+        AtomicLongArray previousStock = stock;
+        for (GemShopItem item : previous) {
+            liveStock.put(item.getId(), previousStock.get(item.getIndex()));
+            previousConfigured.put(item.getId(), item.getStock());
+        }
+
+        title = ChatColor.translateAlternateColorCodes('&', config.getString("shop.title", "&2Gem Shop"));
+
+        List<GemShopItem> loaded = new ArrayList<>();
+        ConfigurationSection section = config.getConfigurationSection("shop.items");
+        if (section != null) {
+            for (String id : section.getKeys(false)) {
+                ConfigurationSection itemSection = section.getConfigurationSection(id);
+                if (itemSection != null) {
+                    loaded.add(new GemShopItem(id, loaded.size(), itemSection));
+                }
+            }
+        }
+
+        // A changed starting stock applies at once, otherwise live stock wins over saved stock
+        AtomicLongArray loadedStock = new AtomicLongArray(loaded.size());
+        for (GemShopItem item : loaded) {
+            String id = item.getId();
+            long configured = item.getStock();
+            long wasConfigured = previousConfigured.containsKey(id) ? previousConfigured.get(id) :
+                    stockConfig.getLong("configured." + id, configured);
+
+            long remaining = configured;
+            if (wasConfigured == configured) {
+                Long live = liveStock.get(id);
+                remaining = live != null ? live : stockConfig.getLong("stock." + id, configured);
+            }
+            loadedStock.set(item.getIndex(), remaining);
+        }
+
+        stock = loadedStock;
+        items = Collections.unmodifiableList(loaded);
+        pages = new AtomicReferenceArray<>(Math.max(1, (loaded.size() + PAGE_SIZE - 1) / PAGE_SIZE));
+        generation++;
+    }
+
+    /**
+     * Save remaining stock to shopdata.yml, with the configured stock it started from
+     */
+    public void saveStock() {
+        FileConfiguration stockConfig = new YamlConfiguration();
+        List<GemShopItem> current = items;
+        AtomicLongArray currentStock = stock;
+
+        // Unlimited is saved too, so a restock to or from unlimited survives a restart
+        for (GemShopItem item : current) {
+            stockConfig.set("stock." + item.getId(), currentStock.get(item.getIndex()));
+            stockConfig.set("configured." + item.getId(), item.getStock());
+        }
+
+        try {
+            stockConfig.save(stockFile);
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to save shopdata.yml: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Open a shop page for a player
+     * @param player Player to show the shop to
+     * @param page Page index
+     */
+    public void open(Player player, int page) {
+        int clamped = Math.max(0, Math.min(page, pages.length() - 1));
+
+        GemShopHolder holder = new GemShopHolder(clamped, generation);
+        Inventory inventory = Bukkit.createInventory(holder, INVENTORY_SIZE, title);
+        holder.setInventory(inventory);
+        inventory.setContents(getPage(clamped));
+
+        player.openInventory(inventory);
+    }
+
+    /**
+     * Get a rendered page, rendering it only if it is not cached
+     * @param page Page index
+     * @return Page contents
+     */
+    private ItemStack[] getPage(int page) {
+        AtomicReferenceArray<ItemStack[]> currentPages = pages;
+        ItemStack[] contents = currentPages.get(page);
+        if (contents != null) {
+            return contents;
+        }
+
+        contents = new ItemStack[INVENTORY_SIZE];
+        List<GemShopItem> current = items;
+        AtomicLongArray currentStock = stock;
+
+        int start = page * PAGE_SIZE;
+        for (int i = start; i < Math.min(start + PAGE_SIZE, current.size()); i++) {
+            contents[i - start] = current.get(i).render(currentStock.get(i));
+        }
+
+        if (page > 0) {
+            contents[PREVIOUS_SLOT] = createNavItem(ChatColor.YELLOW + "Previous page");
+        }
+        if (page < currentPages.length() - 1) {
+            contents[NEXT_SLOT] = createNavItem(ChatColor.YELLOW + "Next page");
+        }
+
+        currentPages.set(page, contents);
+        return contents;
+    }
+
+    /**
+     * Drop the cached page holding an item
+     */
+    private void invalidate(GemShopItem item) {
+        pages.set(item.getIndex() / PAGE_SIZE, null);
+    }
+
+    /**
+     * Buy an item for a player
+     *
+     * Stock is reserved first, then the balance is debited, then the reward is
+     * granted. Any failure rolls the earlier steps back.
+     * @param player Buyer
+     * @param item Item to buy
+     * @return Purchase result
+     */
+    public PurchaseResult purchase(Player player, GemShopItem item) {
+        boolean givesItem = item.getCommands().isEmpty();
+        if (givesItem && player.getInventory().firstEmpty() == -1) {
+            return PurchaseResult.INVENTORY_FULL;
+        }
+
+        AtomicLongArray currentStock = stock;
+        if (!reserveStock(currentStock, item)) {
+            return PurchaseResult.SOLD_OUT;
+        }
+
+        if (!plugin.removeGems(player, item.getPrice())) {
+            releaseStock(currentStock, item);
+            return PurchaseResult.NOT_ENOUGH_GEMS;
+        }
+
+        try {
+            grantReward(player, item);
+        } catch (RuntimeException e) {
+            plugin.getLogger().severe("Failed to grant shop item " + item.getId() + " to " +
+                    player.getName() + ": " + e.getMessage());
+            plugin.addGems(player, item.getPrice());
+            releaseStock(currentStock, item);
+            return PurchaseResult.FAILED;
+        }
+
+        // Live stock, since a restock can make an unlimited item limited
+        if (currentStock.get(item.getIndex()) != GemShopItem.UNLIMITED) {
+            invalidate(item);
+        }
+        return PurchaseResult.SUCCESS;
+    }
+
+    /**
+     * Take one unit of stock if any is left
+     */
+    private boolean reserveStock(AtomicLongArray currentStock, GemShopItem item) {
+        int index = item.getIndex();
+        while (true) {
+            long remaining = currentStock.get(index);
+            if (remaining == GemShopItem.UNLIMITED) {
+                return true;
+            }
+            if (remaining <= 0) {
+                return false;
+            }
+            if (currentStock.compareAndSet(index, remaining, remaining - 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Return a reserved unit of stock
+     */
+    private void releaseStock(AtomicLongArray currentStock, GemShopItem item) {
+        if (currentStock.get(item.getIndex()) != GemShopItem.UNLIMITED) {
+            currentStock.incrementAndGet(item.getIndex());
+        }
+    }
+
+    /**
+     * Hand the bought item or run its reward commands
+     */
+    private void grantReward(Player player, GemShopItem item) {
+        if (item.getCommands().isEmpty()) {
+            Map<Integer, ItemStack> leftover = player.getInventory().addItem(item.createReward());
+            for (ItemStack stack : leftover.values()) {
+                player.getWorld().dropItemNaturally(player.getLocation(), stack);
+            }
+            return;
+        }
+
+        for (String command : item.getCommands()) {
+            Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command.replace("%player%", player.getName()));
+        }
+    }
+
+    /**
+     * Set the remaining stock of an item
+     * @param item Item to restock
+     * @param amount New stock, or {@link GemShopItem#UNLIMITED}
+     */
+    public void setStock(GemShopItem item, long amount) {
+        stock.set(item.getIndex(), amount);
+        invalidate(item);
+    }
+
+    /**
+     * Get the remaining stock of an item
+     * @param item Item to check
+     * @return Remaining stock, or {@link GemShopItem#UNLIMITED}
+     */
+    public long getStock(GemShopItem item) {
+        return stock.get(item.getIndex());
+    }
+
+    /**
+     * Find a shop item by id
+     * @param id Item id from config.yml
+     * @return Item, or null if there is no such item
+     */
+    public GemShopItem getItem(String id) {
+        for (GemShopItem item : items) {
+            if (item.getId().equalsIgnoreCase(id)) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get all shop items
+     * @return Shop items in menu order
+     */
+    public List<GemShopItem> getItems() {
+        return items;
+    }
+
+    /**
+     * Handle clicks in shop menus
+     */
+    @EventHandler
+    public void onInventoryClick(InventoryClickEvent event) {
+        if (!(event.getInventory().getHolder() instanceof GemShopHolder)) {
+            return;
+        }
+
+        event.setCancelled(true);
+
+        if (!(event.getWhoClicked() instanceof Player) || event.getRawSlot() >= INVENTORY_SIZE) {
+            return;
+        }
+
+        Player player = (Player) event.getWhoClicked();
+        GemShopHolder holder = (GemShopHolder) event.getInventory().getHolder();
+        int slot = event.getRawSlot();
+
+        // Slots of a menu opened before a reload may now hold different items
+        if (holder.getGeneration() != generation) {
+            player.sendMessage(plugin.getPrefix() + " " + ChatColor.YELLOW + "The shop was updated, here is the new menu.");
+            open(player, holder.getPage());
+            return;
+        }
+
+        if (slot == PREVIOUS_SLOT && holder.getPage() > 0) {
+            open(player, holder.getPage() - 1);
+            return;
+        }
+        if (slot == NEXT_SLOT && holder.getPage() < pages.length() - 1) {
+            open(player, holder.getPage() + 1);
+            return;
+        }
+        if (slot >= PAGE_SIZE) {
+            return;
+        }
+
+        int index = holder.getPage() * PAGE_SIZE + slot;
+        List<GemShopItem> current = items;
+        if (index >= current.size()) {
+            return;
+        }
+
+        GemShopItem item = current.get(index);
+        String prefix = plugin.getPrefix() + " ";
+
+        switch (purchase(player, item)) {
+            case SUCCESS:
+                player.sendMessage(prefix + ChatColor.GREEN + "You bought " + item.getName() + ChatColor.GREEN +
+                        " for " + ChatColor.GOLD + item.getPrice() + ChatColor.GREEN + " gems.");
+                event.getInventory().setContents(getPage(holder.getPage()));
+                break;
+
+            case SOLD_OUT:
+                player.sendMessage(prefix + ChatColor.RED + "That item is sold out.");
+                break;
+
+            case NOT_ENOUGH_GEMS:
+                player.sendMessage(prefix + ChatColor.RED + "You need " + item.getPrice() +
+                        " gems but only have " + plugin.getGems(player) + ".");
+                break;
+
+            case INVENTORY_FULL:
+                player.sendMessage(prefix + ChatColor.RED + "Your inventory is full.");
+                break;
+
+            default:
+                player.sendMessage(prefix + ChatColor.RED + "Something went wrong, your gems were refunded.");
+                break;
+        }
+    }
+
+    /**
+     * Stop items being dragged into shop menus
+     */
+    @EventHandler
+    public void onInventoryDrag(InventoryDragEvent event) {
+        if (event.getInventory().getHolder() instanceof GemShopHolder) {
+            event.setCancelled(true);
+        }
+    }
+
+    /**
+     * Create a page navigation button
+     */
+    private ItemStack createNavItem(String name) {
+        ItemStack item = new ItemStack(Material.ARROW);
+        ItemMeta meta = item.getItemMeta();
+        if (meta != null) {
+            meta.setDisplayName(name);
+            item.setItemMeta(meta);
+        }
+        return item;
+    }
+}
@@ -0,0 +1,523 @@
+package com.blissy.gemextension;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Monte Carlo projection of how the gem supply grows under the current rules
+ *
+ * Simulated players log in, roam the configured biomes at random hours and meet
+ * Pokemon drawn from the spawn sets by rarity, earning capture, defeat and bounty
+ * rewards as configured. Login rewards, market fees and sweeps are applied on top.
+ * Shop purchases and /gem sell income are left out, as they depend on what players
+ * choose to buy and sell, and the report says so. Each
+ * encounter table is worked out once per biome and hour before the run, so the
+ * simulation itself never touches the spawn index. Players are split across a
+ * fork-join pool, and each split hands its half a {@link SplittableRandom} of its
+ * own, so a run with the same seed always gives the same result.
+ */
+public class GemSimulationManager {
+
+    private static final int LEAF_PLAYERS = 64;
+    private static final int HOURS = 24;
+    // Simulated players roam the surface in daylight and clear weather
+    private static final int SURFACE_Y = 64;
+    private static final int SURFACE_LIGHT = 15;
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final GemExtensionPlugin plugin;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private ForkJoinPool pool;
+
+    private int players;
+    private int days;
+    private double hoursPerDay;
+    private double encountersPerHour;
+    private double captureChance;
+    private double loginChance;
+    private double marketTradePercent;
+    private List<String> biomes;
+    private List<String> locationTypes;
+    private long seed;
+
+    /**
+     * Constructor
+     * @param plugin GemExtensionPlugin instance
+     */
+    public GemSimulationManager(GemExtensionPlugin plugin) {
+        this.plugin = plugin;
+        loadConfig();
+    }
+
+    /**
+     * Load simulation settings from config.yml
+     */
+    public void loadConfig() {
+        FileConfiguration config = plugin.getConfig();
+
+        players = Math.max(1, config.getInt("simulation.players", 10000));
+        days = Math.max(1, config.getInt("simulation.days", 30));
+        hoursPerDay = Math.max(0, config.getDouble("simulation.hours-per-day", 2.0));
+        encountersPerHour = Math.max(0, config.getDouble("simulation.encounters-per-hour", 60.0));
+        captureChance = Math.max(0, Math.min(1, config.getDouble("simulation.capture-chance", 0.3)));
+        loginChance = Math.max(0, Math.min(1, config.getDouble("simulation.login-chance", 0.7)));
+        marketTradePercent = Math.max(0, config.getDouble("simulation.market-trade-percent", 5.0));
+        biomes = config.getStringList("simulation.biomes");
+        locationTypes = config.getStringList("simulation.location-types");
+        seed = config.getLong("simulation.seed", 0);
+
+        int threads = config.getInt("simulation.threads", 0);
+        int parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        if (pool == null || pool.getParallelism() != parallelism) {
+            if (pool != null) {
+                pool.shutdown();
+            }
+            pool = new ForkJoinPool(parallelism);
+        }
+    }
+
+    /**
+     * Run a simulation off the main thread
+     * @param playerCount Players to simulate, 0 for the configured number
+     * @param dayCount Days to simulate, 0 for the configured number
+     * @param done Called on the main thread with the report lines
+     * @return False if a simulation is already running
+     */
+    public boolean simulate(int playerCount, int dayCount, Consumer<List<String>> done) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+
+        // Rules are read on the main thread so a reload mid-run cannot mix them
+        Scenario scenario;
+        try {
+            scenario = new Scenario(playerCount > 0 ? playerCount : players, dayCount > 0 ? dayCount : days);
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            List<String> report;
+            try {
+                long start = System.nanoTime();
+                long[] balances = new long[scenario.players];
+                SplittableRandom random = seed != 0 ? new SplittableRandom(seed) : new SplittableRandom();
+                Totals totals = pool.invoke(new PlayerTask(scenario, balances, 0, balances.length, random));
+                report = report(scenario, balances, totals, System.nanoTime() - start);
+            } finally {
+                running.set(false);
+            }
+
+            List<String> lines = report;
+            Bukkit.getScheduler().runTask(plugin, () -> done.accept(lines));
+        });
+        return true;
+    }
+
+    /**
+     * Check whether a simulation is running
+     * @return True while a simulation is in progress
+     */
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Play out every day for one player
+     * @return Final balance
+     */
+    private static long simulatePlayer(Scenario scenario, SplittableRandom random, Totals totals) {
+        long balance = scenario.startBalance;
+        int streak = 0;
+        long idle = 0;
+        long sinceSweep = 0;
+
+        for (int day = 0; day < scenario.days; day++) {
+            if (random.nextDouble() < scenario.loginChance) {
+                streak++;
+                idle = 0;
+
+                long login = scenario.loginRewards[Math.min(streak, scenario.loginRewards.length - 1)];
+                balance += login;
+                totals.minted += login;
+
+                long earned = playDay(scenario, random, totals);
+                balance += earned;
+                totals.minted += earned;
+                totals.playerHours += scenario.hoursPerDay;
+
+                // Trades move gems between players, only the fee leaves the economy
+                long fee = (long) (balance * scenario.marketTradePercent / 100.0 * scenario.marketFeePercent / 100.0);
+                balance -= fee;
+                totals.burned += fee;
+            } else {
+                streak = 0;
+                idle += DAY_MILLIS;
+            }
+
+            if (scenario.sweepManager != null) {
+                sinceSweep += DAY_MILLIS;
+                while (sinceSweep >= scenario.sweepInterval) {
+                    sinceSweep -= scenario.sweepInterval;
+                    long delta = scenario.sweepManager.computeDelta(balance, idle);
+                    balance += delta;
+                    if (delta > 0) {
+                        totals.minted += delta;
+                    } else {
+                        totals.burned -= delta;
+                    }
+                }
+            }
+        }
+
+        return balance;
+    }
+
+    /**
+     * Play one day of encounters, an hour at a time
+     * @return Gems earned
+     */
+    private static long playDay(Scenario scenario, SplittableRandom random, Totals totals) {
+        double expected = scenario.hoursPerDay * scenario.encountersPerHour;
+        long encounters = (long) expected;
+        if (random.nextDouble() < expected - encounters) {
+            encounters++;
+        }
+
+        long earned = 0;
+        long played = 0;
+        int[] board = new int[scenario.bountiesPerBoard];
+        while (encounters > 0) {
+            // Each hour is spent in one biome at one time of day
+            EncounterTable table = scenario.tables[random.nextInt(scenario.tables.length)][random.nextInt(HOURS)];
+            long hour = Math.min(encounters, Math.max(1, Math.round(scenario.encountersPerHour)));
+            encounters -= hour;
+            if (table.total <= 0) {
+                continue;
+            }
+
+            for (long i = 0; i < hour; i++) {
+                // Boards rotate on a timer and are posted from what spawns where the player is
+                if (played++ % scenario.bountyEncounters == 0) {
+                    postBoard(scenario, table, board, random);
+                }
+
+                int entry = table.draw(random);
+                if (random.nextDouble() < scenario.captureChance) {
+                    long bounty = claimBounty(scenario, board, entry);
+                    earned += scenario.captureRewards[entry] + bounty;
+                    totals.bounties += bounty;
+                } else {
+                    earned += scenario.defeatRewards[entry];
+                }
+            }
+        }
+        return earned;
+    }
+
+    /**
+     * Fill a board with distinct species picked evenly from an encounter table, like the bounty manager does
+     */
+    private static void postBoard(Scenario scenario, EncounterTable table, int[] board, SplittableRandom random) {
+        Arrays.fill(board, -1);
+        int posted = 0;
+        for (int attempt = 0; posted < board.length && attempt < board.length * 4; attempt++) {
+            int entry = table.entries[random.nextInt(table.entries.length)];
+
+            boolean duplicate = false;
+            for (int i = 0; i < posted; i++) {
+                duplicate |= scenario.speciesIds[board[i]] == scenario.speciesIds[entry];
+            }
+            if (!duplicate) {
+                board[posted++] = entry;
+            }
+        }
+    }
+
+    /**
+     * Pay and clear the bounty on a captured species, if the board has one
+     * @return Gems paid, 0 if there was no open bounty
+     */
+    private static long claimBounty(Scenario scenario, int[] board, int entry) {
+        for (int i = 0; i < board.length; i++) {
+            if (board[i] >= 0 && scenario.speciesIds[board[i]] == scenario.speciesIds[entry]) {
+                long reward = scenario.bountyRewards[board[i]];
+                board[i] = -1;
+                return reward;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Turn final balances into report lines
+     */
+    private List<String> report(Scenario scenario, long[] balances, Totals totals, long nanos) {
+        Arrays.parallelSort(balances);
+
+        long sum = 0;
+        for (long balance : balances) {
+            sum += balance;
+        }
+        long start = scenario.startBalance * balances.length;
+        double net = (double) (sum - start) / balances.length / scenario.days;
+
+        List<String> lines = new ArrayList<>();
+        lines.add(ChatColor.GREEN + "Simulated " + formatNumber(balances.length) + " players over " +
+                scenario.days + " days (" + formatNumber(Math.round(totals.playerHours)) + " player-hours) in " +
+                TimeUnit.NANOSECONDS.toMillis(nanos) + "ms.");
+        lines.add(ChatColor.YELLOW + "Balances: mean " + ChatColor.GOLD + formatNumber(sum / balances.length) +
+                ChatColor.YELLOW + ", p10 " + ChatColor.GOLD + formatNumber(percentile(balances, 0.10)) +
+                ChatColor.YELLOW + ", median " + ChatColor.GOLD + formatNumber(percentile(balances, 0.50)) +
+                ChatColor.YELLOW + ", p90 " + ChatColor.GOLD + formatNumber(percentile(balances, 0.90)) +
+                ChatColor.YELLOW + ", p99 " + ChatColor.GOLD + formatNumber(percentile(balances, 0.99)) +
+                ChatColor.YELLOW + ", max " + ChatColor.GOLD + formatNumber(balances[balances.length - 1]));
+        lines.add(ChatColor.YELLOW + "Gems created " + ChatColor.GOLD + formatNumber(totals.minted) +
+                ChatColor.YELLOW + ", removed " + ChatColor.GOLD + formatNumber(totals.burned) +
+                ChatColor.YELLOW + ", supply grows " + ChatColor.GOLD + String.format(Locale.US, "%.1f", net) +
+                ChatColor.YELLOW + " gems per player per day.");
+        if (totals.playerHours > 0) {
+            lines.add(ChatColor.YELLOW + "Players earn " + ChatColor.GOLD +
+                    String.format(Locale.US, "%.1f", totals.minted / totals.playerHours) +
+                    ChatColor.YELLOW + " gems per hour played.");
+        }
+        lines.add(ChatColor.YELLOW + "Capture bounties paid " + ChatColor.GOLD + formatNumber(totals.bounties) +
+                ChatColor.YELLOW + " of the gems created.");
+        if (!scenario.unmappedBiomes.isEmpty()) {
+            lines.add(ChatColor.RED + "No biome categories are mapped for " + String.join(", ", scenario.unmappedBiomes) +
+                    ", only spawns that list the biome id itself appear there.");
+        }
+        lines.add(ChatColor.GRAY + "Not simulated: shop purchases and /gem sell income, which depend on what players " +
+                "choose to buy and sell.");
+        return lines;
+    }
+
+    /**
+     * Read a percentile from sorted values
+     */
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) (fraction * sorted.length))];
+    }
+
+    /**
+     * Stop the worker pool
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Format a number with commas
+     */
+    private String formatNumber(long number) {
+        return NumberFormat.getNumberInstance(Locale.US).format(number);
+    }
+
+    /**
+     * Rules and encounter tables for one run, read once on the main thread
+     */
+    private final class Scenario {
+        private final int players;
+        private final int days;
+        private final double hoursPerDay = GemSimulationManager.this.hoursPerDay;
+        private final double encountersPerHour = GemSimulationManager.this.encountersPerHour;
+        private final double captureChance = GemSimulationManager.this.captureChance;
+        private final double loginChance = GemSimulationManager.this.loginChance;
+        private final double marketTradePercent = GemSimulationManager.this.marketTradePercent;
+        private final long startBalance = plugin.getDefaultBalance();
+        private final double marketFeePercent;
+        private final long[] loginRewards;
+        private final GemSweepManager sweepManager;
+        private final long sweepInterval;
+        private final long[] captureRewards;
+        private final long[] defeatRewards;
+        private final int bountiesPerBoard;
+        private final long bountyEncounters;
+        private final int[] speciesIds;
+        private final long[] bountyRewards;
+        private final List<String> unmappedBiomes = new ArrayList<>();
+        private final EncounterTable[][] tables;
+
+        private Scenario(int players, int days) {
+            this.players = players;
+            this.days = days;
+
+            GemMarketManager marketManager = plugin.getMarketManager();
+            marketFeePercent = marketManager.isEnabled() ? marketManager.getFeePercent() : 0;
+
+            // Streaks can never pass the number of days simulated
+            GemLoginManager loginManager = plugin.getLoginManager();
+            loginRewards = new long[days + 1];
+            if (loginManager.isEnabled()) {
+                for (int streak = 1; streak <= days; streak++) {
+                    loginRewards[streak] = loginManager.getReward(streak);
+                }
+            }
+
+            GemSweepManager sweeps = plugin.getSweepManager();
+            sweepManager = sweeps.isEnabled() ? sweeps : null;
+            sweepInterval = sweeps.getInterval();
+
+            SpawnConditionIndex index = plugin.getBountyManager().getConditionIndex();
+            if (index.size() == 0) {
+                throw new IllegalStateException("No spawn sets are loaded");
+            }
+
+            GemRewardManager rewardManager = plugin.getRewardManager();
+            GemBountyManager bountyManager = plugin.getBountyManager();
+            captureRewards = new long[index.size()];
+            defeatRewards = new long[index.size()];
+            speciesIds = new int[index.size()];
+            bountyRewards = new long[index.size()];
+            Map<String, Integer> ids = new HashMap<>();
+            for (int entry = 0; entry < index.size(); entry++) {
+                String species = index.getSpecies(entry);
+                captureRewards[entry] = rewardManager.getReward(species, GemRewardManager.RewardType.CAPTURE);
+                defeatRewards[entry] = rewardManager.getReward(species, GemRewardManager.RewardType.DEFEAT);
+                speciesIds[entry] = ids.computeIfAbsent(species.toLowerCase(Locale.ROOT), key -> ids.size());
+                bountyRewards[entry] = bountyManager.getReward(species);
+            }
+
+            // A board lasts this many encounters of play before it rotates
+            bountiesPerBoard = bountyManager.isEnabled() ? bountyManager.getBountiesPerBoard() : 0;
+            bountyEncounters = Math.max(1, Math.round(encountersPerHour * bountyManager.getRotationMinutes() / 60.0));
+
+            if (biomes.isEmpty()) {
+                throw new IllegalStateException("No biomes are listed in simulation.biomes");
+            }
+
+            tables = new EncounterTable[biomes.size()][HOURS];
+            for (int b = 0; b < biomes.size(); b++) {
+                String biome = biomes.get(b);
+                List<String> names = new ArrayList<>();
+                names.add(biome);
+                names.addAll(bountyManager.getBiomeCategories(biome));
+                if (names.size() == 1) {
+                    unmappedBiomes.add(biome);
+                }
+
+                for (int hour = 0; hour < HOURS; hour++) {
+                    tables[b][hour] = new EncounterTable(index, index.query(hour * 1000L + 500L,
+                            SpawnConditionIndex.SpawnWeather.CLEAR, SURFACE_Y, SURFACE_LIGHT, names, locationTypes));
+                }
+            }
+        }
+    }
+
+    /**
+     * Spawn entries that can appear in one biome at one hour, weighted by rarity
+     */
+    private static final class EncounterTable {
+        private final int[] entries;
+        private final double[] cumulative;
+        private final double total;
+
+        private EncounterTable(SpawnConditionIndex index, long[] spawnable) {
+            int count = 0;
+            for (long word : spawnable) {
+                count += Long.bitCount(word);
+            }
+
+            int[] found = new int[count];
+            double[] weights = new double[count];
+            int size = 0;
+            double sum = 0;
+            for (int word = 0; word < spawnable.length; word++) {
+                for (long bits = spawnable[word]; bits != 0; bits &= bits - 1) {
+                    int entry = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    float rarity = index.getRarity(entry);
+                    if (rarity > 0) {
+                        sum += rarity;
+                        found[size] = entry;
+                        weights[size++] = sum;
+                    }
+                }
+            }
+
+            this.entries = Arrays.copyOf(found, size);
+            this.cumulative = Arrays.copyOf(weights, size);
+            this.total = sum;
+        }
+
+        /**
+         * Pick an entry with chance in proportion to its rarity
+         */
+        private int draw(SplittableRandom random) {
+            int slot = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+            if (slot < 0) {
+                slot = -slot - 1;
+            }
+            return entries[Math.min(slot, entries.length - 1)];
+        }
+    }
+
+    /**
+     * Fork-join task simulating a range of players
+     */
+    private static final class PlayerTask extends RecursiveTask<Totals> {
+        private final Scenario scenario;
+        private final long[] balances;
+        private final int from;
+        private final int to;
+        private final SplittableRandom random;
+
+        private PlayerTask(Scenario scenario, long[] balances, int from, int to, SplittableRandom random) {
+            this.scenario = scenario;
+            this.balances = balances;
+            this.from = from;
+            this.to = to;
+            this.random = random;
+        }
+
+        @Override
+        protected Totals compute() {
+            if (to - from > LEAF_PLAYERS) {
+                int middle = (from + to) >>> 1;
+                PlayerTask right = new PlayerTask(scenario, balances, middle, to, random.split());
+                right.fork();
+                Totals totals = new PlayerTask(scenario, balances, from, middle, random).compute();
+                totals.add(right.join());
+                return totals;
+            }
+
+            Totals totals = new Totals();
+            for (int i = from; i < to; i++) {
+                balances[i] = simulatePlayer(scenario, random, totals);
+            }
+            return totals;
+        }
+    }
+
+    /**
+     * Gems created and removed over part of a run
+     */
+    private static final class Totals {
+        private long minted;
+        private long burned;
+        private long bounties;
+        private double playerHours;
+
+        private void add(Totals other) {
+            minted += other.minted;
+            burned += other.burned;
+            bounties += other.bounties;
+            playerHours += other.playerHours;
+        }
+    }
+}
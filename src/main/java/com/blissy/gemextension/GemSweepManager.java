@@ -0,0 +1,508 @@
+package com.blissy.gemextension;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodic whole-ledger sweeps for wealth tax, interest and decay
+ *
+ * A sweep splits the ledger into chunks by UUID hash, works out each player's
+ * change on a fork-join pool, then applies finished chunks on the main thread
+ * within a per-tick time budget. Applied chunks are checkpointed into gemdata.yml
+ * in the same save as the balances, so a restart resumes the sweep and skips
+ * exactly the chunks that already made it to disk. Interest and decay use last-seen
+ * times recorded from joins and quits, so a sweep never asks the server about
+ * offline players. A player with no recorded time starts their idle clock at the
+ * first sweep that sees them.
+ */
+public class GemSweepManager implements Listener {
+
+    /**
+     * Last-seen time of players who are online now
+     */
+    private static final long ONLINE = Long.MAX_VALUE;
+
+    private final GemExtensionPlugin plugin;
+    private final Object applyLock = new Object();
+    private final Queue<ChunkResult> results = new ConcurrentLinkedQueue<>();
+    private final Map<UUID, Long> lastSeen = new ConcurrentHashMap<>();
+    private ForkJoinPool pool;
+    private BukkitTask applyTask;
+    private BukkitTask scheduleTask;
+
+    // Current sweep, guarded by applyLock
+    private long sweepId;
+    private int chunkCount;
+    private BitSet applied = new BitSet();
+    private int pendingChunks;
+    private long lastCompleted;
+
+    private boolean enabled;
+    private long interval;
+    private int chunkSize;
+    private long tickBudgetNanos;
+    private int parallelism;
+    private long taxThreshold;
+    private double taxRate;
+    private double interestRate;
+    private long interestCap;
+    private long activeMillis;
+    private double decayRate;
+    private long decayFloor;
+    private long inactiveMillis;
+
+    /**
+     * Constructor
+     * @param plugin GemExtensionPlugin instance
+     * @param dataConfig Loaded gemdata.yml holding the last checkpoint
+     */
+    public GemSweepManager(GemExtensionPlugin plugin, FileConfiguration dataConfig) {
+        this.plugin = plugin;
+        loadConfig();
+        loadLastSeen(dataConfig);
+        loadCheckpoint(dataConfig);
+
+        // Check once a minute whether a sweep is due
+        scheduleTask = Bukkit.getScheduler().runTaskTimer(plugin, this::startIfDue, 200L, 1200L);
+
+        // Register events
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+    }
+
+    /**
+     * Load sweep settings from config.yml
+     */
+    public void loadConfig() {
+        FileConfiguration config = plugin.getConfig();
+
+        enabled = config.getBoolean("sweep.enabled", false);
+        interval = TimeUnit.HOURS.toMillis(Math.max(1, config.getLong("sweep.interval-hours", 24)));
+        chunkSize = Math.max(64, config.getInt("sweep.chunk-size", 1024));
+        tickBudgetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, config.getLong("sweep.tick-budget-ms", 5)));
+        parallelism = Math.max(1, config.getInt("sweep.threads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2)));
+
+        taxThreshold = config.getLong("sweep.wealth-tax.threshold", 100000);
+        taxRate = config.getDouble("sweep.wealth-tax.rate", 0.0);
+        interestRate = config.getDouble("sweep.interest.rate", 0.0);
+        interestCap = config.getLong("sweep.interest.max-per-sweep", 1000);
+        activeMillis = TimeUnit.DAYS.toMillis(config.getLong("sweep.interest.active-days", 7));
+        decayRate = config.getDouble("sweep.decay.rate", 0.0);
+        decayFloor = config.getLong("sweep.decay.floor", 0);
+        inactiveMillis = TimeUnit.DAYS.toMillis(config.getLong("sweep.decay.inactive-days", 30));
+
+        if (pool == null || pool.getParallelism() != parallelism) {
+            if (pool != null) {
+                pool.shutdown();
+            }
+            pool = new ForkJoinPool(parallelism);
+        }
+    }
+
+    /**
+     * Load last-seen times from gemdata.yml, and mark players already online
+     */
+    private void loadLastSeen(FileConfiguration dataConfig) {
+        ConfigurationSection section = dataConfig.getConfigurationSection("last-seen");
+        if (section != null) {
+            for (String uuidStr : section.getKeys(false)) {
+                try {
+                    lastSeen.put(UUID.fromString(uuidStr), section.getLong(uuidStr));
+                } catch (IllegalArgumentException e) {
+                    plugin.getLogger().warning("Invalid UUID in gemdata.yml: " + uuidStr);
+                }
+            }
+        }
+
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            lastSeen.put(player.getUniqueId(), ONLINE);
+        }
+    }
+
+    /**
+     * Write last-seen times into gemdata.yml, players online now as seen now
+     * @param dataConfig gemdata.yml being saved
+     */
+    public void writeLastSeen(FileConfiguration dataConfig) {
+        long now = System.currentTimeMillis();
+        dataConfig.set("last-seen", null);
+        for (Map.Entry<UUID, Long> entry : lastSeen.entrySet()) {
+            long seen = entry.getValue();
+            dataConfig.set("last-seen." + entry.getKey(), seen == ONLINE ? now : seen);
+        }
+    }
+
+    /**
+     * Mark joining players as online
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        lastSeen.put(event.getPlayer().getUniqueId(), ONLINE);
+    }
+
+    /**
+     * Record when players leave
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        lastSeen.put(event.getPlayer().getUniqueId(), System.currentTimeMillis());
+    }
+
+    /**
+     * Load the last finished sweep and any sweep in progress from gemdata.yml
+     */
+    private void loadCheckpoint(FileConfiguration dataConfig) {
+        synchronized (applyLock) {
+            lastCompleted = dataConfig.getLong("sweep.last-completed", 0);
+
+            if (dataConfig.contains("sweep.active")) {
+                sweepId = dataConfig.getLong("sweep.active.id");
+                chunkCount = dataConfig.getInt("sweep.active.chunks");
+                applied = new BitSet(chunkCount);
+                for (String chunk : dataConfig.getStringList("sweep.active.applied")) {
+                    try {
+                        applied.set(Integer.parseInt(chunk));
+                    } catch (NumberFormatException e) {
+                        plugin.getLogger().warning("Invalid sweep chunk in gemdata.yml: " + chunk);
+                    }
+                }
+            }
+        }
+
+        if (sweepId != 0 && chunkCount > 0) {
+            plugin.getLogger().info("Resuming ledger sweep with " +
+                    (chunkCount - applied.cardinality()) + " of " + chunkCount + " chunks left.");
+            compute();
+        }
+    }
+
+    /**
+     * Write the sweep checkpoint into gemdata.yml
+     *
+     * Must be called while holding {@link #getApplyLock()} and copying the
+     * balances, so the checkpoint on disk always matches the balances on disk.
+     * @param dataConfig gemdata.yml being saved
+     */
+    public void writeCheckpoint(FileConfiguration dataConfig) {
+        synchronized (applyLock) {
+            dataConfig.set("sweep", null);
+            dataConfig.set("sweep.last-completed", lastCompleted);
+
+            if (sweepId != 0) {
+                dataConfig.set("sweep.active.id", sweepId);
+                dataConfig.set("sweep.active.chunks", chunkCount);
+
+                List<String> appliedChunks = new ArrayList<>();
+                for (int chunk = applied.nextSetBit(0); chunk >= 0; chunk = applied.nextSetBit(chunk + 1)) {
+                    appliedChunks.add(String.valueOf(chunk));
+                }
+                dataConfig.set("sweep.active.applied", appliedChunks);
+            }
+        }
+    }
+
+    /**
+     * Get the lock held while sweep chunks are applied
+     *
+     * The ledger save holds it while copying balances so a chunk is never half
+     * written to disk.
+     * @return Apply lock
+     */
+    public Object getApplyLock() {
+        return applyLock;
+    }
+
+    /**
+     * Start a sweep if one is due and none is running
+     */
+    private void startIfDue() {
+        if (enabled && !isRunning() && System.currentTimeMillis() - lastCompleted >= interval) {
+            start();
+        }
+    }
+
+    /**
+     * Start a new sweep
+     * @return True if a sweep was started, false if one is already running
+     */
+    public boolean start() {
+        synchronized (applyLock) {
+            if (sweepId != 0) {
+                return false;
+            }
+
+            sweepId = System.currentTimeMillis();
+            chunkCount = Math.max(1, (plugin.getGemHolders().size() + chunkSize - 1) / chunkSize);
+            applied = new BitSet(chunkCount);
+        }
+
+        plugin.getLogger().info("Starting ledger sweep over " + chunkCount + " chunks.");
+        compute();
+        return true;
+    }
+
+    /**
+     * Check whether a sweep is in progress
+     * @return True if a sweep is running
+     */
+    public boolean isRunning() {
+        synchronized (applyLock) {
+            return sweepId != 0;
+        }
+    }
+
+    /**
+     * Get a short description of the sweep state
+     * @return Status text
+     */
+    public String getStatus() {
+        synchronized (applyLock) {
+            if (sweepId == 0) {
+                return lastCompleted == 0 ? "No sweep has run yet." :
+                        "Last sweep finished " + TimeUnit.MILLISECONDS.toMinutes(
+                                System.currentTimeMillis() - lastCompleted) + " minutes ago.";
+            }
+            return "Sweep running, " + applied.cardinality() + " of " + chunkCount + " chunks applied.";
+        }
+    }
+
+    /**
+     * Compute every chunk not yet applied and start applying results
+     */
+    private void compute() {
+        long id;
+        int chunks;
+        BitSet done;
+        synchronized (applyLock) {
+            id = sweepId;
+            chunks = chunkCount;
+            done = (BitSet) applied.clone();
+            pendingChunks = chunks - done.cardinality();
+
+            if (pendingChunks <= 0) {
+                finish();
+                return;
+            }
+        }
+
+        results.clear();
+        long now = System.currentTimeMillis();
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            // Group the ledger into chunks by UUID hash so membership survives restarts
+            List<List<UUID>> buckets = new ArrayList<>(chunks);
+            for (int i = 0; i < chunks; i++) {
+                buckets.add(new ArrayList<>());
+            }
+            for (UUID uuid : plugin.getGemHolders()) {
+                int chunk = Math.floorMod(uuid.hashCode(), chunks);
+                if (!done.get(chunk)) {
+                    buckets.get(chunk).add(uuid);
+                }
+            }
+
+            pool.invoke(new ChunkTask(id, buckets, done, 0, chunks, now));
+        });
+
+        if (applyTask == null) {
+            applyTask = Bukkit.getScheduler().runTaskTimer(plugin, this::applyResults, 1L, 1L);
+        }
+    }
+
+    /**
+     * Apply computed chunks until this tick's budget is used up
+     */
+    private void applyResults() {
+        long deadline = System.nanoTime() + tickBudgetNanos;
+
+        ChunkResult result;
+        while (System.nanoTime() < deadline && (result = results.poll()) != null) {
+            synchronized (applyLock) {
+                if (result.sweepId != sweepId || applied.get(result.chunk)) {
+                    continue;
+                }
+
+                for (int i = 0; i < result.players.length; i++) {
+                    if (result.deltas[i] != 0) {
+                        plugin.addGems(result.players[i], result.deltas[i]);
+                    }
+                }
+
+                applied.set(result.chunk);
+                pendingChunks--;
+
+                if (pendingChunks <= 0) {
+                    finish();
+                }
+            }
+        }
+    }
+
+    /**
+     * Mark the current sweep as done, called while holding the apply lock
+     */
+    private void finish() {
+        plugin.getLogger().info("Ledger sweep finished in " +
+                TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - sweepId) + "s.");
+
+        lastCompleted = System.currentTimeMillis();
+        sweepId = 0;
+        chunkCount = 0;
+        applied = new BitSet();
+
+        if (applyTask != null) {
+            applyTask.cancel();
+            applyTask = null;
+        }
+    }
+
+    /**
+     * Work out a single player's balance change
+     * @param uuid Player UUID
+     * @param balance Current balance
+     * @param now Sweep time in milliseconds
+     * @return Gems to add, negative to take
+     */
+    long computeDelta(UUID uuid, long balance, long now) {
+        // Only interest and decay care how long the player has been away
+        long idle = 0;
+        if (interestRate > 0 || decayRate > 0) {
+            long seen = lastSeen.computeIfAbsent(uuid, key -> now);
+            idle = seen == ONLINE ? 0 : Math.max(0, now - seen);
+        }
+
+        return computeDelta(balance, idle);
+    }
+
+    /**
+     * Work out the balance change for a balance and time away
+     * @param balance Current balance
+     * @param idle Milliseconds since the player was last online, 0 if online
+     * @return Gems to add, negative to take
+     */
+    long computeDelta(long balance, long idle) {
+        long delta = 0;
+
+        if (taxRate > 0 && balance > taxThreshold) {
+            delta -= (long) Math.floor((balance - taxThreshold) * taxRate);
+        }
+
+        if (interestRate > 0 && idle <= activeMillis) {
+            delta += Math.min(interestCap, (long) Math.floor(balance * interestRate));
+        }
+
+        if (decayRate > 0 && idle >= inactiveMillis && balance > decayFloor) {
+            delta -= Math.min(balance - decayFloor, (long) Math.ceil(balance * decayRate));
+        }
+
+        return delta;
+    }
+
+    /**
+     * Check whether scheduled sweeps are turned on
+     * @return True if sweeps run
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get the time between sweeps
+     * @return Interval in milliseconds
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Stop the sweep tasks and worker pool
+     */
+    public void shutdown() {
+        if (scheduleTask != null) {
+            scheduleTask.cancel();
+        }
+        if (applyTask != null) {
+            applyTask.cancel();
+        }
+        pool.shutdownNow();
+    }
+
+    /**
+     * Fork-join task computing a range of chunks
+     */
+    private class ChunkTask extends RecursiveAction {
+        private final long id;
+        private final List<List<UUID>> buckets;
+        private final BitSet done;
+        private final int from;
+        private final int to;
+        private final long now;
+
+        ChunkTask(long id, List<List<UUID>> buckets, BitSet done, int from, int to, long now) {
+            this.id = id;
+            this.buckets = buckets;
+            this.done = done;
+            this.from = from;
+            this.to = to;
+            this.now = now;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ChunkTask(id, buckets, done, from, middle, now),
+                        new ChunkTask(id, buckets, done, middle, to, now));
+                return;
+            }
+
+            if (done.get(from)) {
+                return;
+            }
+
+            List<UUID> bucket = buckets.get(from);
+            UUID[] players = bucket.toArray(new UUID[0]);
+            long[] deltas = new long[players.length];
+            for (int i = 0; i < players.length; i++) {
+                deltas[i] = computeDelta(players[i], plugin.getGems(players[i]), now);
+            }
+
+            results.add(new ChunkResult(id, from, players, deltas));
+        }
+    }
+
+    /**
+     * Balance changes computed for one chunk
+     */
+    private static final class ChunkResult {
+        private final long sweepId;
+        private final int chunk;
+        private final UUID[] players;
+        private final long[] deltas;
+
+        private ChunkResult(long sweepId, int chunk, UUID[] players, long[] deltas) {
+            this.sweepId = sweepId;
+            this.chunk = chunk;
+            this.players = players;
+            this.deltas = deltas;
+        }
+    }
+}
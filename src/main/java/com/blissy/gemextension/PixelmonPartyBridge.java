@@ -0,0 +1,61 @@
+package com.blissy.gemextension;
+
+import org.bukkit.entity.Player;
+
+/**
+ * Access to Pixelmon parties, registered as a Bukkit service by the Pixelmon side
+ *
+ * GemExtension does not compile against Pixelmon, so selling Pokemon goes through
+ * whichever plugin or mod registers an implementation of this interface.
+ */
+public interface PixelmonPartyBridge {
+
+    /**
+     * Get a Pokemon from a player's party
+     * @param player Party owner
+     * @param slot Party slot from 1 to 6
+     * @return Pokemon in the slot, or null if the slot is empty
+     */
+    PartyPokemon getPartyPokemon(Player player, int slot);
+
+    /**
+     * Remove a Pokemon from a player's party
+     * @param player Party owner
+     * @param slot Party slot from 1 to 6
+     * @return True if a Pokemon was removed
+     */
+    boolean removePartyPokemon(Player player, int slot);
+
+    /**
+     * Snapshot of the party Pokemon fields used for pricing
+     */
+    class PartyPokemon {
+        private final int dex;
+        private final String species;
+        private final int level;
+        private final int ivTotal;
+
+        public PartyPokemon(int dex, String species, int level, int ivTotal) {
+            this.dex = dex;
+            this.species = species;
+            this.level = level;
+            this.ivTotal = ivTotal;
+        }
+
+        public int getDex() {
+            return dex;
+        }
+
+        public String getSpecies() {
+            return species;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        public int getIvTotal() {
+            return ivTotal;
+        }
+    }
+}
@@ -0,0 +1,458 @@
+package com.blissy.gemextension;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Inverted index from spawn conditions to the spawn entries they allow
+ *
+ * Every Pokemon spawn info in the spawn sets gets an entry number. For each time
+ * of day, weather, biome and location type the index keeps a bitset of the entries
+ * that list it, with entries that do not restrict a condition folded into a shared
+ * "any" set. Finding what can spawn somewhere is then a few word-wise ANDs.
+ *
+ * Height and light limits are checked entry by entry, as only a few entries have
+ * them. Entries with conditions the index cannot check, such as structures or
+ * nearby blocks, are left out so everything a query returns can really spawn.
+ */
+public final class SpawnConditionIndex {
+
+    /**
+     * Pixelmon's times of day, as world-time ranges that may overlap
+     */
+    public enum SpawnTime {
+        DAWN(22500, 300),
+        MORNING(300, 6000),
+        DAY(1000, 11000),
+        MIDDAY(5500, 6500),
+        AFTERNOON(6000, 12000),
+        DUSK(12000, 13800),
+        NIGHT(13450, 22550),
+        MIDNIGHT(17500, 18500);
+
+        private final int start;
+        private final int end;
+
+        SpawnTime(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Check whether a world time falls in this time of day
+         * @param worldTime World time in ticks
+         * @return True if the time matches
+         */
+        public boolean matches(long worldTime) {
+            long time = worldTime % 24000;
+            return start <= end ? time >= start && time < end : time >= start || time < end;
+        }
+    }
+
+    /**
+     * Pixelmon's weathers
+     */
+    public enum SpawnWeather {
+        CLEAR,
+        RAIN,
+        STORM
+    }
+
+    private static final SpawnConditionIndex EMPTY = new SpawnConditionIndex(new String[0], new float[0],
+            new long[SpawnTime.values().length][0], new long[SpawnWeather.values().length][0],
+            Collections.emptyMap(), new long[0], Collections.emptyMap(), Collections.emptyMap(), new long[0],
+            new long[0], new int[0], new int[0], new int[0]);
+
+    private final String[] species;
+    private final float[] rarities;
+    private final long[][] timeBits;
+    private final long[][] weatherBits;
+    private final Map<String, long[]> biomeBits;
+    private final long[] anyBiome;
+    private final Map<String, long[]> excludedBiomeBits;
+    private final Map<String, long[]> locationBits;
+    private final long[] anyLocation;
+    private final long[] bounded;
+    private final int[] minY;
+    private final int[] maxY;
+    private final int[] maxLight;
+
+    private SpawnConditionIndex(String[] species, float[] rarities, long[][] timeBits, long[][] weatherBits,
+                                Map<String, long[]> biomeBits, long[] anyBiome, Map<String, long[]> excludedBiomeBits,
+                                Map<String, long[]> locationBits, long[] anyLocation, long[] bounded,
+                                int[] minY, int[] maxY, int[] maxLight) {
+        this.species = species;
+        this.rarities = rarities;
+        this.timeBits = timeBits;
+        this.weatherBits = weatherBits;
+        this.biomeBits = biomeBits;
+        this.anyBiome = anyBiome;
+        this.excludedBiomeBits = excludedBiomeBits;
+        this.locationBits = locationBits;
+        this.anyLocation = anyLocation;
+        this.bounded = bounded;
+        this.minY = minY;
+        this.maxY = maxY;
+        this.maxLight = maxLight;
+    }
+
+    /**
+     * Get an index with no entries
+     * @return Empty index
+     */
+    public static SpawnConditionIndex empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Build the index by parsing every *.set.json file in a folder in parallel
+     * @param folder Folder holding the spawn sets
+     * @param logger Logger for files that fail to parse
+     * @return Built index, or an empty index if the folder does not exist
+     */
+    public static SpawnConditionIndex load(File folder, Logger logger) {
+        File[] files = folder.listFiles((dir, name) -> name.endsWith(".set.json"));
+        if (files == null || files.length == 0) {
+            return EMPTY;
+        }
+
+        // Sorted so entry numbers are stable between builds
+        Arrays.sort(files);
+        List<List<SpawnEntry>> parsed = Arrays.stream(files)
+                .parallel()
+                .map(file -> {
+                    try {
+                        return parseSpawnSet(file);
+                    } catch (IOException | IllegalStateException e) {
+                        logger.warning("Failed to read spawn set " + file.getName() + ": " + e.getMessage());
+                        return Collections.<SpawnEntry>emptyList();
+                    }
+                })
+                .collect(Collectors.toList());
+
+        List<SpawnEntry> entries = new ArrayList<>();
+        parsed.forEach(entries::addAll);
+
+        int words = (entries.size() + 63) >>> 6;
+        String[] species = new String[entries.size()];
+        float[] rarities = new float[entries.size()];
+        long[][] timeBits = new long[SpawnTime.values().length][words];
+        long[][] weatherBits = new long[SpawnWeather.values().length][words];
+        Map<String, long[]> biomeBits = new HashMap<>();
+        long[] anyBiome = new long[words];
+        Map<String, long[]> excludedBiomeBits = new HashMap<>();
+        Map<String, long[]> locationBits = new HashMap<>();
+        long[] anyLocation = new long[words];
+        long[] bounded = new long[words];
+        int[] minY = new int[entries.size()];
+        int[] maxY = new int[entries.size()];
+        int[] maxLight = new int[entries.size()];
+
+        for (int i = 0; i < entries.size(); i++) {
+            SpawnEntry entry = entries.get(i);
+            species[i] = entry.species;
+            rarities[i] = entry.rarity;
+            minY[i] = entry.minY;
+            maxY[i] = entry.maxY;
+            maxLight[i] = entry.maxLight;
+            int word = i >>> 6;
+            long bit = 1L << i;
+
+            // No times listed means any time
+            for (SpawnTime time : SpawnTime.values()) {
+                if (entry.times.isEmpty() || entry.times.contains(time.name())) {
+                    timeBits[time.ordinal()][word] |= bit;
+                }
+            }
+
+            // No weathers listed means any weather
+            for (SpawnWeather weather : SpawnWeather.values()) {
+                if (entry.weathers.isEmpty() || entry.weathers.contains(weather.name())) {
+                    weatherBits[weather.ordinal()][word] |= bit;
+                }
+            }
+
+            if (entry.biomes.isEmpty()) {
+                anyBiome[word] |= bit;
+            }
+            for (String biome : entry.biomes) {
+                biomeBits.computeIfAbsent(biome, key -> new long[words])[word] |= bit;
+            }
+            for (String biome : entry.excludedBiomes) {
+                excludedBiomeBits.computeIfAbsent(biome, key -> new long[words])[word] |= bit;
+            }
+
+            if (entry.minY != Integer.MIN_VALUE || entry.maxY != Integer.MAX_VALUE || entry.maxLight < 15) {
+                bounded[word] |= bit;
+            }
+
+            if (entry.locationTypes.isEmpty()) {
+                anyLocation[word] |= bit;
+            }
+            for (String locationType : entry.locationTypes) {
+                locationBits.computeIfAbsent(locationType, key -> new long[words])[word] |= bit;
+            }
+        }
+
+        return new SpawnConditionIndex(species, rarities, timeBits, weatherBits, biomeBits, anyBiome,
+                excludedBiomeBits, locationBits, anyLocation, bounded, minY, maxY, maxLight);
+    }
+
+    /**
+     * Find the entries that can spawn under the given conditions
+     * @param worldTime World time in ticks
+     * @param weather Current weather
+     * @param y Block height of the location
+     * @param lightLevel Light level at the location
+     * @param biomes Biome ids and Pixelmon biome categories the location belongs to
+     * @param locationTypes Location types to consider, such as Land or Water
+     * @return Bitset of matching entry numbers
+     */
+    public long[] query(long worldTime, SpawnWeather weather, int y, int lightLevel, Collection<String> biomes,
+                        Collection<String> locationTypes) {
+        int words = anyBiome.length;
+        long[] time = new long[words];
+        long[] biome = anyBiome.clone();
+        long[] excluded = new long[words];
+        long[] location = anyLocation.clone();
+        long[] weatherMatch = weatherBits[weather.ordinal()];
+
+        for (SpawnTime spawnTime : SpawnTime.values()) {
+            if (spawnTime.matches(worldTime)) {
+                or(time, timeBits[spawnTime.ordinal()]);
+            }
+        }
+        for (String name : biomes) {
+            or(biome, biomeBits.get(name.toLowerCase(Locale.ROOT)));
+            or(excluded, excludedBiomeBits.get(name.toLowerCase(Locale.ROOT)));
+        }
+        for (String name : locationTypes) {
+            or(location, locationBits.get(name.toLowerCase(Locale.ROOT)));
+        }
+
+        for (int i = 0; i < words; i++) {
+            time[i] &= weatherMatch[i] & biome[i] & ~excluded[i] & location[i];
+
+            long limited = time[i] & bounded[i];
+            while (limited != 0) {
+                int entry = (i << 6) + Long.numberOfTrailingZeros(limited);
+                if (y < minY[entry] || y > maxY[entry] || lightLevel > maxLight[entry]) {
+                    time[i] &= ~(1L << entry);
+                }
+                limited &= limited - 1;
+            }
+        }
+        return time;
+    }
+
+    /**
+     * Get the species of an entry
+     * @param entry Entry number
+     * @return Species name
+     */
+    public String getSpecies(int entry) {
+        return species[entry];
+    }
+
+    /**
+     * Get the spawn rarity of an entry
+     * @param entry Entry number
+     * @return Rarity weight
+     */
+    public float getRarity(int entry) {
+        return rarities[entry];
+    }
+
+    /**
+     * Get the number of entries in the index
+     * @return Entry count
+     */
+    public int size() {
+        return species.length;
+    }
+
+    /**
+     * OR a bitset into another, ignoring a missing one
+     */
+    private static void or(long[] target, long[] source) {
+        if (source == null) {
+            return;
+        }
+        for (int i = 0; i < target.length; i++) {
+            target[i] |= source[i];
+        }
+    }
+
+    /**
+     * Read the Pokemon spawn infos out of one spawn set
+     */
+    private static List<SpawnEntry> parseSpawnSet(File file) throws IOException {
+        List<SpawnEntry> entries = new ArrayList<>();
+        String id = null;
+
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+             JsonReader json = new JsonReader(reader)) {
+            json.beginObject();
+            while (json.hasNext()) {
+                String name = json.nextName();
+                if (name.equals("id")) {
+                    id = json.nextString();
+                } else if (name.equals("spawnInfos") && json.peek() == JsonToken.BEGIN_ARRAY) {
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        SpawnEntry entry = readSpawnInfo(json);
+                        if (entry != null) {
+                            entries.add(entry);
+                        }
+                    }
+                    json.endArray();
+                } else {
+                    json.skipValue();
+                }
+            }
+            json.endObject();
+        }
+
+        // Spawn infos without a species spec fall back to the set id
+        for (SpawnEntry entry : entries) {
+            if (entry.species == null) {
+                entry.species = id;
+            }
+        }
+        entries.removeIf(entry -> entry.species == null);
+        return entries;
+    }
+
+    /**
+     * Read the conditions of a single spawn info
+     * @return Entry, or null if it does not spawn a Pokemon or has conditions the index cannot check
+     */
+    private static SpawnEntry readSpawnInfo(JsonReader json) throws IOException {
+        SpawnEntry entry = new SpawnEntry();
+        boolean pokemon = true;
+        boolean checkable = true;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "typeID":
+                    pokemon = json.nextString().equals("pokemon");
+                    break;
+
+                case "spec":
+                    entry.species = parseSpecies(json.nextString());
+                    break;
+
+                case "rarity":
+                    entry.rarity = (float) json.nextDouble();
+                    break;
+
+                case "stringLocationTypes":
+                    readStrings(json, entry.locationTypes);
+                    break;
+
+                case "condition":
+                    json.beginObject();
+                    while (json.hasNext()) {
+                        String name = json.nextName();
+                        if (name.equals("times")) {
+                            readStrings(json, entry.times);
+                            entry.times.replaceAll(time -> time.toUpperCase(Locale.ROOT));
+                        } else if (name.equals("weathers")) {
+                            readStrings(json, entry.weathers);
+                            entry.weathers.replaceAll(weather -> weather.toUpperCase(Locale.ROOT));
+                        } else if (name.equals("stringBiomes")) {
+                            readStrings(json, entry.biomes);
+                        } else if (name.equals("minY")) {
+                            entry.minY = json.nextInt();
+                        } else if (name.equals("maxY")) {
+                            entry.maxY = json.nextInt();
+                        } else if (name.equals("maxLightLevel")) {
+                            entry.maxLight = json.nextInt();
+                        } else {
+                            // Structures, dimensions, nearby blocks and the like cannot be checked here
+                            checkable = false;
+                            json.skipValue();
+                        }
+                    }
+                    json.endObject();
+                    break;
+
+                case "anticondition":
+                    json.beginObject();
+                    while (json.hasNext()) {
+                        if (json.nextName().equals("stringBiomes")) {
+                            readStrings(json, entry.excludedBiomes);
+                        } else {
+                            checkable = false;
+                            json.skipValue();
+                        }
+                    }
+                    json.endObject();
+                    break;
+
+                default:
+                    json.skipValue();
+                    break;
+            }
+        }
+        json.endObject();
+
+        return pokemon && checkable ? entry : null;
+    }
+
+    /**
+     * Read a string array, lower-casing every value
+     */
+    private static void readStrings(JsonReader json, List<String> target) throws IOException {
+        json.beginArray();
+        while (json.hasNext()) {
+            target.add(json.nextString().toLowerCase(Locale.ROOT));
+        }
+        json.endArray();
+    }
+
+    /**
+     * Pull the species name out of a spec such as "species:Abomasnow form:alolan"
+     */
+    private static String parseSpecies(String spec) {
+        for (String part : spec.split(" ")) {
+            if (part.startsWith("species:")) {
+                return part.substring("species:".length());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Conditions read from one spawn info
+     */
+    private static final class SpawnEntry {
+        private String species;
+        private float rarity;
+        private int minY = Integer.MIN_VALUE;
+        private int maxY = Integer.MAX_VALUE;
+        private int maxLight = 15;
+        private final List<String> times = new ArrayList<>();
+        private final List<String> weathers = new ArrayList<>();
+        private final List<String> biomes = new ArrayList<>();
+        private final List<String> excludedBiomes = new ArrayList<>();
+        private final List<String> locationTypes = new ArrayList<>();
+    }
+}
@@ -0,0 +1,246 @@
+package com.blissy.gemextension;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable species to spawn rarity table built from Pixelmon spawn sets
+ *
+ * Species names are matched case-insensitively and ignoring anything that is not
+ * a letter or digit, so "Mr. Mime", "mr_mime" and "MrMime" are the same key.
+ * Lookups hash the name in place and never allocate.
+ */
+public final class SpawnRarityIndex {
+
+    /**
+     * Returned by {@link #getRarity(String)} for species without a spawn entry
+     */
+    public static final float UNKNOWN = -1.0f;
+
+    private static final SpawnRarityIndex EMPTY = new SpawnRarityIndex(new String[2], new float[2], 0);
+
+    private final String[] keys;
+    private final float[] rarities;
+    private final int mask;
+    private final int size;
+
+    private SpawnRarityIndex(String[] keys, float[] rarities, int size) {
+        this.keys = keys;
+        this.rarities = rarities;
+        this.mask = keys.length - 1;
+        this.size = size;
+    }
+
+    /**
+     * Get an index with no species in it
+     * @return Empty index
+     */
+    public static SpawnRarityIndex empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Build the index by parsing every *.set.json file in a folder in parallel
+     * @param folder Folder holding the spawn sets
+     * @param logger Logger for files that fail to parse
+     * @return Built index, or an empty index if the folder does not exist
+     */
+    public static SpawnRarityIndex load(File folder, Logger logger) {
+        File[] files = folder.listFiles((dir, name) -> name.endsWith(".set.json"));
+        if (files == null || files.length == 0) {
+            return EMPTY;
+        }
+
+        // Each file is streamed independently, only the id and rarities are kept
+        List<SpawnSetRarity> parsed = Arrays.stream(files)
+                .parallel()
+                .map(file -> {
+                    try {
+                        return parseSpawnSet(file);
+                    } catch (IOException | IllegalStateException e) {
+                        logger.warning("Failed to read spawn set " + file.getName() + ": " + e.getMessage());
+                        return null;
+                    }
+                })
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+        int capacity = Integer.highestOneBit(Math.max(2, parsed.size() * 2 - 1)) << 1;
+        String[] keys = new String[capacity];
+        float[] rarities = new float[capacity];
+        int size = 0;
+
+        for (SpawnSetRarity entry : parsed) {
+            String key = normalize(entry.species);
+            if (key.isEmpty()) {
+                continue;
+            }
+
+            int slot = hash(key) & (capacity - 1);
+            while (keys[slot] != null && !keys[slot].equals(key)) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+
+            if (keys[slot] == null) {
+                keys[slot] = key;
+                rarities[slot] = entry.rarity;
+                size++;
+            } else {
+                rarities[slot] = Math.max(rarities[slot], entry.rarity);
+            }
+        }
+
+        return new SpawnRarityIndex(keys, rarities, size);
+    }
+
+    /**
+     * Get the spawn rarity of a species
+     *
+     * The rarity is the highest weight among the species' spawn entries, so higher
+     * means more common.
+     * @param species Species name
+     * @return Rarity weight, or {@link #UNKNOWN} if the species has no spawn entry
+     */
+    public float getRarity(String species) {
+        if (species == null || size == 0) {
+            return UNKNOWN;
+        }
+
+        int slot = hash(species) & mask;
+        String key;
+        while ((key = keys[slot]) != null) {
+            if (matches(key, species)) {
+                return rarities[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return UNKNOWN;
+    }
+
+    /**
+     * Get the number of species in the index
+     * @return Species count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Read the species id and highest rarity out of one spawn set
+     */
+    private static SpawnSetRarity parseSpawnSet(File file) throws IOException {
+        String species = null;
+        float rarity = 0.0f;
+
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+             JsonReader json = new JsonReader(reader)) {
+            json.beginObject();
+            while (json.hasNext()) {
+                String name = json.nextName();
+                if (name.equals("id")) {
+                    species = json.nextString();
+                } else if (name.equals("spawnInfos") && json.peek() == JsonToken.BEGIN_ARRAY) {
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        rarity = Math.max(rarity, readRarity(json));
+                    }
+                    json.endArray();
+                } else {
+                    json.skipValue();
+                }
+            }
+            json.endObject();
+        }
+
+        return species == null ? null : new SpawnSetRarity(species, rarity);
+    }
+
+    /**
+     * Read the rarity field of a single spawn info, skipping everything else
+     */
+    private static float readRarity(JsonReader json) throws IOException {
+        float rarity = 0.0f;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            if (json.nextName().equals("rarity") && json.peek() == JsonToken.NUMBER) {
+                rarity = (float) json.nextDouble();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+
+        return rarity;
+    }
+
+    /**
+     * Lower-case a species name and strip everything but letters and digits
+     */
+    static String normalize(String species) {
+        StringBuilder builder = new StringBuilder(species.length());
+        for (int i = 0; i < species.length(); i++) {
+            char c = species.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                builder.append(Character.toLowerCase(c));
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Hash a species name as if it had been normalized first
+     */
+    private static int hash(String species) {
+        int h = 0;
+        for (int i = 0; i < species.length(); i++) {
+            char c = species.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                h = 31 * h + Character.toLowerCase(c);
+            }
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Compare a normalized key against a raw species name
+     */
+    private static boolean matches(String key, String species) {
+        int k = 0;
+        for (int i = 0; i < species.length(); i++) {
+            char c = species.charAt(i);
+            if (!Character.isLetterOrDigit(c)) {
+                continue;
+            }
+            if (k >= key.length() || key.charAt(k++) != Character.toLowerCase(c)) {
+                return false;
+            }
+        }
+        return k == key.length();
+    }
+
+    /**
+     * Species id and rarity read from one spawn set
+     */
+    private static final class SpawnSetRarity {
+        private final String species;
+        private final float rarity;
+
+        private SpawnSetRarity(String species, float rarity) {
+            this.species = species;
+            this.rarity = rarity;
+        }
+    }
+}
@@ -0,0 +1,459 @@
+package com.blissy.gemextension;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Memory-mapped binary index of the species stats used to price Pokemon
+ *
+ * The index is a flat file of fixed-size records addressed by national dex number,
+ * compiled from the pixelmon_data species JSON. Each record remembers the size and
+ * modification time of the JSON it came from, so {@link #refresh()} only re-parses
+ * files that changed since the last build.
+ */
+public final class SpeciesPriceIndex {
+
+    public static final int FLAG_LEGENDARY = 1;
+    public static final int FLAG_MYTHICAL = 2;
+    public static final int FLAG_ULTRA_BEAST = 4;
+    public static final int FLAG_FINAL_STAGE = 8;
+
+    private static final int MAGIC = 0x47454D49;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 32;
+
+    // Record layout
+    private static final int SOURCE_MODIFIED = 0;
+    private static final int SOURCE_LENGTH = 8;
+    private static final int BASE_STAT_TOTAL = 16;
+    private static final int CATCH_RATE = 18;
+    private static final int FLAGS = 20;
+    private static final int EVOLUTION_STAGE = 21;
+    private static final int BASE_EXP = 24;
+
+    private final File indexFile;
+    private final File dataFolder;
+    private final Logger logger;
+    private volatile MappedByteBuffer buffer;
+
+    /**
+     * Constructor
+     * @param indexFile Binary index file
+     * @param dataFolder Folder holding the species JSON files
+     * @param logger Logger for files that fail to parse
+     */
+    public SpeciesPriceIndex(File indexFile, File dataFolder, Logger logger) {
+        this.indexFile = indexFile;
+        this.dataFolder = dataFolder;
+        this.logger = logger;
+    }
+
+    /**
+     * Map the index and bring it up to date with the species folder
+     *
+     * A mapped index file is never written again. Changes are built into a new file
+     * next to it, which is then moved over the old one and mapped in its place, so
+     * readers still holding the old mapping keep reading the old, intact file.
+     * @return Number of species records that were re-parsed
+     * @throws IOException If the index file cannot be written
+     */
+    public synchronized int refresh() throws IOException {
+        File[] files = dataFolder.listFiles((dir, name) -> name.endsWith(".json"));
+        if (files == null) {
+            files = new File[0];
+        }
+
+        // Index the source files by dex number, taken from the NNN_name.json file name
+        int maxDex = 0;
+        File[] byDex = new File[0];
+        for (File file : files) {
+            int dex = parseDex(file.getName());
+            if (dex <= 0) {
+                continue;
+            }
+            if (dex >= byDex.length) {
+                byDex = Arrays.copyOf(byDex, Math.max(dex + 1, byDex.length * 2));
+            }
+            byDex[dex] = file;
+            maxDex = Math.max(maxDex, dex);
+        }
+
+        MappedByteBuffer current = buffer != null ? buffer : mapExisting();
+        int capacity = maxDex + 1;
+        if (current != null && capacity(current) == capacity && isCurrent(current, byDex, capacity)) {
+            buffer = current;
+            return 0;
+        }
+
+        indexFile.getParentFile().mkdirs();
+        Path temp = Files.createTempFile(indexFile.getParentFile().toPath(), indexFile.getName(), ".tmp");
+        int updated = 0;
+
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                        HEADER_SIZE + (long) capacity * RECORD_SIZE);
+                mapped.putInt(0, MAGIC);
+                mapped.putInt(4, VERSION);
+                mapped.putInt(8, capacity);
+                mapped.putInt(12, RECORD_SIZE);
+
+                // Runs past the new capacity too, to count records that were removed
+                int end = current != null ? Math.max(capacity, capacity(current)) : capacity;
+                for (int dex = 1; dex < end; dex++) {
+                    int offset = HEADER_SIZE + dex * RECORD_SIZE;
+                    int previous = offset(current, dex);
+                    File file = dex < byDex.length ? byDex[dex] : null;
+
+                    if (file == null) {
+                        if (previous >= 0) {
+                            updated++;
+                        }
+                        continue;
+                    }
+
+                    // Carry over records whose source is unchanged
+                    if (previous >= 0 && isCurrent(current, previous, file)) {
+                        for (int i = 0; i < RECORD_SIZE; i += 8) {
+                            mapped.putLong(offset + i, current.getLong(previous + i));
+                        }
+                        continue;
+                    }
+
+                    try {
+                        writeRecord(mapped, offset, file);
+                        updated++;
+                    } catch (IOException | IllegalStateException e) {
+                        logger.warning("Failed to read species data " + file.getName() + ": " + e.getMessage());
+                    }
+                }
+
+                mapped.force();
+            }
+
+            Files.move(temp, indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        buffer = mapExisting();
+        return updated;
+    }
+
+    /**
+     * Get the folder the index is built from
+     * @return Species data folder
+     */
+    public File getDataFolder() {
+        return dataFolder;
+    }
+
+    /**
+     * Check whether a species has a record
+     * @param dex National dex number
+     * @return True if the species is indexed
+     */
+    public boolean contains(int dex) {
+        return offset(buffer, dex) >= 0;
+    }
+
+    /**
+     * Get the sum of a species' base stats
+     * @param dex National dex number
+     * @return Base stat total, or 0 if not indexed
+     */
+    public int getBaseStatTotal(int dex) {
+        MappedByteBuffer mapped = buffer;
+        int offset = offset(mapped, dex);
+        return offset < 0 ? 0 : mapped.getShort(offset + BASE_STAT_TOTAL);
+    }
+
+    /**
+     * Get a species' catch rate
+     * @param dex National dex number
+     * @return Catch rate from 1 to 255, or 0 if not indexed
+     */
+    public int getCatchRate(int dex) {
+        MappedByteBuffer mapped = buffer;
+        int offset = offset(mapped, dex);
+        return offset < 0 ? 0 : mapped.getShort(offset + CATCH_RATE);
+    }
+
+    /**
+     * Get a species' flags
+     * @param dex National dex number
+     * @return Bitmask of the FLAG_ constants
+     */
+    public int getFlags(int dex) {
+        MappedByteBuffer mapped = buffer;
+        int offset = offset(mapped, dex);
+        return offset < 0 ? 0 : mapped.get(offset + FLAGS);
+    }
+
+    /**
+     * Get how many pre-evolutions a species has
+     * @param dex National dex number
+     * @return Evolution stage, 0 for a base form
+     */
+    public int getEvolutionStage(int dex) {
+        MappedByteBuffer mapped = buffer;
+        int offset = offset(mapped, dex);
+        return offset < 0 ? 0 : mapped.get(offset + EVOLUTION_STAGE);
+    }
+
+    /**
+     * Get a species' base experience yield
+     * @param dex National dex number
+     * @return Base experience, or 0 if not indexed
+     */
+    public int getBaseExp(int dex) {
+        MappedByteBuffer mapped = buffer;
+        int offset = offset(mapped, dex);
+        return offset < 0 ? 0 : mapped.getInt(offset + BASE_EXP);
+    }
+
+    /**
+     * Get the byte offset of a species record
+     * @return Offset, or -1 if the species is not indexed
+     */
+    private static int offset(MappedByteBuffer mapped, int dex) {
+        if (mapped == null || dex <= 0 || dex >= capacity(mapped)) {
+            return -1;
+        }
+
+        int offset = HEADER_SIZE + dex * RECORD_SIZE;
+        return mapped.getLong(offset + SOURCE_LENGTH) == 0 ? -1 : offset;
+    }
+
+    /**
+     * Get the number of dex slots in a mapped index
+     */
+    private static int capacity(MappedByteBuffer mapped) {
+        return (mapped.capacity() - HEADER_SIZE) / RECORD_SIZE;
+    }
+
+    /**
+     * Map the index file read-only
+     * @return Mapped index, or null if it is missing or was written by another layout
+     */
+    private MappedByteBuffer mapExisting() throws IOException {
+        if (!indexFile.isFile()) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return null;
+            }
+
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION || mapped.getInt(12) != RECORD_SIZE ||
+                    channel.size() != HEADER_SIZE + (long) mapped.getInt(8) * RECORD_SIZE) {
+                return null;
+            }
+            return mapped;
+        }
+    }
+
+    /**
+     * Check whether every record of a mapped index matches the species folder
+     */
+    private static boolean isCurrent(MappedByteBuffer mapped, File[] byDex, int capacity) {
+        for (int dex = 1; dex < capacity; dex++) {
+            int offset = offset(mapped, dex);
+            File file = dex < byDex.length ? byDex[dex] : null;
+            if (file == null ? offset >= 0 : offset < 0 || !isCurrent(mapped, offset, file)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check whether a record was built from the current version of its source file
+     */
+    private static boolean isCurrent(MappedByteBuffer mapped, int offset, File file) {
+        return mapped.getLong(offset + SOURCE_MODIFIED) == file.lastModified() &&
+                mapped.getLong(offset + SOURCE_LENGTH) == file.length();
+    }
+
+    /**
+     * Parse one species file into its record
+     */
+    private void writeRecord(MappedByteBuffer mapped, int offset, File file) throws IOException {
+        SpeciesStats stats = parseSpecies(file);
+
+        mapped.putShort(offset + BASE_STAT_TOTAL, (short) stats.baseStatTotal);
+        mapped.putShort(offset + CATCH_RATE, (short) stats.catchRate);
+        mapped.put(offset + FLAGS, (byte) stats.flags);
+        mapped.put(offset + EVOLUTION_STAGE, (byte) stats.evolutionStage);
+        mapped.putInt(offset + BASE_EXP, stats.baseExp);
+
+        // Written last so a record only counts as present once it is complete
+        mapped.putLong(offset + SOURCE_MODIFIED, file.lastModified());
+        mapped.putLong(offset + SOURCE_LENGTH, file.length());
+    }
+
+    /**
+     * Stream the default form of a species file, skipping moves and everything else unused
+     */
+    private static SpeciesStats parseSpecies(File file) throws IOException {
+        SpeciesStats stats = new SpeciesStats();
+
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+             JsonReader json = new JsonReader(reader)) {
+            json.beginObject();
+            while (json.hasNext()) {
+                if (json.nextName().equals("forms") && json.peek() == JsonToken.BEGIN_ARRAY) {
+                    json.beginArray();
+                    if (json.hasNext()) {
+                        readForm(json, stats);
+                    }
+                    while (json.hasNext()) {
+                        json.skipValue();
+                    }
+                    json.endArray();
+                } else {
+                    json.skipValue();
+                }
+            }
+            json.endObject();
+        }
+
+        return stats;
+    }
+
+    /**
+     * Read the fields used for pricing out of a form object
+     */
+    private static void readForm(JsonReader json, SpeciesStats stats) throws IOException {
+        boolean hasEvolutions = false;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "battleStats":
+                    json.beginObject();
+                    while (json.hasNext()) {
+                        json.nextName();
+                        stats.baseStatTotal += json.nextInt();
+                    }
+                    json.endObject();
+                    break;
+
+                case "catchRate":
+                    stats.catchRate = json.nextInt();
+                    break;
+
+                case "tags":
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        stats.flags |= tagFlag(json.nextString());
+                    }
+                    json.endArray();
+                    break;
+
+                case "preEvolutions":
+                    stats.evolutionStage = countArray(json);
+                    break;
+
+                case "evolutions":
+                    hasEvolutions = countArray(json) > 0;
+                    break;
+
+                case "spawn":
+                    json.beginObject();
+                    while (json.hasNext()) {
+                        if (json.nextName().equals("baseExp")) {
+                            stats.baseExp = json.nextInt();
+                        } else {
+                            json.skipValue();
+                        }
+                    }
+                    json.endObject();
+                    break;
+
+                default:
+                    json.skipValue();
+                    break;
+            }
+        }
+        json.endObject();
+
+        if (!hasEvolutions) {
+            stats.flags |= FLAG_FINAL_STAGE;
+        }
+    }
+
+    /**
+     * Count and skip the elements of an array
+     */
+    private static int countArray(JsonReader json) throws IOException {
+        int count = 0;
+        json.beginArray();
+        while (json.hasNext()) {
+            json.skipValue();
+            count++;
+        }
+        json.endArray();
+        return count;
+    }
+
+    /**
+     * Map a species tag to its flag bit
+     */
+    private static int tagFlag(String tag) {
+        switch (tag) {
+            case "legendary":
+                return FLAG_LEGENDARY;
+            case "mythical":
+                return FLAG_MYTHICAL;
+            case "ultrabeast":
+                return FLAG_ULTRA_BEAST;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Read the dex number from a NNN_name.json file name
+     * @return Dex number, or -1 if the name has no numeric prefix
+     */
+    private static int parseDex(String fileName) {
+        int end = fileName.indexOf('_');
+        if (end <= 0) {
+            return -1;
+        }
+
+        try {
+            return Integer.parseInt(fileName.substring(0, end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Stats read from one species file
+     */
+    private static final class SpeciesStats {
+        private int baseStatTotal;
+        private int catchRate;
+        private int flags;
+        private int evolutionStage;
+        private int baseExp;
+    }
+}
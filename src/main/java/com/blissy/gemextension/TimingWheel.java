@@ -0,0 +1,214 @@
+package com.blissy.gemextension;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel
+ *
+ * Four levels of 64 slots cover 64^4 ticks. Scheduling and cancelling are O(1)
+ * list operations, and each tick only touches the due slot plus, every 64^n
+ * ticks, one slot of a higher level that is cascaded down. Entries further out
+ * than the wheel covers sit in the top level and are re-placed when it cascades.
+ *
+ * Not thread-safe, callers synchronize externally.
+ * @param <E> Entry type
+ */
+public class TimingWheel<E extends TimingWheel.Entry> {
+
+    private static final int LEVELS = 4;
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+
+    private final Entry[][] slots = new Entry[LEVELS][SLOTS];
+    private long currentTick;
+    private int size;
+
+    /**
+     * Constructor
+     * @param startTick Tick the wheel starts at
+     */
+    public TimingWheel(long startTick) {
+        this.currentTick = startTick;
+    }
+
+    /**
+     * Schedule an entry for its deadline, or the next tick if the deadline has passed
+     * @param entry Entry to schedule
+     */
+    public void schedule(E entry) {
+        if (entry.isScheduled()) {
+            cancel(entry);
+        }
+
+        insert(entry, currentTick + 1);
+        size++;
+    }
+
+    /**
+     * Remove a scheduled entry
+     * @param entry Entry to cancel
+     * @return True if the entry was scheduled
+     */
+    public boolean cancel(E entry) {
+        if (!entry.isScheduled()) {
+            return false;
+        }
+
+        unlink(entry);
+        size--;
+        return true;
+    }
+
+    /**
+     * Advance the wheel, firing every entry whose deadline is reached
+     * @param targetTick Tick to advance to
+     * @param expired Called with each expired entry, after it is unscheduled
+     */
+    @SuppressWarnings("unchecked")
+    public void advanceTo(long targetTick, Consumer<E> expired) {
+        while (currentTick < targetTick) {
+            long tick = ++currentTick;
+
+            // Cascade higher levels first so their entries can land in this tick's slot
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((tick & ((1L << (BITS * level)) - 1)) == 0) {
+                    cascade(level, (int) ((tick >>> (BITS * level)) & MASK));
+                }
+            }
+
+            int slot = (int) (tick & MASK);
+            Entry entry = slots[0][slot];
+            slots[0][slot] = null;
+
+            while (entry != null) {
+                Entry next = entry.next;
+                entry.level = -1;
+                entry.prev = null;
+                entry.next = null;
+
+                if (entry.deadline <= tick) {
+                    size--;
+                    expired.accept((E) entry);
+                } else {
+                    insert(entry, tick + 1);
+                }
+                entry = next;
+            }
+        }
+    }
+
+    /**
+     * Get the tick the wheel has advanced to
+     * @return Current tick
+     */
+    public long getCurrentTick() {
+        return currentTick;
+    }
+
+    /**
+     * Get the number of scheduled entries
+     * @return Scheduled entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Re-place every entry of a higher-level slot relative to the current tick
+     */
+    private void cascade(int level, int slot) {
+        Entry entry = slots[level][slot];
+        slots[level][slot] = null;
+
+        while (entry != null) {
+            Entry next = entry.next;
+            entry.prev = null;
+            entry.next = null;
+            insert(entry, currentTick);
+            entry = next;
+        }
+    }
+
+    /**
+     * Link an entry into the slot for its deadline
+     * @param earliest Earliest tick the entry may be placed at
+     */
+    private void insert(Entry entry, long earliest) {
+        long deadline = Math.max(entry.deadline, earliest);
+        long delta = deadline - currentTick;
+
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1))) {
+            level++;
+        }
+
+        // Out of range entries wait in the furthest top-level slot
+        if (delta >= 1L << (BITS * LEVELS)) {
+            deadline = currentTick + (1L << (BITS * LEVELS)) - 1;
+        }
+
+        int slot = (int) ((deadline >>> (BITS * level)) & MASK);
+        entry.level = level;
+        entry.slot = slot;
+        entry.prev = null;
+        entry.next = slots[level][slot];
+        if (entry.next != null) {
+            entry.next.prev = entry;
+        }
+        slots[level][slot] = entry;
+    }
+
+    /**
+     * Unlink an entry from its slot
+     */
+    private void unlink(Entry entry) {
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        } else {
+            slots[entry.level][entry.slot] = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        }
+
+        entry.level = -1;
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    /**
+     * Something that can be scheduled on the wheel
+     */
+    public static class Entry {
+        private final long deadline;
+        private Entry prev;
+        private Entry next;
+        private int level = -1;
+        private int slot;
+
+        /**
+         * Constructor
+         * @param deadline Tick the entry expires at
+         */
+        public Entry(long deadline) {
+            this.deadline = deadline;
+        }
+
+        /**
+         * Get the tick the entry expires at
+         * @return Deadline tick
+         */
+        public long getDeadline() {
+            return deadline;
+        }
+
+        /**
+         * Check whether the entry is scheduled
+         * @return True if the entry is on a wheel
+         */
+        public boolean isScheduled() {
+            return level >= 0;
+        }
+    }
+}